@@ -0,0 +1,71 @@
+package benchmark;
+
+/*
+		% WorkflowWalker: A Workflow Parameter Optimizer
+		%
+		% Copyright 2017 Björn Groß
+		%
+		% Licensed under the Apache License, Version 2.0 (the "License");
+		% you may not use this file except in compliance with the License.
+		% You may obtain a copy of the License at
+		%
+		%    http://www.apache.org/licenses/LICENSE-2.0
+		%
+		% Unless required by applicable law or agreed to in writing, software
+		% distributed under the License is distributed on an "AS IS" BASIS,
+		% WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+		% See the License for the specific language governing permissions and
+		% limitations under the License.
+*/
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Creates the databases and files used by the benchmarks. All data is created from a fixed
+ * seed, so every run of a benchmark works on the same data.
+ */
+public class BenchmarkData {
+	public static final long SEED = 42;
+
+	/**
+	 * @return The path of a new, empty database file that is deleted on exit
+	 */
+	public static String createDatabaseFile() throws IOException {
+		File f = Files.createTempFile("bench", ".db").toFile();
+		f.delete();
+		f.deleteOnExit();
+		return f.getAbsolutePath();
+	}
+
+	/**
+	 * Writes a sorted VCF file with random variants on 22 chromosomes
+	 * @param variants The number of variant lines
+	 * @param seed The seed for the positions, different seeds create overlapping variant sets
+	 * @return The path to the VCF file, the file is deleted on exit
+	 */
+	public static String createVcf(int variants, long seed) throws IOException {
+		File f = Files.createTempFile("bench", ".vcf").toFile();
+		f.deleteOnExit();
+		Random rand = new Random(seed);
+		int perChrom = Math.max(1, variants / 22);
+		try (PrintWriter writer = new PrintWriter(f, "UTF-8")) {
+			writer.println("##fileformat=VCFv4.1");
+			writer.println("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO");
+			int written = 0;
+			for(int chrom=1; written<variants; chrom++){
+				int pos = 0;
+				for(int i=0; i<perChrom && written<variants; i++){
+					//small gaps, so variants of different seeds overlap
+					pos += 1 + rand.nextInt(20);
+					writer.println("chr"+chrom+"\t"+pos+"\t.\tA\tG\t50\tPASS\tDP=20");
+					written++;
+				}
+			}
+		}
+		return f.getAbsolutePath();
+	}
+}
@@ -0,0 +1,93 @@
+package instances;
+
+/*
+		% WorkflowWalker: A Workflow Parameter Optimizer
+		%
+		% Copyright 2017 Björn Groß
+		%
+		% Licensed under the Apache License, Version 2.0 (the "License");
+		% you may not use this file except in compliance with the License.
+		% You may obtain a copy of the License at
+		%
+		%    http://www.apache.org/licenses/LICENSE-2.0
+		%
+		% Unless required by applicable law or agreed to in writing, software
+		% distributed under the License is distributed on an "AS IS" BASIS,
+		% WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+		% See the License for the specific language governing permissions and
+		% limitations under the License.
+*/
+import java.util.concurrent.TimeUnit;
+
+import logdb.LogDB;
+import logdb.ValuePair;
+import sampler.IntegerParameter;
+import sampler.Parameter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import benchmark.BenchmarkData;
+
+/**
+ * Measures the scoring of a synthetic VCF file, every invocation submits the file for a new configuration
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TargetFunctionBenchmark {
+	private static final String RUN = "bench";
+
+	@Param({"META", "GOLD"})
+	public String target;
+
+	@Param({"1000", "100000"})
+	public int variants;
+
+	private LogDB logdb;
+	private TargetFunction tf;
+	private String vcf;
+	private int configs = 0;
+	private Parameter[] params = {new IntegerParameter("p", 0, 1000000, 1)};
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		boolean gold = target.equals("GOLD");
+		logdb = new LogDB(BenchmarkData.createDatabaseFile(), BenchmarkData.SEED);
+		logdb.prepareRun(1, RUN, true, gold);
+		logdb.createEdgeGroup(RUN, "group", params);
+		tf = new TargetFunction(logdb);
+		if(gold){
+			tf.setTarget(TargetFunction.SIMILARITYgoldstandard);
+			tf.setGoldstandard(BenchmarkData.createVcf(variants, BenchmarkData.SEED + 1), RUN);
+		}
+		vcf = BenchmarkData.createVcf(variants, BenchmarkData.SEED);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown(){
+		logdb.close();
+	}
+
+	@Benchmark
+	public void submitVcf(){
+		configs++;
+		long edgeId = logdb.addEdge(RUN, "group", new String[]{String.valueOf(configs)}, params);
+		long configId = logdb.addConfiguration(new ValuePair[]{new ValuePair("group", String.valueOf(edgeId))}, RUN);
+		tf.submitVcf(RUN, vcf, configId);
+	}
+}
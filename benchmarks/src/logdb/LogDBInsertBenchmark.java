@@ -0,0 +1,77 @@
+package logdb;
+
+/*
+		% WorkflowWalker: A Workflow Parameter Optimizer
+		%
+		% Copyright 2017 Björn Groß
+		%
+		% Licensed under the Apache License, Version 2.0 (the "License");
+		% you may not use this file except in compliance with the License.
+		% You may obtain a copy of the License at
+		%
+		%    http://www.apache.org/licenses/LICENSE-2.0
+		%
+		% Unless required by applicable law or agreed to in writing, software
+		% distributed under the License is distributed on an "AS IS" BASIS,
+		% WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+		% See the License for the specific language governing permissions and
+		% limitations under the License.
+*/
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import benchmark.BenchmarkData;
+
+/**
+ * Measures the insert of result variants, including the write of the deferred insert.
+ * Every insert belongs to a new configuration id, like the results of a sampled configuration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogDBInsertBenchmark {
+	@Param({"100", "1000", "2500"})
+	public int batchSize;
+
+	private LogDB logdb;
+	private ArrayList<Variant> batch = new ArrayList<>();
+	private long configId = 0;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		logdb = LogDBLookupBenchmark.createDatabase();
+		Random rand = new Random(BenchmarkData.SEED);
+		for(int i=0; i<batchSize; i++){
+			batch.add(new Variant("chr"+(1 + rand.nextInt(22)), rand.nextInt(100000000), ".\tA\tG\t50\tPASS\tDP=20"));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown(){
+		logdb.close();
+	}
+
+	@Benchmark
+	public void addResultVariant(){
+		logdb.addResultVariant(LogDBLookupBenchmark.RUN, ++configId, batch);
+		logdb.flush();
+	}
+}
@@ -0,0 +1,109 @@
+package logdb;
+
+/*
+		% WorkflowWalker: A Workflow Parameter Optimizer
+		%
+		% Copyright 2017 Björn Groß
+		%
+		% Licensed under the Apache License, Version 2.0 (the "License");
+		% you may not use this file except in compliance with the License.
+		% You may obtain a copy of the License at
+		%
+		%    http://www.apache.org/licenses/LICENSE-2.0
+		%
+		% Unless required by applicable law or agreed to in writing, software
+		% distributed under the License is distributed on an "AS IS" BASIS,
+		% WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+		% See the License for the specific language governing permissions and
+		% limitations under the License.
+*/
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sampler.IntegerParameter;
+import sampler.Parameter;
+import benchmark.BenchmarkData;
+
+/**
+ * Measures the lookup of known configurations
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogDBLookupBenchmark {
+	static final String RUN = "bench";
+	static final int STEPS = 3;
+	static final int EDGES = 50;
+
+	@Param({"1000", "10000"})
+	public int configs;
+
+	private LogDB logdb;
+	private Random rand = new Random(BenchmarkData.SEED);
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		logdb = createDatabase();
+		for(int i=0; i<configs; i++){
+			long configId = logdb.addConfiguration(randomConfig(rand, STEPS), RUN);
+			logdb.updateConfiguration(configId, rand.nextDouble(), RUN);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown(){
+		logdb.close();
+	}
+
+	/**
+	 * @return A new database with the edge groups of the benchmark run
+	 */
+	static LogDB createDatabase() throws Exception {
+		LogDB logdb = new LogDB(BenchmarkData.createDatabaseFile(), BenchmarkData.SEED);
+		logdb.prepareRun(STEPS, RUN, true, false);
+		Parameter[] params = {new IntegerParameter("p", 0, EDGES-1, 1)};
+		for(int s=0; s<STEPS; s++){
+			logdb.createEdgeGroup(RUN, "group"+s, params);
+			for(int e=0; e<EDGES; e++){
+				//edge ids start at 1
+				logdb.addEdge(RUN, "group"+s, new String[]{String.valueOf(e)}, params);
+			}
+		}
+		return logdb;
+	}
+
+	static ValuePair[] randomConfig(Random rand, int length){
+		ValuePair[] config = new ValuePair[length];
+		for(int s=0; s<length; s++){
+			config[s] = new ValuePair("group"+s, String.valueOf(1 + rand.nextInt(EDGES)));
+		}
+		return config;
+	}
+
+	@Benchmark
+	public long containsFullConfiguration(){
+		return logdb.containsSubset(randomConfig(rand, STEPS), RUN, true);
+	}
+
+	@Benchmark
+	public long containsPrefix(){
+		return logdb.containsSubset(randomConfig(rand, STEPS - 1), RUN);
+	}
+}
@@ -0,0 +1,88 @@
+package sampler;
+
+/*
+		% WorkflowWalker: A Workflow Parameter Optimizer
+		%
+		% Copyright 2017 Björn Groß
+		%
+		% Licensed under the Apache License, Version 2.0 (the "License");
+		% you may not use this file except in compliance with the License.
+		% You may obtain a copy of the License at
+		%
+		%    http://www.apache.org/licenses/LICENSE-2.0
+		%
+		% Unless required by applicable law or agreed to in writing, software
+		% distributed under the License is distributed on an "AS IS" BASIS,
+		% WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+		% See the License for the specific language governing permissions and
+		% limitations under the License.
+*/
+
+import instances.RastriginWalker;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import logdb.LogDB;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import benchmark.BenchmarkData;
+
+/**
+ * Measures the choice of a new edge on a database that was filled by sampling the rastrigin function
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StepBenchmark {
+	@Param({"100", "1000", "10000", "100000"})
+	public int configs;
+
+	@Param({"1.0", "0.01"})
+	public double temperature;
+
+	private LogDB logdb;
+	private Step[] steps;
+	private ArrayList<Edge> previous;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		logdb = new LogDB(BenchmarkData.createDatabaseFile(), BenchmarkData.SEED);
+		Walker walker = new RastriginWalker(logdb, "bench");
+		walker.sample(configs);
+		steps = walker.getSteps().asArray();
+		previous = new ArrayList<>();
+		previous.add(steps[0].chooseNewEdge(null, temperature, 0.0));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown(){
+		logdb.close();
+	}
+
+	@Benchmark
+	public Edge chooseFirstEdge(){
+		return steps[0].chooseNewEdge(null, temperature, 0.0);
+	}
+
+	@Benchmark
+	public Edge chooseEdgeWithHistory(){
+		return steps[1].chooseNewEdge(previous, temperature, 0.0);
+	}
+}
@@ -0,0 +1,386 @@
+package general;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/*
+		% WorkflowWalker: A Workflow Parameter Optimizer
+		%
+		% Copyright 2017 Björn Groß and Raik Otto
+		%
+		% Licensed under the Apache License, Version 2.0 (the "License");
+		% you may not use this file except in compliance with the License.
+		% You may obtain a copy of the License at
+		%
+		%    http://www.apache.org/licenses/LICENSE-2.0
+		%
+		% Unless required by applicable law or agreed to in writing, software
+		% distributed under the License is distributed on an "AS IS" BASIS,
+		% WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+		% See the License for the specific language governing permissions and
+		% limitations under the License.
+*/
+
+/**
+ * Content addressed store for the output files of workflow steps, located in cache/.store of the base directory.
+ * The outputs of a step are stored in a directory named after the key of the step.
+ * The key is a hash of the command of the step and the identity of each of its inputs: the fingerprint of an input file
+ * of the run, or the key of the step that wrote the file. Configurations with the same steps share the stored files,
+ * also across runs, and a changed input only invalidates the steps that read it. The directories of
+ * the configurations only contain links into the store.
+ * Processes that share the store hold a shared lock on the lease file of each entry they use, cache/.leases/key.
+ * An entry is only removed by a process that gets the exclusive lock.
+ */
+public class ArtifactStore {
+	private static Logger logger = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+	/** The dot keeps the store apart from the run directories, run names can not start with a dot */
+	public static final String STOREDIR = ".store";
+	/** Fingerprints of the input files, the dot keeps it apart from the run directories */
+	public static final String FINGERPRINTS = ".fingerprints";
+	/** Lease files of the entries, outside of the store so they outlive a removed entry */
+	public static final String LEASEDIR = ".leases";
+	private static final int SAMPLES = 16;
+	private static final int SAMPLESIZE = 1 << 20;
+	private String baseDir;
+	private Path root;
+	private Path fingerprintFile;
+	private Path leases;
+	private Map<String, String> fingerprints = new HashMap<>();
+
+	/**
+	 * @param baseDir The path to the base directory
+	 * @throws IOException If the store directory can not be created or the fingerprints can not be read
+	 */
+	public ArtifactStore(String baseDir) throws IOException {
+		if(baseDir.endsWith("/")){
+			baseDir = baseDir.substring(0, baseDir.length()-1);
+		}
+		//links into the store have to work from every configuration directory
+		this.baseDir = baseDir;
+		this.root = Paths.get(baseDir + "/cache/" + STOREDIR).toAbsolutePath();
+		FileHandler.createDirectories(root.toString());
+		this.fingerprintFile = Paths.get(baseDir + "/cache/" + FINGERPRINTS);
+		this.leases = Paths.get(baseDir + "/cache/" + LEASEDIR).toAbsolutePath();
+		FileHandler.createDirectories(leases.toString());
+		if(Files.exists(fingerprintFile)){
+			for(String line : Files.readAllLines(fingerprintFile, StandardCharsets.UTF_8)){
+				int split = line.lastIndexOf('\t');
+				if(split > 0){
+					fingerprints.put(line.substring(0, split), line.substring(split+1));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param input An input file or variable of the run
+	 * @return The identity of the input: the value of a variable or the fingerprint of a file.
+	 * Directories are identified by their path, size and modification time.
+	 */
+	public String getInputIdentity(Input input){
+		Path p = Paths.get(baseDir + input.getFullInput());
+		if(input.isVariable() || !Files.exists(p)){
+			return "value:" + input.getFileOnly();
+		}
+		try{
+			if(Files.isRegularFile(p)){
+				return "file:" + this.getFingerprint(p);
+			}
+			return "dir:" + p.toRealPath() + ":" + Files.size(p) + ":" + Files.getLastModifiedTime(p).toMillis();
+		}catch(IOException ioe){
+			logger.log(Level.WARNING, "Could not read "+p+", using its path instead", ioe);
+			return "path:" + input.getFullInput();
+		}
+	}
+
+	/**
+	 * Hashes the size of the file and SAMPLES blocks of SAMPLESIZE bytes spread evenly over it, including the
+	 * first and the last block. Reading the samples takes the same time for a small file and a reference of several GB.
+	 * The fingerprint is kept in cache/.fingerprints together with the path, size and modification time of the file,
+	 * so a file is only sampled again if it was modified, also across runs.
+	 * @param file The path to a regular file
+	 * @return The size and the SHA-256 of the samples
+	 * @throws IOException If the file can not be read
+	 */
+	private synchronized String getFingerprint(Path file) throws IOException {
+		long size = Files.size(file);
+		String id = file.toRealPath() + "\t" + size + "\t" + Files.getLastModifiedTime(file).toMillis();
+		String hash = fingerprints.get(id);
+		if(hash != null){
+			return hash;
+		}
+		try{
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			ByteBuffer buffer = ByteBuffer.allocate(SAMPLESIZE);
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				long last = Math.max(0, size - SAMPLESIZE);
+				for(int i=0; i<SAMPLES; i++){
+					long position = last * i / (SAMPLES - 1);
+					buffer.clear();
+					while(buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0){
+						//read the whole block
+					}
+					buffer.flip();
+					digest.update(buffer);
+					if(last == 0){
+						//the first block is the whole file
+						break;
+					}
+				}
+			}
+			hash = size + ":" + toHex(digest.digest());
+		}catch(NoSuchAlgorithmException e){
+			throw new IllegalStateException(e);
+		}
+		fingerprints.put(id, hash);
+		Files.write(fingerprintFile, (id + "\t" + hash + "\n").getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		return hash;
+	}
+
+	/**
+	 * @param groupName The name of the edge group of the step
+	 * @param command The command of the step
+	 * @param inputs The identity of each input of the step, the key of the producing step for files written by earlier steps
+	 * @return The key of the outputs of the step
+	 */
+	public static String getKey(String groupName, String command, List<String> inputs){
+		try{
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(groupName.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte)0);
+			digest.update(command.getBytes(StandardCharsets.UTF_8));
+			for(String input : inputs){
+				digest.update((byte)0);
+				digest.update(input.getBytes(StandardCharsets.UTF_8));
+			}
+			return toHex(digest.digest());
+		}catch(NoSuchAlgorithmException e){
+			//every java platform has to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String toHex(byte[] bytes){
+		StringBuilder hex = new StringBuilder();
+		for(byte b : bytes){
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * @param key The key of a step
+	 * @return True if the outputs of the step are in the store
+	 */
+	public boolean contains(String key){
+		return Files.isDirectory(root.resolve(key));
+	}
+
+	/**
+	 * @return The path to the directory of the given key
+	 */
+	public String getPath(String key){
+		return root.resolve(key).toString();
+	}
+
+	/**
+	 * Lists the complete entries of the store. Directories of interrupted publish or remove calls are deleted.
+	 * @return The keys of all entries
+	 * @throws IOException If the store can not be read
+	 */
+	public List<String> getKeys() throws IOException {
+		List<String> keys = new ArrayList<>();
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(root)) {
+			for(Path entry : entries){
+				String name = entry.getFileName().toString();
+				if(name.indexOf('.') < 0){
+					keys.add(name);
+				}else{
+					logger.fine("Deleting the incomplete store entry "+entry);
+					FileHandler.deleteRecursive(entry.toString());
+				}
+			}
+		}
+		return keys;
+	}
+
+	/**
+	 * @param key The key of a step
+	 * @return The number of bytes of all files of the entry, links are not followed
+	 * @throws IOException If the entry can not be read
+	 */
+	public long getSize(String key) throws IOException {
+		long size = 0;
+		try (Stream<Path> walk = Files.walk(root.resolve(key))) {
+			for(Path p : (Iterable<Path>)walk::iterator){
+				if(Files.isRegularFile(p, LinkOption.NOFOLLOW_LINKS)){
+					size += Files.size(p);
+				}
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Takes a shared lease on the entry, other processes can not remove it until the lease is released.
+	 * Waits while another process removes the entry, the caller has to check if it still exists afterwards.
+	 * A process must hold at most one lease on an entry at a time.
+	 * @param key The key of a step
+	 * @return The lease, given back with {@link #release(FileLock)}
+	 * @throws IOException If the lease file can not be locked
+	 */
+	public FileLock lease(String key) throws IOException {
+		FileChannel channel = FileChannel.open(leases.resolve(key), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try{
+			return channel.lock(0, Long.MAX_VALUE, true);
+		}catch(IOException | RuntimeException e){
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Takes the exclusive lease of an entry before it is removed
+	 * @param key The key of a step
+	 * @return The lease, or null if another process holds a lease on the entry
+	 * @throws IOException If the lease file can not be locked
+	 */
+	public FileLock tryLeaseForRemoval(String key) throws IOException {
+		FileChannel channel = FileChannel.open(leases.resolve(key), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try{
+			FileLock lock = channel.tryLock();
+			if(lock == null){
+				channel.close();
+			}
+			return lock;
+		}catch(IOException | RuntimeException e){
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Gives a lease back
+	 * @param lease A lease taken by lease or tryLeaseForRemoval, may be null
+	 */
+	public void release(FileLock lease){
+		if(lease == null){
+			return;
+		}
+		try{
+			//closing the channel releases the lock
+			lease.channel().close();
+		}catch(IOException ioe){
+			logger.log(Level.WARNING, "Could not release a lease of the artifact store", ioe);
+		}
+	}
+
+	/**
+	 * Removes an entry from the store. The entry is renamed first, so it disappears at once
+	 * and the files are deleted afterwards.
+	 * @param key The key of a step
+	 * @throws IOException If the entry can not be removed
+	 */
+	public void remove(String key) throws IOException {
+		Path removed = Files.createTempDirectory(root, key + ".");
+		Files.move(root.resolve(key), removed, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		FileHandler.deleteRecursive(removed.toString());
+	}
+
+	/**
+	 * Links the stored outputs of a step into the given directory
+	 * @param key The key of the step
+	 * @param files The output files of the step, relative to the directory
+	 * @param dir The directory of the configuration
+	 * @throws IOException If a file is missing in the store or the link can not be created
+	 */
+	public void restore(String key, String[] files, String dir) throws IOException {
+		Path stored = root.resolve(key);
+		for(String file : files){
+			if(!Files.exists(stored.resolve(file), LinkOption.NOFOLLOW_LINKS)){
+				throw new IOException("File "+file+" is missing in the store entry "+stored);
+			}
+		}
+		for(String file : files){
+			Path link = Paths.get(dir, file);
+			FileHandler.createDirectories(link.getParent().toString());
+			FileHandler.link(stored.resolve(file).toString(), link.toString());
+		}
+	}
+
+	/**
+	 * Moves the outputs of a step into the store and replaces them with links. If another configuration
+	 * stored the same step before, its files are used and the new files are deleted.
+	 * @param key The key of the step
+	 * @param files The output files of the step, relative to the directory
+	 * @param dir The directory of the configuration
+	 * @throws IOException If the files can not be moved or linked
+	 */
+	public void publish(String key, String[] files, String dir) throws IOException {
+		Path target = root.resolve(key);
+		if(!Files.isDirectory(target)){
+			//fill a private directory first, the entry appears at once when it is renamed
+			Path staging = Files.createTempDirectory(root, key + ".");
+			Files.setPosixFilePermissions(staging, PosixFilePermissions.fromString("rwxr-xr-x"));
+			ArrayList<String> moved = new ArrayList<>();
+			try{
+				for(String file : files){
+					Path destination = staging.resolve(file);
+					FileHandler.createDirectories(destination.getParent().toString());
+					Files.move(Paths.get(dir, file), destination);
+					moved.add(file);
+				}
+				Files.move(staging, target, StandardCopyOption.ATOMIC_MOVE);
+				logger.fine("Stored "+files.length+" files of "+dir+" as "+key);
+			}catch(IOException ioe){
+				boolean raced = moved.size() == files.length && Files.isDirectory(target);
+				if(!raced){
+					//give the files back to the configuration, so the workflow can continue without the store
+					for(String file : moved){
+						Files.move(staging.resolve(file), Paths.get(dir, file), StandardCopyOption.REPLACE_EXISTING);
+					}
+				}
+				FileHandler.deleteRecursive(staging.toString());
+				if(!raced){
+					throw ioe;
+				}
+				logger.fine("Store entry "+key+" was created by another configuration, using its files.");
+			}
+		}else{
+			logger.fine("Store entry "+key+" already exists, replacing the files of "+dir+" with links.");
+		}
+		for(String file : files){
+			if(!Files.exists(target.resolve(file), LinkOption.NOFOLLOW_LINKS)){
+				throw new IOException("File "+file+" is missing in the store entry "+target);
+			}
+		}
+		for(String file : files){
+			Path p = Paths.get(dir, file);
+			if(Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS)){
+				FileHandler.deleteRecursive(p.toString());
+			}
+		}
+		this.restore(key, files, dir);
+	}
+}
@@ -0,0 +1,263 @@
+package general;
+
+import java.io.IOException;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+		% WorkflowWalker: A Workflow Parameter Optimizer
+		%
+		% Copyright 2017 Björn Groß and Raik Otto
+		%
+		% Licensed under the Apache License, Version 2.0 (the "License");
+		% you may not use this file except in compliance with the License.
+		% You may obtain a copy of the License at
+		%
+		%    http://www.apache.org/licenses/LICENSE-2.0
+		%
+		% Unless required by applicable law or agreed to in writing, software
+		% distributed under the License is distributed on an "AS IS" BASIS,
+		% WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+		% See the License for the specific language governing permissions and
+		% limitations under the License.
+*/
+
+/**
+ * Keeps the artifact store below a byte budget. When new outputs push the store over the budget,
+ * a background thread removes entries until it is below the budget again. Entries that are used by
+ * running configurations are never removed, neither the ones of this process nor, through the leases
+ * of the store, the ones of other processes that share the store.
+ * With POLICYlru the entries that were used least recently are removed first. With POLICYscore the
+ * entries whose best configuration had the lowest score are removed first, so the steps of good
+ * configurations, which the annealing is likely to sample again, are kept the longest.
+ */
+public class CacheManager {
+	private static Logger logger = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+	public static final int POLICYlru = 0;
+	public static final int POLICYscore = 1;
+	private ArtifactStore store;
+	private long budget = Long.MAX_VALUE;
+	private int policy = POLICYlru;
+	private Map<String, Entry> entries = new HashMap<>();
+	/** Entries that are evicted right now, they must not be handed out again */
+	private Set<String> removing = new HashSet<>();
+	private long total = 0;
+	private long clock = 0;
+	private ExecutorService evictor = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "cache-eviction");
+		t.setDaemon(true);
+		return t;
+	});
+	private AtomicBoolean pending = new AtomicBoolean(false);
+
+	private static class Entry {
+		long size;
+		long lastUsed;
+		double score = Double.NEGATIVE_INFINITY;
+		int users = 0;
+		/** Shared lease of the store, held while users is above 0 */
+		FileLock lease = null;
+	}
+
+	/**
+	 * Reads the entries that are already in the store, they are the first candidates for eviction
+	 * @param store The artifact store
+	 */
+	public CacheManager(ArtifactStore store){
+		this.store = store;
+		try{
+			for(String key : store.getKeys()){
+				Entry entry = new Entry();
+				entry.size = store.getSize(key);
+				entries.put(key, entry);
+				total += entry.size;
+			}
+		}catch(IOException ioe){
+			logger.log(Level.WARNING, "Could not read the entries of the artifact store, they will not be evicted.", ioe);
+		}
+		logger.fine("Artifact store contains "+entries.size()+" entries with "+total+" bytes.");
+	}
+
+	/**
+	 * @param budget The maximal number of bytes of the store
+	 * @param policy The eviction policy, POLICYlru or POLICYscore
+	 */
+	public void setBudget(long budget, int policy){
+		synchronized(this){
+			this.budget = budget;
+			this.policy = policy;
+		}
+		logger.info("Cache budget is "+budget+" bytes with "+(policy == POLICYscore ? "score weighted" : "LRU")+" eviction.");
+		this.checkBudget();
+	}
+
+	/**
+	 * Marks the entry as used by a configuration, it will not be evicted until it is released
+	 * @param key The key of a step
+	 * @return False if the entry is not in the store, nothing is marked then
+	 */
+	public synchronized boolean acquire(String key){
+		Entry entry = entries.get(key);
+		if(entry == null){
+			if(removing.contains(key) || !store.contains(key)){
+				return false;
+			}
+			//created by another process that shares the store
+			entry = new Entry();
+			try{
+				entry.size = store.getSize(key);
+			}catch(IOException ioe){
+				logger.log(Level.WARNING, "Could not read the size of the store entry "+key, ioe);
+			}
+			entries.put(key, entry);
+			total += entry.size;
+		}
+		if(entry.users == 0){
+			try{
+				entry.lease = store.lease(key);
+			}catch(IOException ioe){
+				logger.log(Level.WARNING, "Could not lease the store entry "+key+", it is not used.", ioe);
+				return false;
+			}
+			if(!store.contains(key)){
+				//removed by another process before the lease was taken
+				store.release(entry.lease);
+				entry.lease = null;
+				total -= entries.remove(key).size;
+				return false;
+			}
+		}
+		entry.users++;
+		entry.lastUsed = ++clock;
+		return true;
+	}
+
+	/**
+	 * Registers an entry that was just published by a configuration. The entry is marked as used by it.
+	 * @param key The key of a step
+	 * @return False if the entry is not in the store, nothing is marked then
+	 */
+	public boolean add(String key){
+		if(!this.acquire(key)){
+			logger.warning("Store entry "+key+" was published but is missing.");
+			return false;
+		}
+		this.checkBudget();
+		return true;
+	}
+
+	/**
+	 * Releases the entries used by a finished configuration
+	 * @param keys The keys of the entries
+	 * @param score The score of the configuration, NaN if it failed
+	 */
+	public synchronized void release(List<String> keys, double score){
+		for(String key : keys){
+			Entry entry = entries.get(key);
+			if(entry != null){
+				entry.users--;
+				if(entry.users == 0){
+					store.release(entry.lease);
+					entry.lease = null;
+				}
+				if(!Double.isNaN(score)){
+					entry.score = Math.max(entry.score, score);
+				}
+			}
+		}
+		if(total > budget){
+			//entries that were in use can be evicted now
+			this.checkBudget();
+		}
+	}
+
+	/**
+	 * Starts the eviction in the background, if the store exceeds the budget and no eviction is waiting
+	 */
+	private void checkBudget(){
+		synchronized(this){
+			if(total <= budget){
+				return;
+			}
+		}
+		//at most one eviction waits, an eviction that is already running may miss entries released after its start
+		if(pending.compareAndSet(false, true)){
+			evictor.execute(() -> {
+				pending.set(false);
+				this.evict();
+			});
+		}
+	}
+
+	private void evict(){
+		Map<String, Entry> victims = new LinkedHashMap<>();
+		synchronized(this){
+			List<Map.Entry<String, Entry>> candidates = new ArrayList<>();
+			for(Map.Entry<String, Entry> e : entries.entrySet()){
+				if(e.getValue().users == 0){
+					candidates.add(e);
+				}
+			}
+			Comparator<Map.Entry<String, Entry>> order = Comparator.comparingLong(e -> e.getValue().lastUsed);
+			if(policy == POLICYscore){
+				order = Comparator.<Map.Entry<String, Entry>>comparingDouble(e -> e.getValue().score).thenComparing(order);
+			}
+			candidates.sort(order);
+			long free = total - budget;
+			for(Map.Entry<String, Entry> e : candidates){
+				if(free <= 0){
+					break;
+				}
+				victims.put(e.getKey(), e.getValue());
+				free -= e.getValue().size;
+			}
+			//removed from the index at once, so acquire can not hand them out anymore
+			for(String key : victims.keySet()){
+				total -= entries.remove(key).size;
+				removing.add(key);
+			}
+		}
+		int evicted = 0;
+		for(String key : victims.keySet()){
+			FileLock lease = null;
+			try{
+				lease = store.tryLeaseForRemoval(key);
+				if(lease == null){
+					logger.fine("Store entry "+key+" is used by another process, it is not evicted.");
+					synchronized(this){
+						entries.put(key, victims.get(key));
+						total += victims.get(key).size;
+					}
+					continue;
+				}
+				store.remove(key);
+				evicted++;
+				logger.fine("Evicted store entry "+key);
+			}catch(IOException ioe){
+				logger.log(Level.WARNING, "Could not evict the store entry "+key, ioe);
+			}finally{
+				store.release(lease);
+				synchronized(this){
+					removing.remove(key);
+				}
+			}
+		}
+		if(evicted > 0){
+			synchronized(this){
+				logger.info("Evicted "+evicted+" entries from the artifact store, "+total+" of "+budget+" bytes used.");
+			}
+		}
+	}
+}
@@ -4,10 +4,22 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -31,6 +43,12 @@ import java.util.logging.Logger;
 
 public class FileHandler {
 	private static Logger logger = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+	public static final String OPlink = "link";
+	public static final String OPmkdir = "mkdir";
+	public static final String OPchmod = "chmod";
+	public static final String OPdelete = "delete";
+	/** Number of calls and total time in ns for each file operation */
+	private static Map<String, AtomicLong[]> timings = new ConcurrentHashMap<>();
 	
 	public static Map<String, Input> getInput(String basedir, String inputFile, String[] keyCheck){
 		Map<String, Input> inputFiles = new HashMap<>();
@@ -131,4 +149,107 @@ public class FileHandler {
 		return base;
 	}
 	
+	/**
+	 * Creates a symbolic link, an existing file or link with the same name is replaced (like ln -snf)
+	 * @param target The file the link points to
+	 * @param link The path of the new link
+	 * @throws IOException If the link can not be created
+	 */
+	public static void link(String target, String link) throws IOException {
+		long start = System.nanoTime();
+		Path linkPath = Paths.get(link);
+		Files.deleteIfExists(linkPath);
+		Files.createSymbolicLink(linkPath, Paths.get(target));
+		addTiming(OPlink, start);
+	}
+
+	/**
+	 * Creates the directory and all missing parent directories (like mkdir -p)
+	 * @param dir The path of the directory
+	 * @throws IOException If the directory can not be created
+	 */
+	public static void createDirectories(String dir) throws IOException {
+		long start = System.nanoTime();
+		Files.createDirectories(Paths.get(dir));
+		addTiming(OPmkdir, start);
+	}
+
+	/**
+	 * Allows everyone to read, write and execute the file (like chmod 777)
+	 * @param file The path of the file
+	 * @throws IOException If the permissions can not be changed
+	 */
+	public static void makeExecutable(String file) throws IOException {
+		long start = System.nanoTime();
+		Files.setPosixFilePermissions(Paths.get(file), PosixFilePermissions.fromString("rwxrwxrwx"));
+		addTiming(OPchmod, start);
+	}
+
+	/**
+	 * Deletes the directory with all its content (like rm -r). Files are deleted in parallel,
+	 * directories afterwards from the deepest to the top. Symbolic links are deleted, not followed.
+	 * @param dir The path of the directory
+	 * @throws IOException If a file can not be deleted
+	 */
+	public static void deleteRecursive(String dir) throws IOException {
+		long start = System.nanoTime();
+		List<Path> paths;
+		try (Stream<Path> walk = Files.walk(Paths.get(dir))) {
+			paths = walk.collect(Collectors.toList());
+		}
+		List<Path> dirs = new ArrayList<>();
+		List<Path> files = new ArrayList<>();
+		for(Path p : paths){
+			if(Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS)){
+				dirs.add(p);
+			}else{
+				files.add(p);
+			}
+		}
+		try{
+			files.parallelStream().forEach(p -> {
+				try{
+					Files.deleteIfExists(p);
+				}catch(IOException ioe){
+					throw new UncheckedIOException(ioe);
+				}
+			});
+		}catch(UncheckedIOException uioe){
+			throw uioe.getCause();
+		}
+		//walk lists parents before their children
+		Collections.reverse(dirs);
+		for(Path p : dirs){
+			Files.deleteIfExists(p);
+		}
+		addTiming(OPdelete, start);
+	}
+
+	private static void addTiming(String operation, long start){
+		AtomicLong[] t = timings.computeIfAbsent(operation, k -> new AtomicLong[]{new AtomicLong(), new AtomicLong()});
+		t[0].incrementAndGet();
+		t[1].addAndGet(System.nanoTime() - start);
+	}
+
+	/**
+	 * @return The number of calls and the total and average time of each file operation
+	 */
+	public static String getTimings(){
+		StringBuilder result = new StringBuilder("File operations:");
+		for(Map.Entry<String, AtomicLong[]> e : new TreeMap<>(timings).entrySet()){
+			long calls = e.getValue()[0].get();
+			long ns = e.getValue()[1].get();
+			result.append("\n\t");
+			result.append(e.getKey());
+			result.append(": ");
+			result.append(calls);
+			result.append(" calls, ");
+			result.append(ns / 1000000);
+			result.append("ms total, ");
+			result.append(calls > 0 ? ns / calls / 1000 : 0);
+			result.append("us average");
+		}
+		return result.toString();
+	}
+
 }
@@ -12,6 +12,8 @@ import java.util.logging.*;
 import java.util.logging.FileHandler;
 
 import logdb.LogDB;
+import logdb.MemoryStorage;
+import logdb.Storage;
 import sampler.Walker;
 
 /*
@@ -41,12 +43,17 @@ public class Main {
 	private static String dbnameDEFAULT = "log.db"; //default name
 	private static int sampleNumberDEFAULT = 100;
 	private static int threadNumberDEFAULT = 1;
+	private static int parallelNumberDEFAULT = 1;
 	private static String runName = runNameDEFAULT;
 	private static String inputFile = "";
 	private static String baseDir = baseDirDEFAULT;
 	private static String dbname = dbnameDEFAULT; //default name
+	private static String snapshotFile = "";
+	private static String cacheSize = "";
+	private static String cachePolicy = "lru";
 	private static int sampleNumber = sampleNumberDEFAULT;
 	private static int threadNumber = threadNumberDEFAULT;
+	private static int parallelNumber = parallelNumberDEFAULT;
 	private static int randomSeed;
 	
 	
@@ -79,9 +86,12 @@ public class Main {
 				new String[]{"Run name", "r", "run"},
 				new String[]{"Database name", "d", "database"},
 				new String[]{"Input file", "i", "input"},
-				new String[]{"Base path", "b", "base"}
+				new String[]{"Base path", "b", "base"},
+				new String[]{"Snapshot file", "snapshot", "snapshot"},
+				new String[]{"Cache size", "cache-size", "cache-size"},
+				new String[]{"Cache policy", "cache-policy", "cache-policy"}
 		};
-		String[] pstring = {runName, dbname, inputFile, baseDir};
+		String[] pstring = {runName, dbname, inputFile, baseDir, snapshotFile, cacheSize, cachePolicy};
 		for(int i=0; i<sparameter.length; i++) {
 			String pattern1 = "-"+sparameter[i][1];
 			String pattern2 = "--"+sparameter[i][2];
@@ -105,13 +115,17 @@ public class Main {
 		dbname = pstring[1];
 		inputFile = pstring[2];
 		baseDir = pstring[3];
+		snapshotFile = pstring[4];
+		cacheSize = pstring[5];
+		cachePolicy = pstring[6];
 
 		String[][] parameter = {
 				new String[]{"Seed", "seed", "seed"},
 				new String[]{"Threads", "t", "threads"},
-				new String[]{"Sample", "s", "sample"}
+				new String[]{"Sample", "s", "sample"},
+				new String[]{"Parallel", "p", "parallel"}
 		};
-		int[] pint = {randomSeed, threadNumber, sampleNumber};
+		int[] pint = {randomSeed, threadNumber, sampleNumber, parallelNumber};
 		for(int i=0; i<parameter.length; i++) {
 			String pattern1 = "-"+parameter[i][1];
 			String pattern2 = "--"+parameter[i][2];
@@ -134,14 +148,27 @@ public class Main {
 		randomSeed = pint[0];
 		threadNumber = pint[1];
 		sampleNumber = pint[2];
+		parallelNumber = pint[3];
 
-		LogDB logdb = new LogDB(dbname, randomSeed);
+		Storage logdb;
+		if(nargs.contains("--memory")){
+			logger.info("Storage is kept in memory"+(snapshotFile.isEmpty() ? "." : ", snapshot file is "+snapshotFile));
+			logdb = snapshotFile.isEmpty() ? new MemoryStorage(randomSeed) : new MemoryStorage(randomSeed, snapshotFile);
+		}else{
+			LogDB db = new LogDB(dbname, randomSeed);
+			if(nargs.contains("--write-behind")){
+				db.startWriteBehind();
+			}
+			logdb = db;
+		}
 		TargetFunction tf = new TargetFunction(logdb);
+		tf.setThreads(threadNumber);
 
 		//this is for testing the walker with a simple command
 		if(nargs.contains("--test")){
 			// RastriginWalker is a basic function to test the functionality
 			Walker test = new RastriginWalker(logdb, runName);
+			test.setParallel(parallelNumber);
 			test.sample(sampleNumber);
 			System.exit(0);
 		}
@@ -159,6 +186,11 @@ public class Main {
 			logger.info("Target function set to meta comparison.");
 		}
 
+		if(nargs.contains("--gold-stream")){
+			logger.info("A sorted gold standard will be compared by a merge join on its file.");
+			tf.setStreamGold(true);
+		}
+
 		if(nargs.contains("--overwrite")){
 			logger.info("Target function will overwrite old gold standards if any exist.");
 			tf.setOverwrite(true);
@@ -174,7 +206,7 @@ public class Main {
 			rna = true;
 			logger.info("Selecting RNAseq Workflow");
 		}
-		logger.info("Run values:\n\tbaseDir: "+baseDir+"\n\trunName: "+runName+"\n\tsampleNumber: "+sampleNumber);
+		logger.info("Run values:\n\tbaseDir: "+baseDir+"\n\trunName: "+runName+"\n\tsampleNumber: "+sampleNumber+"\n\tparallel: "+parallelNumber);
 
 		if(baseDir.equals(baseDirDEFAULT)){
 			logger.warning("baseDir uses default value '"+baseDirDEFAULT+"'");
@@ -188,8 +220,27 @@ public class Main {
 		if(inputFile.isEmpty()){
 			showHelp("No input file given.");
 		}
-		Walker ploid = new LargeWalker(logdb, runName, baseDir, inputFile, threadNumber, tf, rna);
+		LargeWalker ploid = new LargeWalker(logdb, runName, baseDir, inputFile, threadNumber, tf, rna);
 		ploid.useCache(useCache);
+		if(nargs.contains("--fuse")){
+			logger.info("Consecutive steps without a choice will run in a single process.");
+			ploid.setFusion(true);
+		}
+		if(nargs.contains("--stream")){
+			logger.info("Steps will be connected by named pipes where possible.");
+			ploid.setStreaming(true);
+		}
+		if(nargs.contains("--scatter")){
+			logger.info("Variant calling will run in one shard per contig with up to "+threadNumber+" shards at a time.");
+			ploid.setScatter(true);
+		}
+		if(!cacheSize.isEmpty()){
+			if(!cachePolicy.equals("lru") && !cachePolicy.equals("score")){
+				showHelp("Unknown cache policy: "+cachePolicy);
+			}
+			ploid.setCacheLimit(parseSize(cacheSize), cachePolicy.equals("score") ? CacheManager.POLICYscore : CacheManager.POLICYlru);
+		}
+		ploid.setParallel(parallelNumber);
 		ploid.sample(sampleNumber);
 
 	}
@@ -206,8 +257,18 @@ public class Main {
 		println("\t-r (--run) <name> to set the name of the run (default is '"+runName+"')");
 		println("\t-s (--sample) <number> to set the number of samples (default is "+sampleNumber+")");
 		println("\t--no-cache to deactivate the cache function (will not use old results for new pipelines)");
+		println("\t-cache-size <bytes> to limit the size of the stored step outputs, K, M and G can be appended (default: no limit)");
+		println("\t-cache-policy <lru|score> to evict the least recently used outputs or those of the lowest scoring configurations first (default: lru)");
+		println("\t--fuse to run consecutive steps without parameters in a single process (default: off)");
+		println("\t--stream to run steps at the same time and pipe files that only the next step reads (default: off)");
+		println("\t--scatter to call variants in one shard per contig of the reference, within the thread budget (default: off)");
 		println("\t-t (--thread) <number> to set the number of available threads (default is "+threadNumber+")");
+		println("\t-p (--parallel) <number> to set the number of configurations that are sampled at the same time (default is "+parallelNumber+")");
+		println("\t--memory to keep all data in memory instead of the database (default: off)");
+		println("\t-snapshot <file> to load the in memory data from the file and write it back on exit, only used with --memory");
+		println("\t--write-behind to write samples and variants to the database in a separate thread (default: off)");
 		println("\t--gold changes the target function from meta comparison (default) to comparison with a given gold standard");
+		println("\t--gold-stream compares a coordinate sorted gold standard by reading its file instead of the database (default: off)");
 		println("\t--overwrite defines if any old variants from previous runs will be overwritten (default: off)");
 		println("\t--rna to use the GATK RNAseq workflow instead of the GATK DNA Variant Calling workflow.");
 		println("\t--anno to annotate the raw variants in the last step.");
@@ -224,6 +285,26 @@ public class Main {
 		System.exit(0);
 	}
 
+	/**
+	 * @param size A number of bytes, optionally followed by K, M or G
+	 * @return The number of bytes
+	 */
+	private static long parseSize(String size){
+		String units = "KMG";
+		long factor = 1;
+		int unit = units.indexOf(Character.toUpperCase(size.charAt(size.length()-1)));
+		if(unit >= 0){
+			factor = 1L << (10 * (unit+1));
+			size = size.substring(0, size.length()-1);
+		}
+		try{
+			return Long.parseLong(size) * factor;
+		}catch(NumberFormatException nfe){
+			showHelp("Cache size is not a number: "+size);
+			return 0;
+		}
+	}
+
 	private static void println(String s){
 		System.out.println(s);
 	}
@@ -1,24 +1,48 @@
 package instances;
 
+import general.ArtifactStore;
+import general.CacheManager;
 import general.ExitCode;
 import general.FileHandler;
 import general.Input;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.logging.*;
 
-import logdb.LogDB;
+import logdb.Storage;
 import sampler.Edge;
 import sampler.ExitCodeException;
+import sampler.ScatterCommand;
 import sampler.Walker;
 
 /*
@@ -47,6 +71,33 @@ abstract public class BashWalker extends Walker {
 	private String cacheDir;
 	protected int THREADS = 1; //Default
 	protected TargetFunction tf;
+	private ArtifactStore store;
+	/** Identity of the input files and variables of the run, by the name that the steps use for them */
+	private Map<String, String> inputIdentities = new HashMap<>();
+	/** Workflows and store keys of the running configurations, used to store or pipe the outputs of each step */
+	private Map<Long, Edge[]> workflows = new ConcurrentHashMap<>();
+	private Map<Long, String[]> storeKeys = new ConcurrentHashMap<>();
+	private CacheManager cacheManager;
+	/** Store entries used by the running configurations, they are protected from eviction until the configuration is done */
+	private Map<Long, List<String>> usedKeys = new ConcurrentHashMap<>();
+	/** Printed by the script of a unit after each step, followed by the position of the step and its exit code */
+	private static final String STEPMARKER = "@@workflowwalker step ";
+	/** Runs adjacent steps at the same time, connected by named pipes */
+	private boolean STREAM = false;
+	/** Steps of the running configurations that write into pipes, they are finished by the next step */
+	private Map<Long, PipedStep> pipes = new ConcurrentHashMap<>();
+	/** Runs interval parallel steps in shards per contig */
+	private boolean SCATTER = false;
+	/** Directory of the run that holds the shared inputs, each configuration links it under the same name */
+	private static final String SHARED = "shared";
+
+	/** A step that runs in the background and writes into named pipes */
+	private static class PipedStep {
+		Edge edge;
+		String[] outputs;
+		String[] paths;
+		FutureTask<Integer> task;
+	}
 	
 	/**
 	 * 
@@ -57,7 +108,7 @@ abstract public class BashWalker extends Walker {
 	 * @param threads Number of threads used
 	 * @param target The target function instance
 	 */
-	public BashWalker(LogDB logdb, String runName, TargetFunction target, int threads) {
+	public BashWalker(Storage logdb, String runName, TargetFunction target, int threads) {
 		super(logdb, runName);
 		logger.fine("Created new Bash Walker instance");
 		this.THREADS = threads;
@@ -97,6 +148,105 @@ abstract public class BashWalker extends Walker {
 	private void createCache(String baseDir){
 		this.baseDir = baseDir;
 		this.cacheDir = FileHandler.createCache(baseDir, runName);
+		try{
+			this.store = new ArtifactStore(baseDir);
+		}catch(IOException ioe){
+			logger.log(Level.SEVERE, "Error while creating the artifact store in "+baseDir, ioe);
+			System.exit(ExitCode.PATHERROR);
+		}
+		for(Map.Entry<String, Input> input : inputFiles.entrySet()){
+			String identity = store.getInputIdentity(input.getValue());
+			inputIdentities.put(getFile(input.getKey()), identity);
+			if(Arrays.asList(getArchiveKeys()).contains(input.getKey())){
+				inputIdentities.put(getArchive(input.getKey()), identity);
+			}
+		}
+		this.cacheManager = new CacheManager(store);
+		this.stageSharedInputs();
+	}
+
+	/**
+	 * Links the shared inputs into the shared directory of the run and extracts the archives there.
+	 * An archive is extracted again only if it changed since the last extraction.
+	 */
+	private void stageSharedInputs(){
+		Path shared = Paths.get(cacheDir, SHARED).toAbsolutePath();
+		List<String> archives = Arrays.asList(getArchiveKeys());
+		try{
+			FileHandler.createDirectories(shared.toString());
+			for(String key : getSharedKeys()){
+				Input input = inputFiles.get(key);
+				if(input == null || input.isVariable()){
+					continue;
+				}
+				Path source = Paths.get(baseDir + input.getFullInput()).toAbsolutePath();
+				if(!Files.exists(source)){
+					continue;
+				}
+				FileHandler.link(source.toString(), shared.resolve(input.getFileOnly()).toString());
+				if(!archives.contains(key)){
+					continue;
+				}
+				String identity = source+":"+Files.size(source)+":"+Files.getLastModifiedTime(source).toMillis();
+				Path target = shared.resolve(key);
+				Path marker = target.resolve(".source");
+				if(Files.exists(marker) && new String(Files.readAllBytes(marker), StandardCharsets.UTF_8).equals(identity)){
+					logger.fine("Archive "+key+" is extracted already.");
+					continue;
+				}
+				long start = System.currentTimeMillis();
+				//extracted next to the target and renamed, so an interrupted extraction is never used
+				Path temp = shared.resolve("."+key);
+				for(Path p : new Path[]{temp, target}){
+					if(Files.exists(p)){
+						FileHandler.deleteRecursive(p.toString());
+					}
+				}
+				FileHandler.createDirectories(temp.toString());
+				ProcessBuilder pb = new ProcessBuilder("tar", "xf", source.toString());
+				pb.directory(temp.toFile());
+				pb.redirectErrorStream(true);
+				pb.redirectOutput(ProcessBuilder.Redirect.appendTo(shared.resolve(key+".log").toFile()));
+				int exitValue = pb.start().waitFor();
+				if(exitValue != 0){
+					logger.severe("Could not extract "+source+", tar exited with "+exitValue);
+					System.exit(ExitCode.INPUTERROR);
+				}
+				Files.write(temp.resolve(".source"), identity.getBytes(StandardCharsets.UTF_8));
+				Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+				logger.info("Extracted "+input.getFileOnly()+" into "+target+", took "+(System.currentTimeMillis()-start)+" ms");
+			}
+		}catch(IOException | InterruptedException ex){
+			logger.log(Level.SEVERE, "Error while staging the shared inputs in "+shared, ex);
+			System.exit(ExitCode.PATHERROR);
+		}
+	}
+
+	/**
+	 * Pipes outputs that are only read by the next step through named pipes, both steps run at the same time then.
+	 * The steps have to mark these files with EdgeGroup.setStreamFiles.
+	 * @param stream True to enable the streaming of steps
+	 */
+	public void setStreaming(boolean stream){
+		this.STREAM = stream;
+	}
+
+	/**
+	 * Splits the variant calling into one shard per contig, the shards run at the same time within the thread budget.
+	 * The steps have to provide the commands for a shard with EdgeGroup.setScatter.
+	 * @param scatter True to enable the sharding of steps
+	 */
+	public void setScatter(boolean scatter){
+		this.SCATTER = scatter;
+	}
+
+	/**
+	 * Limits the size of the artifact store, entries are evicted in the background if it is exceeded
+	 * @param bytes The maximal number of bytes of the store
+	 * @param policy The eviction policy, CacheManager.POLICYlru or CacheManager.POLICYscore
+	 */
+	public void setCacheLimit(long bytes, int policy){
+		cacheManager.setBudget(bytes, policy);
 	}
 	
 	protected boolean isSingle() {
@@ -108,6 +258,21 @@ abstract public class BashWalker extends Walker {
 	 */
 	abstract protected String[] getInputKeys();
 
+	/**
+	 * @return The keys of the inputs that no step modifies, e.g. references and their indexes.
+	 * They are staged once per run in a shared directory instead of in the directory of each configuration.
+	 */
+	protected String[] getSharedKeys(){
+		return new String[0];
+	}
+
+	/**
+	 * @return The keys of shared inputs that are tar archives, they are extracted once per run
+	 */
+	protected String[] getArchiveKeys(){
+		return new String[0];
+	}
+
 	/**
 	 * Returns the execDir for the given configId
 	 * @param configId The id of the configuration
@@ -142,26 +307,25 @@ abstract public class BashWalker extends Walker {
 		String execDir = getExecDir(configId);
 		Map<String, Input> fileStack = new HashMap<>();
 		fileStack.putAll(inputFiles);
+		fileStack.keySet().removeAll(Arrays.asList(getSharedKeys()));
+		try{
+			//the shared inputs are reached through a single link
+			FileHandler.link(Paths.get(cacheDir, SHARED).toAbsolutePath().toString(), execDir + "/" + SHARED);
+		}catch(Exception ioe){
+			logger.log(Level.SEVERE, "Error while linking the shared inputs into the exec folder", ioe);
+			throw new ExitCodeException(ExitCode.INPUTERROR);
+		}
 		
-		//TODO: add mkdir option to process call
 		// link the initial files that are needed for each run anyways
-		Process p;
 		for(String key : fileStack.keySet()){
-			//create process and set working dir
 			File f = new File(this.baseDir +  fileStack.get(key).getFullInput());
 			if(!f.exists()) { 
 				logger.log(Level.FINER, "Assuming "+key+" to be a string variable, not creating a soft link.");
 				continue;
 			}
-			ProcessBuilder pb = new ProcessBuilder("ln", "-snf", baseDir +  fileStack.get(key).getFullInput(), execDir + "/" + fileStack.get(key).getFileOnly());
-			logger.finest("Command: ln -snf "+baseDir+fileStack.get(key).getFullInput()+" "+execDir + "/" + fileStack.get(key).getFileOnly());
+			logger.finest("Link: "+baseDir+fileStack.get(key).getFullInput()+" "+execDir + "/" + fileStack.get(key).getFileOnly());
 			try{
-				p = pb.start();
-				int exitValue = p.waitFor();
-				if(exitValue != 0){
-					logger.severe("Exit value for linking "+key+"("+fileStack.get(key).getFullInput()+") is " + exitValue);
-					throw new ExitCodeException(exitValue);
-				}
+				FileHandler.link(baseDir +  fileStack.get(key).getFullInput(), execDir + "/" + fileStack.get(key).getFileOnly());
 			}catch(Exception ioe){
 				logger.log(Level.SEVERE, "Error while copying the input files as links to the exec folder", ioe);
 				throw new ExitCodeException(ExitCode.INPUTERROR);
@@ -171,18 +335,70 @@ abstract public class BashWalker extends Walker {
 	}
 	
 	@Override
-	protected boolean handleCacheFiles(long configId, Edge[] workflow, long cacheId, int lastCommonStep) {
-		if(!(USECACHE && lastCommonStep > 0 && cacheId > 0)){
-			return false;
+	protected int handleCacheFiles(long configId, Edge[] workflow, long cacheId, int lastCommonStep) {
+		workflows.put(configId, workflow);
+		if(!USECACHE){
+			return 0;
 		}
 		String execDir = getExecDir(configId);
+		int stored = 0;
+		if(store != null){
+			//the key of each step covers its own inputs, a file written by an earlier step is identified by the key of that step
+			String[] keys = new String[workflow.length];
+			Map<String, String> producers = new HashMap<>();
+			for(int i=0; i<workflow.length; i++){
+				List<String> inputs = new ArrayList<>();
+				for(String input : workflow[i].getInputFiles()){
+					String identity = producers.containsKey(input) ? "step:"+producers.get(input) : inputIdentities.get(input);
+					inputs.add(input + "=" + (identity == null ? "value" : identity));
+				}
+				keys[i] = ArtifactStore.getKey(workflow[i].getGroupName(), workflow[i].getCommand(), inputs);
+				if(workflow[i].getOutputFiles() != null){
+					for(String output : workflow[i].getOutputFiles()){
+						producers.put(output, keys[i]);
+					}
+				}
+			}
+			storeKeys.put(configId, keys);
+			List<String> used = new ArrayList<>();
+			usedKeys.put(configId, used);
+			//the last step writes the results of the configuration, it is never stored
+			boolean[] available = new boolean[workflow.length];
+			for(int i=0; i<workflow.length-1; i++){
+				available[i] = cacheManager.acquire(keys[i]);
+				if(available[i]){
+					used.add(keys[i]);
+				}
+			}
+			for(int i=workflow.length-2; i>=0 && stored == 0; i--){
+				if(available[i] && isSkippable(workflow, available, i)){
+					stored = i+1;
+				}
+			}
+			if(stored > 0 && stored >= lastCommonStep){
+				try{
+					for(int i=0; i<stored; i++){
+						if(available[i] && workflow[i].getOutputFiles() != null){
+							store.restore(keys[i], workflow[i].getOutputFiles(), execDir);
+						}
+					}
+					logger.fine("Restored the outputs of the first "+stored+" steps from the artifact store.");
+					return stored;
+				}catch(IOException ioe){
+					logger.log(Level.WARNING, "Error while linking the files of the artifact store, trying the cached configuration.", ioe);
+				}
+			}
+		}
+		if(!(lastCommonStep > 0 && cacheId > 0)){
+			return 0;
+		}
 		ArrayList<Input> fileStack = new ArrayList<>();
 		//check the cache
 		// assert the cache target folder exists
 		String cachedConf = this.getExecDir(cacheId);
 		if(Files.notExists(Paths.get(cachedConf))){
 			logger.warning("Tried to resolve cache dir "+cachedConf+" but no directory found. Resuming normal execution.");
-			return false;
+			return 0;
 		}else{
 			logger.finest("Cache dir "+cachedConf+" exists, resuming cache handling...");
 		}
@@ -193,55 +409,56 @@ abstract public class BashWalker extends Walker {
 				continue;
 			}
 			for(String cacheFile : workflow[i].getOutputFiles()){
+				if(Files.notExists(Paths.get(cachedConf, cacheFile))){
+					logger.warning("Cached file "+cachedConf+"/"+cacheFile+" was evicted. Resuming normal execution.");
+					return 0;
+				}
 				Input val = new Input(cachedConf+"/"+cacheFile);
 				val.setFileOnly(cacheFile);
 				fileStack.add(val);
 			}
 		}
-		Process p;
 		for(Input inp : fileStack){
 			File f = new File(execDir + "/" + inp.getFileOnly());
-			String parent = f.getParent();
-			//create process and set working dir
-			ProcessBuilder pbMkdir = new ProcessBuilder("mkdir","-p",parent);
-			pbMkdir.redirectErrorStream(true);
-			ProcessBuilder pbLn = new ProcessBuilder("ln", "-snf", inp.getFullInput(), f.getAbsolutePath());
-			pbLn.redirectErrorStream(true);
-			logger.finest("Command: "+pbMkdir.command());
-			logger.finest("Command: "+pbLn.command());
+			logger.finest("Link: "+inp.getFullInput()+" "+f.getAbsolutePath());
 			try{
-				p = pbMkdir.start();
-				//add the output to the log
-				BufferedReader reader = new BufferedReader(new InputStreamReader(p.getInputStream()));
-				String line;
-				while ( (line = reader.readLine()) != null) {
-				   logger.fine(line);
-				}
-				int exitValue = p.waitFor();
-				if(exitValue != 0){
-					logger.severe("Exit value for mkdir "+inp.getFileOnly()+" is " + exitValue);
-					throw new Exception("Error while creating directory, task could not be executed.");
-				}
-				p = pbLn.start();
-				//add the output to the log
-				reader = new BufferedReader(new InputStreamReader(p.getInputStream()));
-				while ( (line = reader.readLine()) != null) {
-				   logger.fine(line);
-				}
-				exitValue = p.waitFor();
-				if(exitValue != 0){
-					logger.severe("Exit value for linking "+inp.getFileOnly()+" is " + exitValue);
-					return false;
-				}
+				FileHandler.createDirectories(f.getParent());
+				FileHandler.link(inp.getFullInput(), f.getAbsolutePath());
 			}catch(Exception ioe){
 				logger.log(Level.SEVERE, "Error while copying the cache files as links to the exec folder", ioe);
-				return false;
+				return 0;
 			}
 		}
 		//all ok
-		return true;
+		return lastCommonStep;
 	}
 	
+	/**
+	 * Steps up to the given one can be skipped if the outputs of all of them are stored, or if the
+	 * steps after it do not need the outputs of the missing ones
+	 * @param workflow Array of edges that form the workflow with a specific configuration
+	 * @param available True for every step whose outputs are in the artifact store
+	 * @param last The last step that would be skipped
+	 * @return True if the workflow can continue after the given step
+	 */
+	private boolean isSkippable(Edge[] workflow, boolean[] available, int last){
+		ArrayList<String> needed = new ArrayList<>();
+		for(int i=last+1; i<workflow.length; i++){
+			needed.addAll(Arrays.asList(workflow[i].getInputFiles()));
+		}
+		for(int i=0; i<last; i++){
+			if(available[i] || workflow[i].getOutputFiles() == null){
+				continue;
+			}
+			for(String output : workflow[i].getOutputFiles()){
+				if(needed.contains(output)){
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Returns the file name (without path) for an input file key
 	 * @param name The key name
@@ -252,30 +469,26 @@ abstract public class BashWalker extends Walker {
 			logger.warning("Requested file or variable for key '"+name+"' does not exist.");
 		}
 		logger.finest("Requested file for key '"+name+"' = "+inputFiles.get(name).getFileOnly());
+		if(!inputFiles.get(name).isVariable() && Arrays.asList(getSharedKeys()).contains(name)){
+			return SHARED + "/" + inputFiles.get(name).getFileOnly();
+		}
 		return inputFiles.get(name).getFileOnly();
 	}
+
+	/**
+	 * @param name The key of an archive input
+	 * @return The directory that contains the extracted archive, relative to the directory of a configuration
+	 */
+	protected String getArchive(String name) {
+		return SHARED + "/" + name;
+	}
 	
 	@Override
 	protected void deleteWorkfiles(long configId){
 		String execDir = getExecDir(configId);
 		logger.info("Deleting "+execDir+"...");
-		Process p;
-		ProcessBuilder rm = new ProcessBuilder("rm", "-r", execDir);
-		rm.redirectErrorStream(true);
-		logger.finest("Command: "+rm.command());
 		try{
-			p = rm.start();
-			//add the output to the log
-			BufferedReader reader = new BufferedReader(new InputStreamReader(p.getInputStream()));
-			String line;
-			while ( (line = reader.readLine()) != null) {
-			   logger.fine(line);
-			}
-			int exitValue = p.waitFor();
-			if(exitValue != 0){
-				logger.severe("Exit value for rm "+execDir+" is: " + exitValue);
-				throw new Exception("Error while removing directory, task could not be executed.");
-			}
+			FileHandler.deleteRecursive(execDir);
 		}catch(Exception ioe){
 			logger.log(Level.SEVERE, "Error while removing the cache files", ioe);
 		}
@@ -283,10 +496,37 @@ abstract public class BashWalker extends Walker {
 
 	@Override
 	protected void traverseEdge(Edge e, long configId) throws ExitCodeException {
+		//a step that reads from a pipe does not write into another one, so at most two steps run at the same time
+		String[] pipedOutputs = pipes.containsKey(configId) ? new String[0] : this.getPipedOutputs(e, configId);
+		PipedStep piped = pipes.remove(configId);
+		try{
+			this.writeScript(e.getGroupName(), e.getCommand(), configId);
+			this.checkInputs(e, configId, new ArrayList<>());
+			if(pipedOutputs.length > 0 && this.startPiped(e, configId, pipedOutputs)){
+				return;
+			}
+			//a step that reads from a pipe runs in one process, the pipe can only be read once
+			int exitValue = (SCATTER && e.getScatter() != null && piped == null) ? this.runScattered(e, configId) : this.runScript(e, configId);
+			this.checkOutputs(e, configId, exitValue, new String[0]);
+		}finally{
+			if(piped != null){
+				this.finishPiped(piped, configId);
+			}
+		}
+		storeOutputs(e, configId);
+	}
+
+	/**
+	 * Writes the script of a task into the directory of the configuration
+	 * @param name The name of the task, the script is called #name.sh
+	 * @param command The commands of the script
+	 * @param configId The id of the configuration
+	 */
+	private void writeScript(String name, String command, long configId) throws ExitCodeException {
 		StringBuilder script = new StringBuilder("#!/bin/bash");
 		script.append(System.getProperty("line.separator"));
-		script.append(e.getCommand());
-		String scriptname = e.getGroupName() + ".sh";
+		script.append(command);
+		String scriptname = name + ".sh";
 		
 		logger.fine("Script: "+script.toString()+System.getProperty("line.separator"));
 		
@@ -297,43 +537,48 @@ abstract public class BashWalker extends Walker {
 			writer.print(script.toString());
 			writer.close();
 			//make executable for all
-			Process chmod = Runtime.getRuntime().exec(new String[]{"chmod", "777", nuscript.getAbsolutePath()});
-			int exit = chmod.waitFor();
-		        logger.fine("Changed the permissions of "+nuscript.getAbsolutePath()+" to 777, exit value: "+exit);
+			FileHandler.makeExecutable(nuscript.getAbsolutePath());
+			logger.fine("Changed the permissions of "+nuscript.getAbsolutePath()+" to 777");
 		}catch(Exception ex){
-			logger.log(Level.SEVERE,"Exception while writing the script file for task "+e.getGroupName(), ex);
+			logger.log(Level.SEVERE,"Exception while writing the script file for task "+name, ex);
 			throw new ExitCodeException(ExitCode.PATHERROR);
 		}
-		//create process and set working dir
-		Process p;
-		ProcessBuilder pb;
-		pb = new ProcessBuilder("./"+scriptname);
-		pb.directory(new File(getExecDir(configId)));
-		pb.redirectErrorStream(true);
-		//pb.inheritIO(); // print to stdout of the java process
-		
-		//Assert that all inputs are located
+	}
+
+	/**
+	 * Asserts that all inputs of the step are located in the directory of the configuration
+	 * @param e Edge object that will be executed
+	 * @param configId The id of the configuration
+	 * @param produced Inputs that are written by steps that run before in the same process, they are not checked
+	 */
+	private void checkInputs(Edge e, long configId, List<String> produced){
 		logger.finest("Detected "+e.getInputFiles().length+" inputs, validating their existence...");
 		for(int i=0; i< e.getInputFiles().length; i++){
 			File f = new File(getExecDir(configId)+"/"+e.getInputFiles()[i]);
-			if(!f.exists()){
+			if(produced.contains(e.getInputFiles()[i])){
+				logger.finer("File "+i+": "+e.getInputFiles()[i]+" is written by an earlier step of the unit.");
+			}else if(!f.exists()){
 				logger.log(Level.SEVERE, "File assertion failed for input "+i+": "+getExecDir(configId)+"/"+e.getInputFiles()[i]+" not found in the directory for task "+e.getGroupName());
 				logger.info("Assuming '"+e.getInputFiles()[i]+"' is a string variable. If this is not true, a problem occured.");
 			}else{
 				logger.finer("File "+i+": "+e.getInputFiles()[i]+" exists.");
 			}
 		}
+	}
+
+	/**
+	 * Runs the script of the step and waits for it
+	 * @param e Edge object that will be executed
+	 * @param configId The id of the configuration
+	 * @return The exit code of the script
+	 */
+	private int runScript(Edge e, long configId) throws ExitCodeException {
 		//run the task and catch the exit code
 		int exitValue = 0;
+		Logger tasklog = null;
 		try{
-			Logger tasklog = startLogger(e.getGroupName(), configId);
-			p = pb.start();
-			BufferedReader reader = new BufferedReader(new InputStreamReader(p.getInputStream()));
-			String line;
-			while ( (line = reader.readLine()) != null) {
-				tasklog.info(line);
-			}
-			exitValue = p.waitFor();
+			tasklog = startLogger(e.getGroupName(), configId);
+			exitValue = runProcess(e.getGroupName(), configId, tasklog, "");
 			logger.info("Exit value of task "+e.getGroupName()+" execute is " + exitValue);
 			tasklog.info("Exit value of task "+e.getGroupName()+" execute is " + exitValue);
 		}catch(IOException ioe){
@@ -342,14 +587,370 @@ abstract public class BashWalker extends Walker {
 		} catch (InterruptedException ie) {
 			logger.log(Level.SEVERE,"InterruptedException while executing the script file for task "+e.getGroupName(), ie);
 			throw new ExitCodeException(ExitCode.EXECUTEERROR);
+		}finally{
+			//the handler keeps the log file and its lock open otherwise
+			if(tasklog != null){
+				stopLogger(tasklog);
+			}
 		}
-		
-		//if exit code is 0, assert that all output files exist
+		return exitValue;
+	}
+
+	/**
+	 * Starts a script in the directory of the configuration and copies its output into the task log
+	 * @param name The name of the script without .sh, relative to the directory of the configuration
+	 * @param configId The id of the configuration
+	 * @param tasklog The log of the task
+	 * @param prefix Put in front of each line of the output
+	 * @return The exit code of the script
+	 */
+	private int runProcess(String name, long configId, Logger tasklog, String prefix) throws IOException, InterruptedException {
+		return readProcess(startProcess(configId, "./"+name + ".sh"), tasklog, prefix);
+	}
+
+	/**
+	 * Starts a command in the directory of the configuration
+	 * @param configId The id of the configuration
+	 * @param command The program and its arguments
+	 * @return The started process, its error output is merged into its output
+	 */
+	private Process startProcess(long configId, String... command) throws IOException {
+		//create process and set working dir
+		ProcessBuilder pb = new ProcessBuilder(command);
+		pb.directory(new File(getExecDir(configId)));
+		pb.redirectErrorStream(true);
+		//pb.inheritIO(); // print to stdout of the java process
+		return pb.start();
+	}
+
+	/**
+	 * Copies the output of the process into the task log and waits for it
+	 * @param p The process
+	 * @param tasklog The log of the task
+	 * @param prefix Put in front of each line of the output
+	 * @return The exit code of the process
+	 */
+	private static int readProcess(Process p, Logger tasklog, String prefix) throws IOException, InterruptedException {
+		return readProcess(p, line -> tasklog.info(prefix+line));
+	}
+
+	/**
+	 * Hands each line of the output of the process to the given callback and waits for it
+	 * @param p The process
+	 * @param lines Called for every line of the output
+	 * @return The exit code of the process
+	 */
+	private static int readProcess(Process p, Consumer<String> lines) throws IOException, InterruptedException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(p.getInputStream()));
+		String line;
+		while ( (line = reader.readLine()) != null) {
+			lines.accept(line);
+		}
+		return p.waitFor();
+	}
+
+	/**
+	 * Runs a step in shards, one for each contig of the reference. At most THREADS shards run at the same time,
+	 * the longest contigs first. The VCF files of the shards are merged in the order of the index into the output.
+	 * Falls back to the script of the step if there is nothing to split.
+	 * @param e Edge object that will be executed, its script has been written already
+	 * @param configId The id of the configuration
+	 * @return The exit code of the first shard that failed, or of the finish command
+	 */
+	private int runScattered(Edge e, long configId) throws ExitCodeException {
+		ScatterCommand scatter = e.getScatter();
+		String execDir = getExecDir(configId);
+		List<String> contigs = new ArrayList<>();
+		List<Long> lengths = new ArrayList<>();
+		try{
+			for(String line : Files.readAllLines(Paths.get(execDir, scatter.getIndex()), StandardCharsets.ISO_8859_1)){
+				String[] fields = line.split("\t");
+				if(fields.length >= 2){
+					lengths.add(Long.parseLong(fields[1].trim()));
+					contigs.add(fields[0]);
+				}
+			}
+		}catch(IOException | NumberFormatException ex){
+			contigs.clear();
+			logger.log(Level.WARNING, "Could not read the contigs from "+scatter.getIndex()+", running "+e.getGroupName()+" in one process.", ex);
+		}
+		if(THREADS < 2 || contigs.size() < 2){
+			return this.runScript(e, configId);
+		}
+		String name = e.getGroupName();
+		String shardDir = "scatter_" + name;
+		Logger tasklog = null;
+		Map<String, Process> running = new ConcurrentHashMap<>();
+		AtomicBoolean stopped = new AtomicBoolean(false);
+		ExecutorService shards = Executors.newFixedThreadPool(Math.min(THREADS, contigs.size()));
+		try{
+			if(Files.exists(Paths.get(execDir, shardDir))){
+				//left by an earlier run of the step in a reused directory
+				FileHandler.deleteRecursive(execDir + "/" + shardDir);
+			}
+			Files.createDirectories(Paths.get(execDir, shardDir));
+			tasklog = startLogger(name, configId);
+			if(!scatter.getPrepare().isEmpty()){
+				this.writeScript(name + ".prepare", scatter.getPrepare(), configId);
+				int exitValue = runProcess(name + ".prepare", configId, tasklog, "");
+				if(exitValue != 0){
+					logger.warning("Preparation of task "+name+" failed with exit value "+exitValue);
+					return exitValue;
+				}
+			}
+			long start = System.currentTimeMillis();
+			//longest contigs first, so the short ones fill the gaps at the end
+			Integer[] order = new Integer[contigs.size()];
+			for(int i=0; i<order.length; i++){
+				order[i] = i;
+			}
+			Arrays.sort(order, (a, b) -> Long.compare(lengths.get(b), lengths.get(a)));
+			Logger shardlog = tasklog;
+			Map<Future<Integer>, Integer> submitted = new HashMap<>();
+			CompletionService<Integer> done = new ExecutorCompletionService<>(shards);
+			for(int i : order){
+				String contig = contigs.get(i);
+				String shard = shardDir + "/" + i;
+				String command = scatter.getShardCommand()
+						.replace(ScatterCommand.REGION, "'" + contig.replace("'", "'\\''") + "'")
+						.replace(ScatterCommand.SHARD, shard + ".vcf");
+				//the shard runs in its own process group, its id lets the shard be killed with all its children
+				this.writeScript(shard, "echo $$ > " + shard + ".pid" + System.getProperty("line.separator") + command, configId);
+				submitted.put(done.submit(() -> {
+					Process p = startProcess(configId, "setsid", "./" + shard + ".sh");
+					running.put(shard, p);
+					if(stopped.get()){
+						killShard(execDir, shard, p);
+					}
+					try{
+						return readProcess(p, shardlog, contig+": ");
+					}finally{
+						running.remove(shard);
+					}
+				}), i);
+			}
+			shards.shutdown();
+			//the first shard that fails ends the step, without waiting for the others
+			int exitValue = 0;
+			for(int n=0; n<submitted.size() && exitValue == 0; n++){
+				Future<Integer> result = done.take();
+				String contig = contigs.get(submitted.get(result));
+				try{
+					exitValue = result.get();
+				}catch(ExecutionException ee){
+					logger.log(Level.SEVERE, "Exception while executing the shard "+contig+" of task "+name, ee.getCause());
+					exitValue = -1;
+				}
+				if(exitValue != 0){
+					logger.warning("Shard "+contig+" of task "+name+" failed with exit value "+exitValue);
+				}
+			}
+			if(exitValue != 0){
+				return exitValue;
+			}
+			List<Path> vcfs = new ArrayList<>();
+			for(int i=0; i<contigs.size(); i++){
+				vcfs.add(Paths.get(execDir, shardDir, i + ".vcf"));
+			}
+			mergeShards(vcfs, Paths.get(execDir, scatter.getOutput()));
+			logger.info("Task "+name+" ran in "+vcfs.size()+" shards, took "+(System.currentTimeMillis()-start)+" ms");
+			if(!scatter.getFinish().isEmpty()){
+				this.writeScript(name + ".finish", scatter.getFinish(), configId);
+				exitValue = runProcess(name + ".finish", configId, tasklog, "");
+			}
+			logger.info("Exit value of task "+name+" execute is " + exitValue);
+			tasklog.info("Exit value of task "+name+" execute is " + exitValue);
+			return exitValue;
+		}catch(IOException ioe){
+			logger.log(Level.SEVERE,"IOException while executing the shards of task "+name, ioe);
+			throw new ExitCodeException(ExitCode.EXECUTEERROR);
+		}catch(InterruptedException ie){
+			logger.log(Level.SEVERE,"InterruptedException while executing the shards of task "+name, ie);
+			throw new ExitCodeException(ExitCode.EXECUTEERROR);
+		}finally{
+			//shards that still run after a failure or an exception are killed, before their directory is removed
+			stopped.set(true);
+			shards.shutdownNow();
+			for(Map.Entry<String, Process> shard : running.entrySet()){
+				killShard(execDir, shard.getKey(), shard.getValue());
+			}
+			try{
+				if(Files.exists(Paths.get(execDir, shardDir))){
+					FileHandler.deleteRecursive(execDir + "/" + shardDir);
+				}
+			}catch(IOException ioe){
+				logger.log(Level.WARNING, "Could not remove the shards of task "+name, ioe);
+			}
+			if(tasklog != null){
+				stopLogger(tasklog);
+			}
+		}
+	}
+
+	/**
+	 * Kills the process group of a shard and waits for the shard to end
+	 * @param execDir The directory of the configuration
+	 * @param shard The name of the shard, its script wrote the id of its process group to #shard.pid
+	 * @param p The process of the shard
+	 */
+	private static void killShard(String execDir, String shard, Process p){
+		try{
+			Path pidFile = Paths.get(execDir, shard + ".pid");
+			String pid = Files.exists(pidFile) ? new String(Files.readAllBytes(pidFile), StandardCharsets.UTF_8).trim() : "";
+			if(!pid.isEmpty()){
+				new ProcessBuilder("kill", "-KILL", "--", "-" + pid).redirectErrorStream(true).start().waitFor();
+			}
+		}catch(IOException ioe){
+			logger.log(Level.WARNING, "Could not kill the processes of shard "+shard, ioe);
+		}catch(InterruptedException ie){
+			Thread.currentThread().interrupt();
+		}
+		//the shard did not start any process yet, if its id is missing
+		p.destroyForcibly();
+		try{
+			p.waitFor(10, TimeUnit.SECONDS);
+		}catch(InterruptedException ie){
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Concatenates VCF files that cover different contigs. The header is taken from the first file.
+	 * @param vcfs The files in the order of the contigs in the reference
+	 * @param output The merged file
+	 */
+	private static void mergeShards(List<Path> vcfs, Path output) throws IOException {
+		try(BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.ISO_8859_1)){
+			for(int i=0; i<vcfs.size(); i++){
+				try(BufferedReader reader = Files.newBufferedReader(vcfs.get(i), StandardCharsets.ISO_8859_1)){
+					String line;
+					while((line = reader.readLine()) != null){
+						if(i == 0 || !line.startsWith("#")){
+							writer.write(line);
+							writer.write('\n');
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Executes the steps of a unit one after another in a single script. Each command runs in its own subshell,
+	 * as if it was its own script, and the script prints a marker with the exit code after each command.
+	 * @param edges The edges of consecutive steps
+	 * @param configId The id of the configuration
+	 * @return The exit code of each step, -1 for steps that did not run because an earlier step failed
+	 */
+	private int[] runUnit(Edge[] edges, long configId) throws ExitCodeException {
+		String nl = System.getProperty("line.separator");
+		String[] names = new String[edges.length];
+		StringBuilder script = new StringBuilder();
+		for(int i=0; i<edges.length; i++){
+			names[i] = edges[i].getGroupName();
+			script.append("(").append(nl);
+			script.append(edges[i].getCommand()).append(nl);
+			script.append(")").append(nl);
+			script.append("code=$?").append(nl);
+			script.append("echo \"").append(STEPMARKER).append(i).append(" $code\"").append(nl);
+			script.append("if [ $code -ne 0 ]; then exit $code; fi").append(nl);
+		}
+		String name = String.join("+", names);
+		this.writeScript(name, script.toString(), configId);
+
+		int[] exitValues = new int[edges.length];
+		Arrays.fill(exitValues, -1);
+		Logger tasklog = null;
+		try{
+			tasklog = startLogger(name, configId);
+			Logger unitlog = tasklog;
+			long[] start = {System.currentTimeMillis()};
+			int exitValue = readProcess(startProcess(configId, "./"+name + ".sh"), line -> {
+				int marker = line.indexOf(STEPMARKER);
+				String[] values = marker < 0 ? null : line.substring(marker + STEPMARKER.length()).split(" ");
+				if(values == null || values.length != 2 || !values[0].matches("\\d+") || !values[1].matches("\\d+")
+						|| Integer.parseInt(values[0]) >= edges.length){
+					unitlog.info(line);
+					return;
+				}
+				if(marker > 0){
+					//output of the step without a line break at the end
+					unitlog.info(line.substring(0, marker));
+				}
+				int step = Integer.parseInt(values[0]);
+				exitValues[step] = Integer.parseInt(values[1]);
+				long end = System.currentTimeMillis();
+				logger.info("Exit value of task "+names[step]+" execute is " + exitValues[step]+", took "+(end - start[0])+"ms");
+				unitlog.info("Exit value of task "+names[step]+" execute is " + exitValues[step]+", took "+(end - start[0])+"ms");
+				start[0] = end;
+			});
+			logger.info("Exit value of tasks "+name+" execute is " + exitValue);
+			for(int i=0; i<edges.length; i++){
+				if(exitValues[i] < 0){
+					//the script ended without the marker of this step
+					exitValues[i] = (exitValue == 0) ? ExitCode.EXECUTEERROR : exitValue;
+					break;
+				}
+			}
+		}catch(IOException ioe){
+			logger.log(Level.SEVERE,"IOException while executing the script file for tasks "+name, ioe);
+			throw new ExitCodeException(ExitCode.EXECUTEERROR);
+		} catch (InterruptedException ie) {
+			logger.log(Level.SEVERE,"InterruptedException while executing the script file for tasks "+name, ie);
+			throw new ExitCodeException(ExitCode.EXECUTEERROR);
+		}finally{
+			if(tasklog != null){
+				stopLogger(tasklog);
+			}
+		}
+		return exitValues;
+	}
+
+	/**
+	 * Executes the steps in a single process. The outputs of each step are still checked and stored on their own,
+	 * so the cache keeps one entry per step.
+	 */
+	@Override
+	protected void traverseEdges(Edge[] edges, long configId) throws ExitCodeException {
+		PipedStep piped = pipes.remove(configId);
+		int[] exitValues;
+		try{
+			List<String> produced = new ArrayList<>();
+			for(Edge e : edges){
+				this.checkInputs(e, configId, produced);
+				if(e.getOutputFiles() != null){
+					produced.addAll(Arrays.asList(e.getOutputFiles()));
+				}
+			}
+			exitValues = this.runUnit(edges, configId);
+		}finally{
+			if(piped != null){
+				this.finishPiped(piped, configId);
+			}
+		}
+		for(int i=0; i<edges.length; i++){
+			try{
+				this.checkOutputs(edges[i], configId, exitValues[i], new String[0]);
+			}catch(ExitCodeException ex){
+				throw new ExitCodeException(ex.getExitCode(), i);
+			}
+			storeOutputs(edges[i], configId);
+		}
+	}
+
+	/**
+	 * If the exit code is 0, asserts that all output files exist
+	 * @param e Edge object that was executed
+	 * @param configId The id of the configuration
+	 * @param exitValue The exit code of the script
+	 * @param pipedOutputs Outputs that were written into pipes and do not exist anymore
+	 */
+	private void checkOutputs(Edge e, long configId, int exitValue, String[] pipedOutputs) throws ExitCodeException {
 		if(exitValue == 0){
 			if(e.getOutputFiles() != null){
 				for(String s : e.getOutputFiles()){
 					File f = new File(getExecDir(configId)+"/"+s);
-					if(!f.exists()){
+					if(!f.exists() && !Arrays.asList(pipedOutputs).contains(s)){
 						logger.log(Level.SEVERE, "File assertion failed: output "+getExecDir(configId)+"/"+s+" not found in the directory for task "+e.getGroupName());
 						throw new ExitCodeException(ExitCode.INPUTERROR);
 					}
@@ -361,18 +962,283 @@ abstract public class BashWalker extends Walker {
 	}
 
 	/**
-	 * Used to enable and configure logging for the run
+	 * Finds the outputs of the step that can be piped into the next step instead of being written to disk.
+	 * An output is piped if both steps stream it, the next step does not overwrite it and no later step reads it.
+	 * @param e The step that will be executed
+	 * @param configId The id of the configuration
+	 * @return The outputs that are piped, empty if the step runs alone
 	 */
-	private Logger startLogger(String taskname, long configId) throws IOException {
+	private String[] getPipedOutputs(Edge e, long configId){
+		Edge[] workflow = workflows.get(configId);
+		if(!STREAM || workflow == null || e.getOutputFiles() == null){
+			return new String[0];
+		}
+		int step = getStep(workflow, e);
+		if(step >= workflow.length-1){
+			return new String[0];
+		}
+		Edge next = workflow[step+1];
+		ArrayList<String> piped = new ArrayList<>();
+		for(String output : e.getOutputFiles()){
+			boolean streamed = Arrays.asList(e.getStreamFiles()).contains(output)
+					&& Arrays.asList(next.getStreamFiles()).contains(output)
+					&& Arrays.asList(next.getInputFiles()).contains(output)
+					&& (next.getOutputFiles() == null || !Arrays.asList(next.getOutputFiles()).contains(output));
+			for(int i=step+2; i<workflow.length && streamed; i++){
+				streamed = !Arrays.asList(workflow[i].getInputFiles()).contains(output);
+			}
+			if(streamed){
+				piped.add(output);
+			}
+		}
+		return piped.toArray(new String[piped.size()]);
+	}
+
+	/**
+	 * Replaces the outputs with named pipes and starts the step in the background, the next step reads from the pipes
+	 * while it runs. The outputs of the step are not stored in the artifact store.
+	 * @param e The step that will be executed
+	 * @param configId The id of the configuration
+	 * @param outputs The outputs that are piped into the next step
+	 * @return False if the pipes could not be created, the step has to write files then
+	 */
+	private boolean startPiped(Edge e, long configId, String[] outputs){
+		PipedStep piped = new PipedStep();
+		piped.edge = e;
+		piped.outputs = outputs;
+		piped.paths = new String[outputs.length];
+		try{
+			for(int i=0; i<outputs.length; i++){
+				piped.paths[i] = getExecDir(configId) + "/" + outputs[i];
+				Files.deleteIfExists(Paths.get(piped.paths[i]));
+			}
+			createPipes(piped.paths);
+		}catch(IOException | InterruptedException ex){
+			logger.log(Level.WARNING, "Could not create the pipes for task "+e.getGroupName()+", writing files instead", ex);
+			for(String path : piped.paths){
+				this.deletePipe(path);
+			}
+			return false;
+		}
+		piped.task = new FutureTask<>(() -> {
+			try{
+				return this.runScript(e, configId);
+			}finally{
+				//a step that waits for the pipe to open or to end would wait forever if the step never opens it
+				releaseReaders(piped.paths);
+			}
+		});
+		Thread thread = new Thread(piped.task, "pipe-conf"+configId+"-"+e.getGroupName());
+		thread.setDaemon(true);
+		thread.start();
+		pipes.put(configId, piped);
+		logger.info("Task "+e.getGroupName()+" pipes "+String.join(", ", outputs)+" into the next task.");
+		return true;
+	}
+
+	/**
+	 * Waits for a step that wrote into pipes after the step that read them is done, then removes the pipes.
+	 * @param piped The step that wrote into the pipes
+	 * @param configId The id of the configuration
+	 */
+	private void finishPiped(PipedStep piped, long configId) throws ExitCodeException {
+		int exitValue;
+		try{
+			if(!piped.task.isDone()){
+				logger.fine("Task "+piped.edge.getGroupName()+" is still running, discarding the rest of its pipes.");
+				drainPipes(piped.paths, piped.task);
+			}
+			exitValue = piped.task.get();
+		}catch(ExecutionException ex){
+			if(ex.getCause() instanceof ExitCodeException){
+				throw (ExitCodeException)ex.getCause();
+			}
+			logger.log(Level.SEVERE,"Exception while executing the script file for task "+piped.edge.getGroupName(), ex.getCause());
+			throw new ExitCodeException(ExitCode.EXECUTEERROR);
+		}catch(InterruptedException ie){
+			logger.log(Level.SEVERE,"InterruptedException while executing the script file for task "+piped.edge.getGroupName(), ie);
+			throw new ExitCodeException(ExitCode.EXECUTEERROR);
+		}finally{
+			for(String path : piped.paths){
+				this.deletePipe(path);
+			}
+		}
+		this.checkOutputs(piped.edge, configId, exitValue, piped.outputs);
+	}
+
+	/**
+	 * Creates named pipes with a single mkfifo call
+	 * @param paths The paths of the pipes, the files must not exist
+	 */
+	private static void createPipes(String[] paths) throws IOException, InterruptedException {
+		List<String> command = new ArrayList<>();
+		command.add("mkfifo");
+		command.addAll(Arrays.asList(paths));
+		Process mkfifo = new ProcessBuilder(command).redirectErrorStream(true).start();
+		StringBuilder output = new StringBuilder();
+		try(BufferedReader reader = new BufferedReader(new InputStreamReader(mkfifo.getInputStream()))){
+			String line;
+			while((line = reader.readLine()) != null){
+				output.append(" ").append(line);
+			}
+		}
+		if(mkfifo.waitFor() != 0){
+			throw new IOException("mkfifo exited with "+mkfifo.exitValue()+":"+output);
+		}
+	}
+
+	/**
+	 * Opens the write end of each pipe after the writing step is done and closes it again. Opening blocks until the
+	 * pipe has a reader, so a reader that waits for the pipe to open, or opens it only later, sees its end once the
+	 * data of the step is read. If the reading step never opens a pipe, {@link #drainPipes} is the reader.
+	 * @param paths The paths to the pipes
+	 */
+	private static void releaseReaders(String[] paths){
+		for(String path : paths){
+			try{
+				new FileOutputStream(path).close();
+			}catch(IOException ioe){
+				logger.log(Level.FINE, "Could not open the pipe "+path, ioe);
+			}
+		}
+	}
+
+	/**
+	 * Reads and discards the data in the pipes until the writing step is done, so it does not block or fail on a
+	 * pipe whose reader ended early, and its {@link #releaseReaders} finds a reader. The pipes are opened for reading
+	 * and writing, which does not block on Linux. Closing them ends the blocking reads once the step is done.
+	 * @param paths The paths to the pipes
+	 * @param until The pipes are drained until this task is done
+	 */
+	private static void drainPipes(String[] paths, Future<?> until) throws InterruptedException, ExecutionException {
+		List<RandomAccessFile> open = new ArrayList<>();
+		List<Thread> drains = new ArrayList<>();
+		try{
+			for(String path : paths){
+				RandomAccessFile pipe;
+				try{
+					pipe = new RandomAccessFile(path, "rw");
+				}catch(IOException ioe){
+					logger.log(Level.FINE, "Could not open the pipe "+path, ioe);
+					continue;
+				}
+				open.add(pipe);
+				FileChannel channel = pipe.getChannel();
+				Thread drain = new Thread(() -> {
+					ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+					try{
+						while(channel.read(buffer) >= 0){
+							buffer.clear();
+						}
+					}catch(IOException ioe){
+						//closing the channel ends the read
+					}
+				}, "pipe-drain-"+new File(path).getName());
+				drain.setDaemon(true);
+				drain.start();
+				drains.add(drain);
+			}
+			until.get();
+		}finally{
+			for(RandomAccessFile pipe : open){
+				try{
+					pipe.close();
+				}catch(IOException ioe){
+					logger.log(Level.FINE, "Could not close a pipe", ioe);
+				}
+			}
+			for(Thread drain : drains){
+				drain.join();
+			}
+		}
+	}
+
+	private void deletePipe(String path){
+		if(path == null){
+			return;
+		}
+		try{
+			Files.deleteIfExists(Paths.get(path));
+		}catch(IOException ioe){
+			logger.log(Level.WARNING, "Could not delete the pipe "+path, ioe);
+		}
+	}
+
+	/**
+	 * @return The position of the edge in the workflow, or the length of the workflow if it is not part of it
+	 */
+	private static int getStep(Edge[] workflow, Edge e){
+		int step = 0;
+		while(step < workflow.length && workflow[step] != e){
+			step++;
+		}
+		return step;
+	}
+
+	/**
+	 * Moves the outputs of the step into the artifact store, so later configurations with the same step and inputs can use them.
+	 * The workflow does not depend on the store, errors are only logged.
+	 * @param e The step that was executed
+	 * @param configId The id of the configuration
+	 */
+	private void storeOutputs(Edge e, long configId){
+		Edge[] workflow = workflows.get(configId);
+		String[] keys = storeKeys.get(configId);
+		if(workflow == null || keys == null){
+			return;
+		}
+		int step = getStep(workflow, e);
+		if(step >= workflow.length-1){
+			//the last step writes the results, they belong to the configuration only
+			return;
+		}
+		String[] outputs = e.getOutputFiles() == null ? new String[0] : e.getOutputFiles();
+		//an existing entry is protected before its files are linked
+		boolean existed = cacheManager.acquire(keys[step]);
+		if(existed){
+			usedKeys.get(configId).add(keys[step]);
+		}
+		try{
+			store.publish(keys[step], outputs, getExecDir(configId));
+			if(!existed && cacheManager.add(keys[step])){
+				usedKeys.get(configId).add(keys[step]);
+			}
+		}catch(IOException ioe){
+			logger.log(Level.WARNING, "Could not store the outputs of task "+e.getGroupName()+" in the artifact store", ioe);
+		}
+	}
 
-		LogManager.getLogManager().readConfiguration();
-		Logger log = Logger.getLogger(Logger.class.getName());
-		//remove all old handlers (not the console handler) to cancel writing another logfile to ~/
-		for(Handler old : log.getHandlers()){
-			if(!(old instanceof ConsoleHandler)){
-				log.removeHandler(old);
+	@Override
+	protected void finishConfiguration(long configId, double score){
+		PipedStep piped = pipes.remove(configId);
+		if(piped != null){
+			try{
+				this.finishPiped(piped, configId);
+			}catch(ExitCodeException ex){
+				logger.warning("Piped task "+piped.edge.getGroupName()+" of configuration "+configId+" failed.");
 			}
 		}
+		workflows.remove(configId);
+		storeKeys.remove(configId);
+		List<String> used = usedKeys.remove(configId);
+		if(used != null){
+			cacheManager.release(used, score);
+		}
+	}
+
+	@Override
+	public void sample(int samples){
+		super.sample(samples);
+		logger.info(FileHandler.getTimings());
+	}
+
+	/**
+	 * Used to enable and configure logging for the run
+	 */
+	private Logger startLogger(String taskname, long configId) throws IOException {
+
+		//one logger per task and configuration, several configurations may run at the same time
+		Logger log = Logger.getLogger("task.conf"+configId+"."+taskname);
 		StringBuilder logfile = new StringBuilder(this.getExecDir(configId));
 		logfile.append("/");
 		logfile.append(taskname);
@@ -386,5 +1252,15 @@ abstract public class BashWalker extends Walker {
 		return log;
 
 	}
+
+	/**
+	 * Closes and removes all handlers of the given task logger
+	 */
+	private void stopLogger(Logger log){
+		for(Handler h : log.getHandlers()){
+			log.removeHandler(h);
+			h.close();
+		}
+	}
 	
 }
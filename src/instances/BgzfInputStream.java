@@ -0,0 +1,216 @@
+package instances;
+
+/*
+		% WorkflowWalker: A Workflow Parameter Optimizer
+		%
+		% Copyright 2017 Björn Groß
+		%
+		% Licensed under the Apache License, Version 2.0 (the "License");
+		% you may not use this file except in compliance with the License.
+		% You may obtain a copy of the License at
+		%
+		%    http://www.apache.org/licenses/LICENSE-2.0
+		%
+		% Unless required by applicable law or agreed to in writing, software
+		% distributed under the License is distributed on an "AS IS" BASIS,
+		% WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+		% See the License for the specific language governing permissions and
+		% limitations under the License.
+*/
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decompresses a BGZF file, the blocked gzip format of bgzip and tabix. Every block is a gzip member
+ * of at most 64 KB that stores its own size, so a batch of blocks is read first and then the blocks
+ * are decompressed independently of each other on the pool.
+ */
+class BgzfInputStream extends InputStream {
+	/** Number of blocks that are decompressed at the same time, about 4 MB of decompressed data */
+	private static final int BATCHBLOCKS = 64;
+	private static final int HEADERSIZE = 18;
+	private InputStream in;
+	private ForkJoinPool pool;
+	private ArrayList<byte[]> blocks = new ArrayList<>();
+	private int block = 0;
+	private int position = 0;
+	private boolean end = false;
+
+	/**
+	 * @param in The compressed input
+	 * @param pool The pool that decompresses the blocks, if null the blocks are decompressed by the reading thread
+	 */
+	BgzfInputStream(InputStream in, ForkJoinPool pool){
+		this.in = in;
+		this.pool = pool;
+	}
+
+	/**
+	 * @param header The first bytes of a file
+	 * @param length The number of valid bytes in the header
+	 * @return True if the bytes start a BGZF block, a gzip member with the 'BC' extra field
+	 */
+	static boolean isBgzf(byte[] header, int length){
+		return length >= HEADERSIZE && (header[0] & 0xFF) == 0x1F && (header[1] & 0xFF) == 0x8B && header[2] == 8
+				&& (header[3] & 4) != 0 && header[12] == 'B' && header[13] == 'C';
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		return read(b, 0, 1) < 0 ? -1 : (b[0] & 0xFF);
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		while(block >= blocks.size() || position >= blocks.get(block).length){
+			if(block < blocks.size()){
+				block++;
+				position = 0;
+				continue;
+			}
+			if(end || !this.readBatch()){
+				return -1;
+			}
+		}
+		byte[] data = blocks.get(block);
+		int n = Math.min(len, data.length - position);
+		System.arraycopy(data, position, b, off, n);
+		position += n;
+		return n;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Reads and decompresses the next batch of blocks
+	 * @return False if the end of the file was reached
+	 */
+	private boolean readBatch() throws IOException {
+		ArrayList<byte[]> compressed = new ArrayList<>();
+		while(compressed.size() < BATCHBLOCKS){
+			byte[] raw = this.readBlock();
+			if(raw == null){
+				end = true;
+				break;
+			}
+			compressed.add(raw);
+		}
+		blocks = new ArrayList<>();
+		block = 0;
+		position = 0;
+		if(compressed.isEmpty()){
+			return false;
+		}
+		if(pool == null || compressed.size() == 1){
+			for(byte[] raw : compressed){
+				blocks.add(inflate(raw));
+			}
+			return true;
+		}
+		ArrayList<ForkJoinTask<byte[]>> tasks = new ArrayList<>();
+		for(byte[] raw : compressed){
+			tasks.add(pool.submit(() -> inflate(raw)));
+		}
+		try{
+			for(ForkJoinTask<byte[]> task : tasks){
+				blocks.add(task.get());
+			}
+		}catch(InterruptedException e){
+			throw new IOException("Interrupted while decompressing a BGZF block", e);
+		}catch(ExecutionException e){
+			if(e.getCause() instanceof IOException){
+				throw (IOException)e.getCause();
+			}
+			throw new IOException("Error while decompressing a BGZF block", e.getCause());
+		}
+		return true;
+	}
+
+	/**
+	 * @return The whole compressed block including header and trailer, or null at the end of the file
+	 */
+	private byte[] readBlock() throws IOException {
+		byte[] header = new byte[HEADERSIZE];
+		int read = readFully(header, 0, HEADERSIZE);
+		if(read == 0){
+			return null;
+		}
+		if(!isBgzf(header, read)){
+			throw new IOException("Invalid BGZF block header.");
+		}
+		int xlen = (header[10] & 0xFF) | ((header[11] & 0xFF) << 8);
+		int bsize = ((header[16] & 0xFF) | ((header[17] & 0xFF) << 8)) + 1;
+		if(xlen < 6 || bsize < HEADERSIZE + 8){
+			throw new IOException("Invalid BGZF block size.");
+		}
+		byte[] raw = new byte[bsize];
+		System.arraycopy(header, 0, raw, 0, HEADERSIZE);
+		if(readFully(raw, HEADERSIZE, bsize - HEADERSIZE) != bsize - HEADERSIZE){
+			throw new EOFException("Truncated BGZF block.");
+		}
+		return raw;
+	}
+
+	private int readFully(byte[] b, int off, int len) throws IOException {
+		int total = 0;
+		while(total < len){
+			int n = in.read(b, off + total, len - total);
+			if(n < 0){
+				break;
+			}
+			total += n;
+		}
+		return total;
+	}
+
+	/**
+	 * @param raw A whole compressed block
+	 * @return The decompressed data of the block
+	 */
+	private static byte[] inflate(byte[] raw) throws IOException {
+		int xlen = (raw[10] & 0xFF) | ((raw[11] & 0xFF) << 8);
+		int dataStart = 12 + xlen;
+		int dataEnd = raw.length - 8;
+		long crc = (raw[dataEnd] & 0xFFL) | ((raw[dataEnd+1] & 0xFFL) << 8) | ((raw[dataEnd+2] & 0xFFL) << 16) | ((raw[dataEnd+3] & 0xFFL) << 24);
+		int size = (raw[dataEnd+4] & 0xFF) | ((raw[dataEnd+5] & 0xFF) << 8) | ((raw[dataEnd+6] & 0xFF) << 16) | ((raw[dataEnd+7] & 0xFF) << 24);
+		byte[] data = new byte[size];
+		Inflater inflater = new Inflater(true);
+		try{
+			inflater.setInput(raw, dataStart, dataEnd - dataStart);
+			int n = 0;
+			while(n < size && !inflater.finished()){
+				int inflated = inflater.inflate(data, n, size - n);
+				if(inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())){
+					break;
+				}
+				n += inflated;
+			}
+			if(n != size){
+				throw new IOException("BGZF block has "+n+" instead of "+size+" bytes.");
+			}
+		}catch(DataFormatException e){
+			throw new IOException("Invalid BGZF block.", e);
+		}finally{
+			inflater.end();
+		}
+		CRC32 check = new CRC32();
+		check.update(data, 0, size);
+		if(check.getValue() != crc){
+			throw new IOException("CRC mismatch in BGZF block.");
+		}
+		return data;
+	}
+}
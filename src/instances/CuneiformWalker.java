@@ -1,6 +1,6 @@
 package instances;
 
-import logdb.LogDB;
+import logdb.Storage;
 import sampler.*;
 
 import java.util.ArrayList;
@@ -33,7 +33,7 @@ public class CuneiformWalker extends Walker {
      * @param logdb An instance of the LogDB
      * @param runName The name of the current run
      */
-    public CuneiformWalker(LogDB logdb, String runName) {
+    public CuneiformWalker(Storage logdb, String runName) {
         super(logdb, runName);
         logger.fine("Created new Cuneiform walker instance");
         this.logdb.prepareRun(this.getSteps().size(), runName, true, false);
@@ -88,10 +88,10 @@ public class CuneiformWalker extends Walker {
     }
 
     @Override
-    protected boolean handleCacheFiles(long configId, Edge[] workflow,
+    protected int handleCacheFiles(long configId, Edge[] workflow,
                                        long cacheId, int lastCommonStep) {
         // TODO
-        return false;
+        return 0;
     }
 
     @Override
@@ -1,6 +1,6 @@
 package instances;
 
-import logdb.LogDB;
+import logdb.Storage;
 import sampler.*;
 
 import java.util.ArrayList;
@@ -27,6 +27,8 @@ import java.util.logging.Level;
 public class LargeWalker extends BashWalker {
 	protected Workflow workflow = null;
 	private boolean isRna = false;
+	/** samtools and freebayes look for the index of a region query at recal_reads.bam.bai */
+	private static final String BAMINDEX = "[ -e recal_reads.bam.bai ] || ln -s recal_reads.bai recal_reads.bam.bai";
 
 	/**
 	 *
@@ -38,12 +40,24 @@ public class LargeWalker extends BashWalker {
 	 * @param target The target function instance
 	 * @param isRna True, if a rna workflow should be used, else false (dna)
 	 */
-	public LargeWalker(LogDB logdb, String runName, String basedir, String inputFile, int threads, TargetFunction target, boolean isRna) {
+	public LargeWalker(Storage logdb, String runName, String basedir, String inputFile, int threads, TargetFunction target, boolean isRna) {
 		super(logdb, runName, target, threads);
 		this.isRna = isRna;
 		super.handleFiles(basedir, inputFile);
 	}
 
+	@Override
+	protected String[] getSharedKeys() {
+		//everything but the reads, the trimming replaces them in the directory of the configuration
+		return new String[]{"bwaidx", "bowtie2idx", "genomeDir", "dict", "fa", "fai", "mills", "mills_tbi",
+				"phase1", "phase1_tbi", "dbsnp138", "dbsnp138_tbi", "annodb"};
+	}
+
+	@Override
+	protected String[] getArchiveKeys() {
+		return new String[]{"bwaidx", "bowtie2idx"};
+	}
+
 	@Override
 	protected String[] getInputKeys() {
 		if(this.isRna) {
@@ -186,17 +200,17 @@ public class LargeWalker extends BashWalker {
 		paramList.add(new IntegerParameter("bandwidth", 60, 140, 10));
 		//command definitions, inputs, outputs
 		ArrayList<String> bwaIn = new ArrayList<>();
-		bwaIn.add(getFile("bwaidx"));
+		bwaIn.add(getArchive("bwaidx"));
 		bwaIn.add(getFile("fq1"));
-		StringBuilder bwaScript= new StringBuilder("tar xf ");
-		bwaScript.append(getFile("bwaidx"));
-		bwaScript.append(System.getProperty("line.separator"));
-		bwaScript.append("bwa mem ");
+		//the index is extracted once per run into the shared directory
+		StringBuilder bwaScript= new StringBuilder("bwa mem ");
 		bwaScript.append("  -t ");
 		bwaScript.append(THREADS);
 		bwaScript.append(" -k $#seeds#$ -w $#bandwidth#$");
 		// bwaScript.append(" -k $#seeds#$ -w $#bandwidth#$ -d $#zdropoff#$ -c $#discard#$ -A $#matchscore#$ -B $#mismatchPenality#$ ");
-		bwaScript.append(" bwaidx ");
+		bwaScript.append(" ");
+		bwaScript.append(getArchive("bwaidx"));
+		bwaScript.append("/bwaidx ");
 		bwaScript.append(getFile("fq1"));
 		//only add the second read file if the paired mode is active (default)
 		if(!this.isSingle()){
@@ -212,6 +226,7 @@ public class LargeWalker extends BashWalker {
 				new String[]{alignResult}, 
 				bwaScript.toString());
 		
+		bwa.setStreamFiles(alignResult);
 		align.addEdgeGroup(bwa);
 
 		paramList = new ArrayList<>();
@@ -263,18 +278,17 @@ public class LargeWalker extends BashWalker {
 		paramList.add(new IntegerParameter("mismatch", 0, 1, 1));
 		//command definitions, inputs, outputs
 		ArrayList<String> bowtie2In = new ArrayList<>();
-		bowtie2In.add(getFile("bowtie2idx"));
+		bowtie2In.add(getArchive("bowtie2idx"));
 		bowtie2In.add(getFile("fq1"));
-		StringBuilder bowtiwScript= new StringBuilder("tar xf ");
-		bowtiwScript.append(getFile("bowtie2idx"));
-		bowtiwScript.append(System.getProperty("line.separator"));
-		bowtiwScript.append("bowtie2 ");
+		StringBuilder bowtiwScript= new StringBuilder("bowtie2 ");
 		bowtiwScript.append("--threads ");
 		bowtiwScript.append(THREADS);
 		//params
 		bowtiwScript.append(" -L $#seedlength#$ -N $#mismatch#$ ");
 		// bowtiwScript.append(" -L $#seedlength#$ --mp $#mismatchMax#$,$#mismatchMin#$ ");
-		bowtiwScript.append(" -x bowtie2idx ");
+		bowtiwScript.append(" -x ");
+		bowtiwScript.append(getArchive("bowtie2idx"));
+		bowtiwScript.append("/bowtie2idx ");
 		//only add the second read file if the paired mode is active (default)
 		if(!this.isSingle()){
 			bowtiwScript.append(" -1 ");
@@ -297,6 +311,7 @@ public class LargeWalker extends BashWalker {
 				new String[]{alignResult}, 
 				bowtiwScript.toString());
 		
+		bowtie.setStreamFiles(alignResult);
 		align.addEdgeGroup(bowtie);
 
 		//NextGenMap https://github.com/Cibiv/NextGenMap/wiki
@@ -352,7 +367,8 @@ public class LargeWalker extends BashWalker {
 				new String[]{"rg_added_sorted.bam", "dedup.bam", "dedup.bai"},
 				script.toString()
 				);
-		
+		//AddOrReplaceReadGroups reads the alignment once
+		eg.setStreamFiles("aligned_reads.sam");
 		sort.addEdgeGroup(eg);
 		return sort;
 		
@@ -513,6 +529,7 @@ public class LargeWalker extends BashWalker {
 		ArrayList<String> out = new ArrayList<>();
 		out.add("raw_variants.vcf");
 
+		String call = script.toString();
 		if(tf.isAnnotate()){
 			//add jannovar annotation
 			script.append(System.getProperty("line.separator"));
@@ -528,6 +545,8 @@ public class LargeWalker extends BashWalker {
 				script.toString()
 		);
 
+		eg.setScatter(getVariantScatter(call.replace(" -o raw_variants.vcf", " -o "+ScatterCommand.SHARD+" -L "+ScatterCommand.REGION),
+				"raw_variants.vcf", script.substring(call.length())));
 		step.addEdgeGroup(eg);
 
 
@@ -541,6 +560,7 @@ public class LargeWalker extends BashWalker {
 		script.append(" -I recal_reads.bam -o raw_variants.vcf --dbsnp ");
 		script.append(getFile("dbsnp138"));
 		script.append(" --sample_ploidy $#ploidy#$ -mbq $#min_base_quality_score#$ ");
+		call = script.toString();
 		if(tf.isAnnotate()){
 			//add jannovar annotation
 			script.append(System.getProperty("line.separator"));
@@ -556,6 +576,8 @@ public class LargeWalker extends BashWalker {
 				script.toString()
 		);
 
+		eg.setScatter(getVariantScatter(call.replace(" -o raw_variants.vcf", " -o "+ScatterCommand.SHARD+" -L "+ScatterCommand.REGION),
+				"raw_variants.vcf", script.substring(call.length())));
 		step.addEdgeGroup(eg);
 
 
@@ -568,6 +590,9 @@ public class LargeWalker extends BashWalker {
 		script.append("samtools mpileup -uf ");
 		script.append(getFile("fa"));
 		script.append(" recal_reads.bam | bcftools call -mv > var.raw.vcf ");
+		String shard = script.toString().replace(" recal_reads.bam | bcftools call -mv > var.raw.vcf ",
+				" -r "+ScatterCommand.REGION+" recal_reads.bam | bcftools call -mv > "+ScatterCommand.SHARD);
+		int filter = script.length();
 		script.append(System.getProperty("line.separator"));
 		//filter all lines that are not header information or have a quality above 50
 		script.append("cat var.raw.vcf | awk '$6>=50 || /^##/' > raw_variants.vcf");
@@ -585,6 +610,10 @@ public class LargeWalker extends BashWalker {
 				out,
 				script.toString()
 		);
+		//the awk filter and the annotation run on the merged calls
+		ScatterCommand scatter = getVariantScatter(shard, "var.raw.vcf", script.substring(filter));
+		scatter.setPrepare(BAMINDEX);
+		eg.setScatter(scatter);
 
 		step.addEdgeGroup(eg);
 
@@ -597,6 +626,7 @@ public class LargeWalker extends BashWalker {
 		script.append("freebayes -p $#ploidy#$ -f ");
 		script.append(getFile("fa"));
 		script.append(" recal_reads.bam > raw_variants.vcf");
+		call = script.toString();
 		if(tf.isAnnotate()){
 			//add jannovar annotation
 			script.append(System.getProperty("line.separator"));
@@ -611,9 +641,25 @@ public class LargeWalker extends BashWalker {
 				out,
 				script.toString()
 		);
+		scatter = getVariantScatter(call.replace(" recal_reads.bam > raw_variants.vcf", " -r "+ScatterCommand.REGION+" recal_reads.bam > "+ScatterCommand.SHARD),
+				"raw_variants.vcf", script.substring(call.length()));
+		scatter.setPrepare(BAMINDEX);
+		eg.setScatter(scatter);
 		step.addEdgeGroup(eg);
 
 		return step;
 	}
 
+	/**
+	 * Splits a variant caller into one shard per contig of the reference
+	 * @param shardCommand The calling command for a single contig
+	 * @param output The file the calls of the shards are merged into
+	 * @param finish The commands that run on the merged calls
+	 */
+	private ScatterCommand getVariantScatter(String shardCommand, String output, String finish){
+		ScatterCommand scatter = new ScatterCommand(getFile("fai"), shardCommand, output);
+		scatter.setFinish(finish.trim());
+		return scatter;
+	}
+
 }
@@ -0,0 +1,335 @@
+package instances;
+
+/*
+		% WorkflowWalker: A Workflow Parameter Optimizer
+		%
+		% Copyright 2017 Björn Groß
+		%
+		% Licensed under the Apache License, Version 2.0 (the "License");
+		% you may not use this file except in compliance with the License.
+		% You may obtain a copy of the License at
+		%
+		%    http://www.apache.org/licenses/LICENSE-2.0
+		%
+		% Unless required by applicable law or agreed to in writing, software
+		% distributed under the License is distributed on an "AS IS" BASIS,
+		% WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+		% See the License for the specific language governing permissions and
+		% limitations under the License.
+*/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import logdb.Variant;
+
+/**
+ * Incremental calculation of the meta score. The score of a configuration is the cosine
+ * distance between its variant vector (1 for each variant it found) and the vector of
+ * occurrences of all variants over all configurations. Occurrence counts, the scalar
+ * product of each configuration and the norm of the occurrence vector are kept in memory
+ * and updated with the variants of each new configuration only.
+ * The variants of each configuration are kept as a compressed bitmap, the scalar products
+ * of the previous configurations grow by the size of their intersection with the new one.
+ */
+public class MetaScorer {
+	private static Logger logger = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+	private boolean loaded = false;
+	private Map<String, Integer> chromIds = new HashMap<>();
+	/** Open addressing table from chrom id and pos of a variant to its position in the occurrence array */
+	private long[] variantKeys = new long[1 << 16];
+	private int[] variantIds = new int[1 << 16];
+	private int variantCount = 0;
+	/** Number of result rows of each variant over all configurations */
+	private int[] occurrences = new int[1024];
+	private Map<Long, Config> configs = new HashMap<>();
+	private ArrayList<Config> configList = new ArrayList<>();
+	/** Sum of all squared occurrences */
+	private long norm = 0;
+
+	/**
+	 * The variants of one configuration
+	 */
+	private static class Config {
+		long id;
+		VariantBitmap variants;
+		/** Variants that were found more than once, sorted, with the number of result rows in dupCounts */
+		int[] dupIds;
+		int[] dupCounts;
+		/** Number of variants of the configuration */
+		int size;
+		/** Scalar product between the variants of the configuration and the occurrence vector */
+		long product;
+
+		/**
+		 * @return The number of result rows of the configuration for the variant
+		 */
+		int getCount(int variantId){
+			if(dupIds != null){
+				int i = Arrays.binarySearch(dupIds, variantId);
+				if(i >= 0){
+					return dupCounts[i];
+				}
+			}
+			return variants.contains(variantId) ? 1 : 0;
+		}
+
+		/**
+		 * @return The sum over all variants of the products of the number of result rows in both configurations
+		 */
+		long getCommonRows(Config other){
+			long result = variants.andCardinality(other.variants);
+			//variants with more than one row count once in the intersection
+			if(dupIds != null){
+				for(int i=0; i<dupIds.length; i++){
+					int count = other.getCount(dupIds[i]);
+					if(count > 0){
+						result += (long)dupCounts[i] * count - 1;
+					}
+				}
+			}
+			if(other.dupIds != null){
+				for(int i=0; i<other.dupIds.length; i++){
+					if(dupIds == null || Arrays.binarySearch(dupIds, other.dupIds[i]) < 0){
+						if(variants.contains(other.dupIds[i])){
+							result += other.dupCounts[i] - 1;
+						}
+					}
+				}
+			}
+			return result;
+		}
+	}
+
+	public boolean isLoaded(){
+		return this.loaded;
+	}
+
+	/**
+	 * Fills the scorer with the results that are already stored in the database.
+	 * The occurrences are counted first, so the scalar products are calculated without intersections.
+	 * @param results The variants of each configuration
+	 * @param variantCounts The number of variants of each configuration
+	 */
+	public void load(Map<Long, ArrayList<Variant>> results, Map<Long, Integer> variantCounts){
+		ArrayList<Config> loadedConfigs = new ArrayList<>();
+		ArrayList<int[]> loadedIds = new ArrayList<>();
+		for(Map.Entry<Long, ArrayList<Variant>> entry : results.entrySet()){
+			if(configs.containsKey(entry.getKey())){
+				continue;
+			}
+			Integer count = variantCounts.get(entry.getKey());
+			int[] ids = this.getVariantIds(entry.getValue());
+			for(int id : ids){
+				norm += 2L * occurrences[id] + 1;
+				occurrences[id]++;
+			}
+			loadedConfigs.add(this.createConfig(entry.getKey(), ids, (count == null) ? entry.getValue().size() : count));
+			loadedIds.add(ids);
+		}
+		for(int i=0; i<loadedConfigs.size(); i++){
+			loadedConfigs.get(i).product = this.getProduct(loadedIds.get(i));
+		}
+		this.loaded = true;
+		logger.fine("Loaded "+results.size()+" configurations with "+variantCount+" distinct variants into the meta scorer.");
+	}
+
+	/**
+	 * Adds the variants of a new configuration and calculates all scores that changed
+	 * @param configId The id of the new configuration
+	 * @param variants The variants found by the configuration
+	 * @return The new scores, by configuration id
+	 */
+	public Map<Long, Double> addConfiguration(long configId, ArrayList<Variant> variants){
+		Map<Long, Double> changed = new HashMap<>();
+		if(configs.containsKey(configId)){
+			//already loaded from the database together with all others, the load changed the norm and every score
+			for(long id : configs.keySet()){
+				changed.put(id, this.getScore(id));
+			}
+			return changed;
+		}
+		long oldNorm = this.norm;
+		int[] ids = this.getVariantIds(variants);
+		Config config = this.createConfig(configId, ids, variants.size());
+		ArrayList<Long> touched = new ArrayList<>();
+		for(Config previous : configList){
+			if(previous == config){
+				continue;
+			}
+			//every configuration gains one in its scalar product for each common result row
+			long common = previous.getCommonRows(config);
+			if(common > 0){
+				previous.product += common;
+				touched.add(previous.id);
+			}
+		}
+		for(int id : ids){
+			norm += 2L * occurrences[id] + 1;
+			occurrences[id]++;
+		}
+		config.product = this.getProduct(ids);
+		if(oldNorm != this.norm){
+			//the norm is part of every score
+			for(long id : configs.keySet()){
+				changed.put(id, this.getScore(id));
+			}
+		}else{
+			for(long id : touched){
+				changed.put(id, this.getScore(id));
+			}
+			changed.put(configId, this.getScore(configId));
+		}
+		return changed;
+	}
+
+	/**
+	 * @param configId The id of the configuration
+	 * @return The cosine distance of the configuration, or 0 if it found no variants
+	 */
+	public double getScore(long configId){
+		Config config = configs.get(configId);
+		if(config == null || config.size <= 0 || norm <= 0){
+			return 0.0;
+		}
+		int a = config.size;
+		long product = config.product;
+		/* The vector of the configuration has 1 for each variant it found and 0 for all others,
+		 * so its norm is the square root of the number of variants
+		 */
+		double score = product / (Math.sqrt(a) * Math.sqrt(norm));
+		logger.finer("Config "+configId+": product="+product+", sqrt(a)="+Math.sqrt(a)+", sqrt(norm)="+Math.sqrt(norm)+", score="+score);
+		return score;
+	}
+
+	/**
+	 * @param ids The variant id of each result row of a configuration
+	 * @return The scalar product between the result rows and the occurrence vector
+	 */
+	private long getProduct(int[] ids){
+		long product = 0;
+		for(int id : ids){
+			product += occurrences[id];
+		}
+		return product;
+	}
+
+	/**
+	 * @param ids The variant id of each result row, sorted
+	 */
+	private Config createConfig(long configId, int[] ids, int variantCount){
+		Config config = new Config();
+		config.id = configId;
+		config.size = variantCount;
+		int distinct = 0;
+		int dups = 0;
+		for(int i=0; i<ids.length; i++){
+			if(i == 0 || ids[i] != ids[i-1]){
+				distinct++;
+			}else if(i < 2 || ids[i-2] != ids[i]){
+				//second row of the same variant
+				dups++;
+			}
+		}
+		int[] unique = new int[distinct];
+		int[] dupIds = new int[dups];
+		int[] dupCounts = new int[dups];
+		distinct = 0;
+		dups = 0;
+		for(int i=0; i<ids.length; i++){
+			if(i == 0 || ids[i] != ids[i-1]){
+				unique[distinct++] = ids[i];
+			}else if(i < 2 || ids[i-2] != ids[i]){
+				dupIds[dups] = ids[i];
+				dupCounts[dups++] = 2;
+			}else{
+				dupCounts[dups-1]++;
+			}
+		}
+		config.variants = VariantBitmap.of(unique);
+		if(dups > 0){
+			config.dupIds = dupIds;
+			config.dupCounts = dupCounts;
+		}
+		configs.put(configId, config);
+		configList.add(config);
+		return config;
+	}
+
+	/**
+	 * @return The sorted variant ids of the given variants, once for each variant in the list
+	 */
+	private int[] getVariantIds(ArrayList<Variant> variants){
+		int[] ids = new int[variants.size()];
+		String chrom = null;
+		int chromId = -1;
+		for(int i=0; i<ids.length; i++){
+			Variant v = variants.get(i);
+			//variants are sorted by chromosome, so the last id is reused most of the time
+			if(!v.getChrom().equals(chrom)){
+				chrom = v.getChrom();
+				chromId = this.getChromId(chrom);
+			}
+			ids[i] = this.getVariantId(((long)chromId << 32) | (v.getPos() & 0xFFFFFFFFL));
+		}
+		Arrays.sort(ids);
+		return ids;
+	}
+
+	private int getChromId(String chrom){
+		Integer id = chromIds.get(chrom);
+		if(id == null){
+			id = chromIds.size();
+			chromIds.put(chrom, id);
+		}
+		return id;
+	}
+
+	/**
+	 * @param key The chrom id in the upper and the position in the lower 32 bits
+	 * @return The id of the variant, a new id if the variant was not seen before
+	 */
+	private int getVariantId(long key){
+		//keys are stored plus one, so 0 marks an empty slot
+		long stored = key + 1;
+		int mask = variantKeys.length - 1;
+		int slot = Long.hashCode(key * 0x9E3779B97F4A7C15L) & mask;
+		while(variantKeys[slot] != 0){
+			if(variantKeys[slot] == stored){
+				return variantIds[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		int id = variantCount++;
+		variantKeys[slot] = stored;
+		variantIds[slot] = id;
+		if(id >= occurrences.length){
+			occurrences = Arrays.copyOf(occurrences, occurrences.length * 2);
+		}
+		if(variantCount * 2 > variantKeys.length){
+			this.growVariantTable();
+		}
+		return id;
+	}
+
+	private void growVariantTable(){
+		long[] oldKeys = variantKeys;
+		int[] oldIds = variantIds;
+		variantKeys = new long[oldKeys.length * 2];
+		variantIds = new int[oldKeys.length * 2];
+		int mask = variantKeys.length - 1;
+		for(int i=0; i<oldKeys.length; i++){
+			if(oldKeys[i] != 0){
+				int slot = Long.hashCode((oldKeys[i] - 1) * 0x9E3779B97F4A7C15L) & mask;
+				while(variantKeys[slot] != 0){
+					slot = (slot + 1) & mask;
+				}
+				variantKeys[slot] = oldKeys[i];
+				variantIds[slot] = oldIds[i];
+			}
+		}
+	}
+}
@@ -1,8 +1,10 @@
 package instances;
 
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-import logdb.LogDB;
+import logdb.Storage;
 import sampler.*;
 
 /*
@@ -30,14 +32,15 @@ import sampler.*;
  *
  */
 public class RastriginWalker extends Walker {
-	private double fx = 0;
+	/** Function value for each configuration that is currently walked */
+	private Map<Long, Double> fx = new ConcurrentHashMap<>();
 	private Workflow workflow;
 	/**
 	 *
 	 * @param logdb An instance of the LogDB
 	 * @param runName The name of the current run
 	 */
-	public RastriginWalker(LogDB logdb, String runName) {
+	public RastriginWalker(Storage logdb, String runName) {
 		super(logdb, runName);
 		logger.fine("Created new simple Function Walker instance");
 		this.logdb.prepareRun(this.getSteps().size(), runName);
@@ -120,18 +123,20 @@ public class RastriginWalker extends Walker {
 		 */
 
 		double A = 10;
+		double value = fx.getOrDefault(configId, 0.0);
 		String[] vals = e.getCommand().split(";");
 		for(String v : vals){
 			double x = Double.parseDouble(v);
-			fx += 30;
-			fx -= (Math.pow(x,2) - A*Math.cos(2*Math.PI*x));
+			value += 30;
+			value -= (Math.pow(x,2) - A*Math.cos(2*Math.PI*x));
 		}
+		fx.put(configId, value);
 	}
 
 	@Override
 	protected void submitResult(long configId) {
-		logdb.updateConfiguration(configId, fx, runName);
-		fx = 0;
+		Double value = fx.remove(configId);
+		logdb.updateConfiguration(configId, (value == null) ? 0.0 : value, runName);
 	}
 
 	@Override
@@ -145,10 +150,10 @@ public class RastriginWalker extends Walker {
 	}
 
 	@Override
-	protected boolean handleCacheFiles(long configId, Edge[] workflow,
+	protected int handleCacheFiles(long configId, Edge[] workflow,
 									   long cacheId, int lastCommonStep) {
 		// ignore for this walker
-		return false;
+		return 0;
 	}
 
 	@Override
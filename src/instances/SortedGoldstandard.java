@@ -0,0 +1,215 @@
+package instances;
+
+/*
+		% WorkflowWalker: A Workflow Parameter Optimizer
+		%
+		% Copyright 2017 Björn Groß
+		%
+		% Licensed under the Apache License, Version 2.0 (the "License");
+		% you may not use this file except in compliance with the License.
+		% You may obtain a copy of the License at
+		%
+		%    http://www.apache.org/licenses/LICENSE-2.0
+		%
+		% Unless required by applicable law or agreed to in writing, software
+		% distributed under the License is distributed on an "AS IS" BASIS,
+		% WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+		% See the License for the specific language governing permissions and
+		% limitations under the License.
+*/
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import logdb.Variant;
+
+/**
+ * A coordinate sorted gold standard that stays on disk. Hits are counted with a merge join
+ * that walks the gold standard file and the sorted variants of a configuration side by side,
+ * so only the order of the chromosomes is kept in memory.
+ * The chromosome order is the order in which the chromosomes appear in the gold standard.
+ * Variants on chromosomes that are not in the gold standard can not be hits and are left out.
+ * A candidate VCF file in the order of the gold standard is streamed into the merge as well, only a file in a
+ * different order is read into an array of packed positions and sorted first.
+ */
+public class SortedGoldstandard {
+	private static Logger logger = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+	private String path;
+	private Map<String, Integer> chromOrder = new HashMap<>();
+	private int size = 0;
+	private boolean sorted = true;
+
+	/**
+	 * Reads the gold standard once to get the chromosome order and the number of variants
+	 * @param path The path to the gold standard VCF file
+	 * @throws IOException If the file can not be read
+	 */
+	public SortedGoldstandard(String path) throws IOException {
+		this.path = path;
+		long[] previous = {-1};
+		size = VcfReader.read(path, record -> {
+			Integer chromId = chromOrder.get(record.getChrom());
+			if(chromId == null){
+				chromId = chromOrder.size();
+				chromOrder.put(record.getChrom(), chromId);
+			}
+			long key = pack(chromId, record.getPos());
+			if(key < previous[0]){
+				sorted = false;
+			}
+			previous[0] = key;
+		});
+		logger.fine("Gold standard "+path+" has "+size+" variants on "+chromOrder.size()+" chromosomes, sorted: "+sorted);
+	}
+
+	/**
+	 * @return False if the gold standard is not sorted by chromosome and position, it can not be used for a merge join then
+	 */
+	public boolean isSorted(){
+		return this.sorted;
+	}
+
+	/**
+	 * @return The number of variants in the gold standard
+	 */
+	public int size(){
+		return this.size;
+	}
+
+	/**
+	 * Counts the variants of the gold standard that match one of the given variants in chrom and pos.
+	 * Variants given more than once are only counted once, variants that are more than once in the gold standard
+	 * are counted each time. Variants in the order of the gold standard are merged directly, others are sorted first.
+	 * @param variants The variants of a configuration
+	 * @return The number of hits in the gold standard
+	 * @throws IOException If the gold standard can not be read
+	 */
+	public int getHits(ArrayList<Variant> variants) throws IOException {
+		long[] keys = new long[variants.size()];
+		int n = 0;
+		boolean inOrder = true;
+		String chrom = null;
+		Integer chromId = null;
+		for(Variant v : variants){
+			if(!v.getChrom().equals(chrom)){
+				chrom = v.getChrom();
+				chromId = chromOrder.get(chrom);
+			}
+			if(chromId != null){
+				keys[n] = pack(chromId, v.getPos());
+				if(n > 0 && keys[n] < keys[n-1]){
+					inOrder = false;
+				}
+				n++;
+			}
+		}
+		if(!inOrder){
+			logger.fine("Variants are not in the order of the gold standard, sorting "+n+" variants.");
+			Arrays.sort(keys, 0, n);
+		}
+		return merge(keys, n);
+	}
+
+	/**
+	 * Counts the hits of the variants in the given VCF file like {@link #getHits(ArrayList)}. The file is read
+	 * side by side with the gold standard, if it is in the same order, the variants are never kept in memory.
+	 * @param vcfPath The path to the VCF file of a configuration
+	 * @return The number of hits in the gold standard
+	 * @throws IOException If one of the files can not be read
+	 */
+	public int getHits(String vcfPath) throws IOException {
+		int hits = 0;
+		try (VcfReader.Cursor gold = new VcfReader.Cursor(path); VcfReader.Cursor candidates = new VcfReader.Cursor(vcfPath)) {
+			long key = -1;
+			boolean more = true;
+			while(gold.next()){
+				long goldKey = pack(chromOrder.get(gold.getRecord().getChrom()), gold.getRecord().getPos());
+				while(key < goldKey && more){
+					more = candidates.next();
+					if(!more){
+						break;
+					}
+					long next = getKey(candidates.getRecord(), key);
+					if(next < key){
+						return getHitsUnsorted(vcfPath);
+					}
+					key = next;
+				}
+				if(key == goldKey){
+					hits++;
+				}else if(!more && key < goldKey){
+					//no candidate is left at or after this position
+					break;
+				}
+			}
+			//a candidate after the end of the gold standard may still be out of order
+			while(more && (more = candidates.next())){
+				long next = getKey(candidates.getRecord(), key);
+				if(next < key){
+					return getHitsUnsorted(vcfPath);
+				}
+				key = next;
+			}
+		}
+		return hits;
+	}
+
+	/**
+	 * @param previous The key of the previous candidate
+	 * @return The packed position of the record, or the previous key if its chromosome is not in the gold standard
+	 */
+	private long getKey(VcfReader.Record record, long previous){
+		Integer chromId = chromOrder.get(record.getChrom());
+		return (chromId == null) ? previous : pack(chromId, record.getPos());
+	}
+
+	/**
+	 * Reads the packed positions of all variants in the file, sorts them and merges them with the gold standard
+	 */
+	private int getHitsUnsorted(String vcfPath) throws IOException {
+		logger.fine("Variants of "+vcfPath+" are not in the order of the gold standard, sorting them.");
+		long[][] keys = {new long[1024]};
+		int[] n = {0};
+		VcfReader.read(vcfPath, record -> {
+			Integer chromId = chromOrder.get(record.getChrom());
+			if(chromId != null){
+				if(n[0] == keys[0].length){
+					keys[0] = Arrays.copyOf(keys[0], keys[0].length * 2);
+				}
+				keys[0][n[0]++] = pack(chromId, record.getPos());
+			}
+		});
+		Arrays.sort(keys[0], 0, n[0]);
+		return merge(keys[0], n[0]);
+	}
+
+	/**
+	 * @param keys The sorted packed positions of the variants
+	 * @param n The number of used entries in keys
+	 * @return The number of gold standard variants that match one of the keys
+	 */
+	private int merge(long[] keys, int n) throws IOException {
+		int hits = 0;
+		int i = 0;
+		try (VcfReader.Cursor gold = new VcfReader.Cursor(path)) {
+			while(i < n && gold.next()){
+				long goldKey = pack(chromOrder.get(gold.getRecord().getChrom()), gold.getRecord().getPos());
+				while(i < n && keys[i] < goldKey){
+					i++;
+				}
+				if(i < n && keys[i] == goldKey){
+					hits++;
+				}
+			}
+		}
+		return hits;
+	}
+
+	private static long pack(int chromId, int pos){
+		return ((long)chromId << 32) | (pos & 0xFFFFFFFFL);
+	}
+}
@@ -20,28 +20,35 @@ package instances;
 
 import general.ExitCode;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Logger;
 
-import logdb.LogDB;
+import logdb.GoldstandardSet;
+import logdb.Storage;
 import logdb.Variant;
 
 public class TargetFunction {
 	public static final int SIMILARITYgoldstandard = 1;
 	public static final int META = 2;
 	public static final int PATHWAY = 3;
-	private static final int MAXBATCHSIZE = 2500;
 	
 	private static Logger logger = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
 	private int target = META;
-	private LogDB logdb;
+	private Storage logdb;
 	private boolean overwrite = false;
 	private boolean annotate = false;
+	private MetaScorer metaScorer = new MetaScorer();
+	private GoldstandardSet goldstandard = null;
+	private boolean streamGold = false;
+	private SortedGoldstandard sortedGold = null;
+	private int threads = 1;
+	private ForkJoinPool pool = null;
 	
-	public TargetFunction(LogDB logdb){
+	public TargetFunction(Storage logdb){
 		this.logdb = logdb;
 	}
 
@@ -53,6 +60,13 @@ public class TargetFunction {
 		}
 	}
 	
+	/**
+	 * @param threads The number of threads that parse a VCF file, one thread reads the file without splitting it
+	 */
+	public synchronized void setThreads(int threads){
+		this.threads = Math.max(1, threads);
+	}
+
 	public int getTarget(){
 
 		return this.target;
@@ -66,6 +80,22 @@ public class TargetFunction {
 	 * @param runName The name of the current sampling process
 	 */
 	public void setGoldstandard(String pathToFile, String runName){
+		if(isStreamGold()){
+			try{
+				SortedGoldstandard sorted = new SortedGoldstandard(pathToFile);
+				if(sorted.isSorted()){
+					logger.info("The gold standard "+pathToFile+" is sorted and will be read from the file for each comparison.");
+					synchronized(this){
+						sortedGold = sorted;
+					}
+					return;
+				}
+				logger.warning("The gold standard "+pathToFile+" is not sorted by chromosome and position, it will be added to the database instead.");
+			}catch(IOException ioe){
+				ioe.printStackTrace();
+				System.exit(ExitCode.INPUTERROR);
+			}
+		}
 		logger.finest("Checking if variants already exist in the database...");
 		if(logdb.hasVariants(runName, true)){
 			if(isOverwrite()){
@@ -78,35 +108,13 @@ public class TargetFunction {
 		}
 		logger.info("Adding the gold standard "+pathToFile+" to the database. This may take a while...");
 		int logged = 0;
-		int position;
-		try (BufferedReader br = new BufferedReader(new FileReader(pathToFile))) {
-		    String line, chrom, pos;
-		    int firstTab;
-		    int secondTab;
-		    ArrayList<Variant> vlist = new ArrayList<>();
-		    read:while ((line = br.readLine()) != null) {
-		    	if(line.isEmpty()) continue read; //skip empty lines
-		    	if(line.startsWith("#")) continue read;
-		    	
-		    	//get the chromosom and the position
-		    	firstTab = line.indexOf("\t");
-		    	secondTab = line.indexOf("\t", firstTab+1);
-		    	chrom = line.substring(0, firstTab);
-		    	pos = line.substring(firstTab+1, secondTab);
-		    	position = Integer.parseInt(pos);
-		    	//vlist.add(new Variant(chrom, position, line.substring(secondTab+1)));
-				vlist.add(new Variant(chrom, position, "")); // content currently not needed, save space
-		    	if(vlist.size() >= MAXBATCHSIZE){
-		    		logdb.addGoldVariant(runName, vlist);
-		    		logged += vlist.size();
-		    		vlist.clear();
-		    	}
-		    }
-		    //add the last variants
+		try {
+		    // content currently not needed, save space
+		    ArrayList<Variant> vlist = ParsedChunk.merge(VcfReader.read(pathToFile, getPool(), () -> new ParsedChunk(false, false))).variants;
+		    logged = vlist.size();
+		    //add the whole gold standard in one transaction
 		    if(vlist.size() > 0){
 		    	logdb.addGoldVariant(runName, vlist);
-	    		logged += vlist.size();
-	    		vlist.clear();
 	    	}
 		}catch(Exception ex){
 			ex.printStackTrace();
@@ -117,6 +125,10 @@ public class TargetFunction {
 			System.exit(ExitCode.UNKNOWNERROR);
 		}
 		logger.info("Added the gold standard "+pathToFile+" to the database.");
+		//load the new gold standard at the next comparison
+		synchronized(this){
+			goldstandard = null;
+		}
 	}
 	
 	/**
@@ -134,8 +146,23 @@ public class TargetFunction {
 			// commonSet.size / sqrt(a.size) * sqrt(gold.size)
 			double distance = 0.0;
 			if(variants.size() > 0) {
-				double commonSetSize = logdb.getGoldstandardHits(runName, variants);
-				double goldSetSize = logdb.getGoldstandardHits(runName, null);
+				double commonSetSize = 0;
+				double goldSetSize = 0;
+				SortedGoldstandard sorted = getSortedGoldstandard();
+				if(sorted != null){
+					try{
+						//the file is merged with the gold standard without the parsed list
+						commonSetSize = sorted.getHits(vcfPath);
+					}catch(IOException ioe){
+						ioe.printStackTrace();
+						System.exit(ExitCode.INPUTERROR);
+					}
+					goldSetSize = sorted.size();
+				}else{
+					GoldstandardSet gold = getGoldstandard(runName);
+					commonSetSize = gold.getHits(variants);
+					goldSetSize = gold.size();
+				}
 				if ((commonSetSize > 0) && goldSetSize > 0) {
 					distance = commonSetSize / (Math.sqrt(variants.size()) * Math.sqrt(goldSetSize));
 				}
@@ -146,48 +173,103 @@ public class TargetFunction {
 		}
 		//else
 		// Only meta is currently implemented
-		int totalConfigurations = logdb.getTotalNumberOfConfigurations(runName);
-		ArrayList<Integer> allOccurences = logdb.getCommonVariantOccurrences(runName, null);
-		ArrayList<Double> allScores = new ArrayList<>();
-		for(int i : allOccurences){
-			double newScore = i/(double)totalConfigurations;
-			allScores.add(newScore);
+		updateMetaScores(runName, configId, variants);
+	}
+
+	/**
+	 * @param runName The name of the current sampling process
+	 * @return The gold standard of the run, loaded from the database on the first call
+	 */
+	private synchronized GoldstandardSet getGoldstandard(String runName){
+		if(goldstandard == null){
+			goldstandard = logdb.getGoldstandard(runName);
 		}
+		return goldstandard;
+	}
 
-		//update all previous results that are in the database
-		//do this for each new result
-		ArrayList<Long> confs = logdb.getConfigurations(runName);
-		confs.add(configId);
-		for(long id : confs){
-			double filtScores = logdb.getCommonVariantSumForConfig(runName, id)/totalConfigurations;
-			double a = logdb.getNumberOfVariantsForConfig(runName, id);
-			logdb.updateConfiguration(id, calculateCosineDistance(filtScores, a, allScores), runName);
+	/**
+	 * @return The pool that parses the VCF files, or null if only one thread is available
+	 */
+	private synchronized ForkJoinPool getPool(){
+		if(pool == null && threads > 1){
+			pool = new ForkJoinPool(threads);
 		}
+		return pool;
 	}
-	
-	/** 
-	 * Given two vectors, calculates the distance between them
-	 * @param sumTop Scalar of both vectors, divided by the sum of total configurations
-	 * @param vectorA Amount of rows where vector A is not null (a.i != 0)
-	 * @param vectorBcomplete The score vector that was pulled from the database
-	 * @return Cosine distance between the two vectors as string
+
+	/**
+	 * The variants of one byte range of a VCF file
 	 */
-	private double calculateCosineDistance(double sumTop, double vectorA, ArrayList<Double> vectorBcomplete){
-		/* Q: Why not two score vectors?
-		 * A: Only one is needed, the one from the database. The vector of the
-		 * submitted vcf has 1 for each variant and 0 for each one that is not included.
+	private static class ParsedChunk implements VcfReader.Handler {
+		private boolean annotate;
+		private boolean content;
+		private ArrayList<Variant> variants = new ArrayList<>();
+		private ArrayList<String[]> annotated = new ArrayList<>();
+
+		/**
+		 * @param annotate If true, the annotation fields are parsed as well
+		 * @param content If true, the remaining part of the line is kept as content of the variant
+		 */
+		ParsedChunk(boolean annotate, boolean content){
+			this.annotate = annotate;
+			this.content = content;
+		}
+
+		@Override
+		public void handle(VcfReader.Record record){
+			if(annotate){
+				//assume that the annotation has been done and parse the remaining parts
+				String[] av = {record.getAnnotationField(3), record.getAnnotationField(10), record.getAnnotationField(1),
+						record.getAnnotationField(5), record.getAnnotationField(7), record.getAnnotationField(2)};
+				annotated.add(av);
+			}
+			variants.add(new Variant(record.getChrom(), record.getPos(), content ? record.getRemaining() : ""));
+		}
+
+		/**
+		 * @param chunks The chunks in the order of the file
+		 * @return One chunk with the variants of all chunks, in the order of the file
 		 */
-		double normComplete = 0.0;
-		for(double Bi : vectorBcomplete){
-			normComplete += Math.pow(Bi, 2);
+		static ParsedChunk merge(List<ParsedChunk> chunks){
+			if(chunks.size() == 1){
+				return chunks.get(0);
+			}
+			ParsedChunk result = new ParsedChunk(chunks.get(0).annotate, chunks.get(0).content);
+			int size = 0;
+			for(ParsedChunk chunk : chunks){
+				size += chunk.variants.size();
+			}
+			result.variants.ensureCapacity(size);
+			for(ParsedChunk chunk : chunks){
+				result.variants.addAll(chunk.variants);
+				result.annotated.addAll(chunk.annotated);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * @return The sorted gold standard that is merged from its file, or null if the gold standard is in the database
+	 */
+	private synchronized SortedGoldstandard getSortedGoldstandard(){
+		return sortedGold;
+	}
+
+	/**
+	 * Updates the meta score of the new configuration and of all previous configurations
+	 * whose score changed by the new variants. Synchronized because the scores must not
+	 * interleave when several configurations are sampled in parallel
+	 * @param runName The name of the current sampling process
+	 * @param configId The id of the targeted configuration
+	 * @param variants The variants found by the configuration
+	 */
+	private synchronized void updateMetaScores(String runName, long configId, ArrayList<Variant> variants){
+		if(!metaScorer.isLoaded()){
+			// results of previous runs with the same name are part of the score
+			metaScorer.load(logdb.getResultVariants(runName), logdb.getVariantCounts(runName));
 		}
-		// vectorA would habe been Sum(a.i^2) with each a.i either 1 or 0, so we skipped the sum step before and
-		// vectorA is the number of all rows where a.i = 1
-		double score = sumTop / (Math.sqrt(vectorA) * Math.sqrt(normComplete));
-		//double score = Math.cos(grad);
-		//TODO: current result 'sumTop=1744.0, normalComplete=42.36603304072753, score=41.16505310571441'
-		logger.finer("sumTop="+sumTop+", sqrt(vectorA)="+Math.sqrt(vectorA)+", sqrt(normalComplete)="+Math.sqrt(normComplete)+", score="+score);
-		return score;
+		Map<Long, Double> scores = metaScorer.addConfiguration(configId, variants);
+		logdb.updateConfigurations(scores, runName);
 	}
 	
 	/**
@@ -200,52 +282,16 @@ public class TargetFunction {
 	private ArrayList<Variant> parseFile(String runName, String vcfPath, long configId){
 		ArrayList<Variant> list = new ArrayList<>();
 		ArrayList<String[]> annolist = new ArrayList<>();
-		ArrayList<Variant> tempList = new ArrayList<>();
 		int variantCounter = 0;
 
-		try (BufferedReader br = new BufferedReader(new FileReader(vcfPath))) {
-		    String line, chrom, pos;
-		    int firstTab;
-		    int secondTab;
-		    read:while ((line = br.readLine()) != null) {
-		    	if(line.isEmpty()) continue read; //skip empty lines
-		    	if(line.startsWith("#")) continue read;
-
-		    	variantCounter++;
-		    	//get chromosom and position
-		    	firstTab = line.indexOf("\t");
-		    	secondTab = line.indexOf("\t", firstTab+1);
-		    	chrom = line.substring(0, firstTab);
-		    	pos = line.substring(firstTab+1, line.indexOf("\t", firstTab+1));
-		    	int position = Integer.parseInt(pos);
-		    	String remaining = line.substring(secondTab+1);
-		    	if(this.isAnnotate()){
-		    		//assume that the annotation has been done and parse the remaining parts
-		    		String[] splitted = remaining.split("\\|");
-		    		String[] av = {splitted[3], splitted[10], splitted[1], splitted[5], splitted[7], splitted[2]};
-		    		
-		    		annolist.add(av);
-		    	}
-		    	Variant v = new Variant(chrom, position, remaining);
-		    	list.add(v);
-		    	tempList.add(v);
-		    	if(tempList.size() >= MAXBATCHSIZE){
-		    		logdb.addResultVariant(runName, configId, tempList);
-		    		tempList.clear();
-		    		if(this.isAnnotate()){
-			    		logdb.addAnnotatedResultVariant(runName, configId, annolist);
-		    			annolist.clear();
-			    	}
-		    	}
-		    }
-		    if(tempList.size() > 0){
-		    	logdb.addResultVariant(runName, configId, tempList);
-	    		tempList.clear();
-	    		if(this.isAnnotate()){
-		    		logdb.addAnnotatedResultVariant(runName, configId, annolist);
-	    			annolist.clear();
-		    	}
-	    	}
+		try {
+		    boolean annotate = this.isAnnotate();
+		    ParsedChunk parsed = ParsedChunk.merge(VcfReader.read(vcfPath, getPool(), () -> new ParsedChunk(annotate, true)));
+		    list = parsed.variants;
+		    annolist = parsed.annotated;
+		    variantCounter = list.size();
+		    //add the whole file in one transaction, the lists must not be changed afterwards
+		    logdb.addResultVariants(runName, configId, list, this.isAnnotate() ? annolist : null);
 	    	//at last submit the number of variants to the variant table
 			logdb.addVariantCount(runName, configId, variantCounter);
 
@@ -287,5 +333,21 @@ public class TargetFunction {
 	public void setAnnotate(boolean anno) {
 		this.annotate = anno;
 	}
+
+	/**
+	 * @return True if a sorted gold standard is read from its file instead of the database
+	 */
+	public boolean isStreamGold() {
+		return streamGold;
+	}
+
+	/**
+	 * Define whether a sorted gold standard is compared to the results by a merge join on the file.
+	 * Gold standards that are not sorted are still added to the database.
+	 * @param streamGold
+	 */
+	public void setStreamGold(boolean streamGold) {
+		this.streamGold = streamGold;
+	}
 	
 }
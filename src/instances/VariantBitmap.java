@@ -0,0 +1,172 @@
+package instances;
+
+/*
+		% WorkflowWalker: A Workflow Parameter Optimizer
+		%
+		% Copyright 2017 Björn Groß
+		%
+		% Licensed under the Apache License, Version 2.0 (the "License");
+		% you may not use this file except in compliance with the License.
+		% You may obtain a copy of the License at
+		%
+		%    http://www.apache.org/licenses/LICENSE-2.0
+		%
+		% Unless required by applicable law or agreed to in writing, software
+		% distributed under the License is distributed on an "AS IS" BASIS,
+		% WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+		% See the License for the specific language governing permissions and
+		% limitations under the License.
+*/
+
+import java.util.Arrays;
+
+/**
+ * Compressed set of variant ids. The ids are split into chunks of 65536 by their upper 16 bits.
+ * Sparse chunks are stored as sorted arrays of the lower 16 bits, dense chunks as bitsets
+ * of 1024 words, so intersections of dense chunks are counted with AND and popcount.
+ */
+class VariantBitmap {
+	/** Chunks with more elements are stored as bitsets, which then need less memory than the array */
+	private static final int MAXARRAYSIZE = 4096;
+	private static final int BITSETWORDS = 1 << 10;
+	private int[] keys;
+	/** Either a sorted char array or a long array with BITSETWORDS words */
+	private Object[] chunks;
+	private int cardinality;
+
+	private VariantBitmap(int[] keys, Object[] chunks, int cardinality){
+		this.keys = keys;
+		this.chunks = chunks;
+		this.cardinality = cardinality;
+	}
+
+	/**
+	 * @param ids Sorted variant ids without duplicates
+	 * @return The bitmap that contains the given ids
+	 */
+	static VariantBitmap of(int[] ids){
+		int[] keys = new int[16];
+		Object[] chunks = new Object[16];
+		int count = 0;
+		int start = 0;
+		while(start < ids.length){
+			int key = ids[start] >>> 16;
+			int end = start;
+			while(end < ids.length && (ids[end] >>> 16) == key){
+				end++;
+			}
+			if(count == keys.length){
+				keys = Arrays.copyOf(keys, count * 2);
+				chunks = Arrays.copyOf(chunks, count * 2);
+			}
+			keys[count] = key;
+			if(end - start > MAXARRAYSIZE){
+				long[] words = new long[BITSETWORDS];
+				for(int i=start; i<end; i++){
+					int low = ids[i] & 0xFFFF;
+					words[low >>> 6] |= 1L << low;
+				}
+				chunks[count] = words;
+			}else{
+				char[] values = new char[end - start];
+				for(int i=start; i<end; i++){
+					values[i - start] = (char)ids[i];
+				}
+				chunks[count] = values;
+			}
+			count++;
+			start = end;
+		}
+		return new VariantBitmap(Arrays.copyOf(keys, count), Arrays.copyOf(chunks, count), ids.length);
+	}
+
+	/**
+	 * @return The number of ids in the bitmap
+	 */
+	int cardinality(){
+		return this.cardinality;
+	}
+
+	/**
+	 * @param id The variant id
+	 * @return True if the bitmap contains the id
+	 */
+	boolean contains(int id){
+		int i = Arrays.binarySearch(keys, id >>> 16);
+		if(i < 0){
+			return false;
+		}
+		char low = (char)id;
+		if(chunks[i] instanceof long[]){
+			return (((long[])chunks[i])[low >>> 6] & (1L << low)) != 0;
+		}
+		return Arrays.binarySearch((char[])chunks[i], low) >= 0;
+	}
+
+	/**
+	 * @param other Another bitmap
+	 * @return The number of ids that are in both bitmaps
+	 */
+	int andCardinality(VariantBitmap other){
+		int result = 0;
+		int i = 0;
+		int j = 0;
+		while(i < keys.length && j < other.keys.length){
+			if(keys[i] < other.keys[j]){
+				i++;
+			}else if(keys[i] > other.keys[j]){
+				j++;
+			}else{
+				result += andCardinality(chunks[i], other.chunks[j]);
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	private static int andCardinality(Object a, Object b){
+		if(a instanceof long[] && b instanceof long[]){
+			long[] x = (long[])a;
+			long[] y = (long[])b;
+			int result = 0;
+			for(int i=0; i<BITSETWORDS; i++){
+				result += Long.bitCount(x[i] & y[i]);
+			}
+			return result;
+		}
+		if(a instanceof long[]){
+			return andCardinality((char[])b, (long[])a);
+		}
+		if(b instanceof long[]){
+			return andCardinality((char[])a, (long[])b);
+		}
+		char[] x = (char[])a;
+		char[] y = (char[])b;
+		int result = 0;
+		int i = 0;
+		int j = 0;
+		while(i < x.length && j < y.length){
+			if(x[i] < y[j]){
+				i++;
+			}else if(x[i] > y[j]){
+				j++;
+			}else{
+				result++;
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	private static int andCardinality(char[] values, long[] words){
+		int result = 0;
+		for(char low : values){
+			if((words[low >>> 6] & (1L << low)) != 0){
+				result++;
+			}
+		}
+		return result;
+	}
+}
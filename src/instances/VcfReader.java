@@ -0,0 +1,449 @@
+package instances;
+
+/*
+		% WorkflowWalker: A Workflow Parameter Optimizer
+		%
+		% Copyright 2017 Björn Groß
+		%
+		% Licensed under the Apache License, Version 2.0 (the "License");
+		% you may not use this file except in compliance with the License.
+		% You may obtain a copy of the License at
+		%
+		%    http://www.apache.org/licenses/LICENSE-2.0
+		%
+		% Unless required by applicable law or agreed to in writing, software
+		% distributed under the License is distributed on an "AS IS" BASIS,
+		% WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+		% See the License for the specific language governing permissions and
+		% limitations under the License.
+*/
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the variant lines of a VCF file from a memory mapped buffer. Header lines and empty lines are skipped.
+ * Gzip compressed files are detected by their first bytes and decompressed while reading, BGZF files
+ * are decompressed block wise on the pool, if one is given.
+ * Every variant line is handed to the handler as the same reusable record, so the handler has to copy
+ * the fields it wants to keep. Only the fields that are requested from the record are turned into strings.
+ */
+public class VcfReader {
+	/** Size of the mapped part of the file, lines are never split between two windows */
+	private static final int WINDOWSIZE = 1 << 28;
+	/** Files are only split into chunks of at least this size for parallel parsing */
+	private static final long MINCHUNKSIZE = 1 << 23;
+	/** Initial size of the buffer for decompressed data, it grows for longer lines */
+	private static final int STREAMBUFFERSIZE = 1 << 22;
+
+	/**
+	 * Receives the variant lines of a VCF file
+	 */
+	public interface Handler {
+		void handle(Record record) throws IOException;
+	}
+
+	/**
+	 * Reads all variant lines of the given file
+	 * @param path The path to the VCF file
+	 * @param handler The handler that is called for every variant line
+	 * @return The number of variant lines
+	 * @throws IOException If the file can not be read, or a line does not contain chrom and pos
+	 */
+	public static int read(String path, Handler handler) throws IOException {
+		int count = 0;
+		try (Cursor cursor = new Cursor(path)) {
+			while(cursor.next()){
+				handler.handle(cursor.getRecord());
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Reads all variant lines of the given file in parallel. The file is split into byte ranges that end
+	 * at a line break, each range is parsed by its own handler on the pool. Small files are read as one range.
+	 * @param path The path to the VCF file
+	 * @param pool The pool that parses the ranges, if null the whole file is read by the calling thread
+	 * @param handlers Creates a new handler for each range
+	 * @return The handlers of all ranges, in the order of the ranges in the file
+	 * @throws IOException If the file can not be read, or a line does not contain chrom and pos
+	 */
+	public static <T extends Handler> List<T> read(String path, ForkJoinPool pool, Supplier<T> handlers) throws IOException {
+		ArrayList<T> result = new ArrayList<>();
+		ArrayList<long[]> ranges = new ArrayList<>();
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+			if(isGzip(channel)){
+				//compressed files can not be split, the pool decompresses the blocks instead
+				T handler = handlers.get();
+				try (Cursor cursor = new Cursor(path, pool)) {
+					while(cursor.next()){
+						handler.handle(cursor.getRecord());
+					}
+				}
+				result.add(handler);
+				return result;
+			}
+			long size = channel.size();
+			int chunks = (pool == null) ? 1 : (int)Math.max(1, Math.min(pool.getParallelism() * 4L, size / MINCHUNKSIZE));
+			long from = 0;
+			for(int i=1; i<chunks && from < size; i++){
+				long to = nextLine(channel, Math.max(from, size / chunks * i), size);
+				if(to > from){
+					ranges.add(new long[]{from, to});
+					from = to;
+				}
+			}
+			if(from < size || ranges.isEmpty()){
+				ranges.add(new long[]{from, size});
+			}
+		}
+		if(ranges.size() == 1){
+			result.add(readRange(path, ranges.get(0), handlers.get()));
+			return result;
+		}
+		ArrayList<ForkJoinTask<T>> tasks = new ArrayList<>();
+		for(long[] range : ranges){
+			tasks.add(pool.submit(() -> readRange(path, range, handlers.get())));
+		}
+		try{
+			for(ForkJoinTask<T> task : tasks){
+				result.add(task.get());
+			}
+		}catch(InterruptedException e){
+			throw new IOException("Interrupted while reading "+path, e);
+		}catch(ExecutionException e){
+			if(e.getCause() instanceof IOException){
+				throw (IOException)e.getCause();
+			}
+			throw new IOException("Error while reading "+path, e.getCause());
+		}
+		return result;
+	}
+
+	private static <T extends Handler> T readRange(String path, long[] range, T handler) throws IOException {
+		try (Cursor cursor = new Cursor(path, range[0], range[1])) {
+			while(cursor.next()){
+				handler.handle(cursor.getRecord());
+			}
+		}
+		return handler;
+	}
+
+	/**
+	 * @return True if the file starts with the gzip magic bytes
+	 */
+	private static boolean isGzip(FileChannel channel) throws IOException {
+		ByteBuffer magic = ByteBuffer.allocate(2);
+		while(magic.hasRemaining() && channel.read(magic, magic.position()) > 0){
+			//read until both bytes are there or the file ends
+		}
+		return magic.position() == 2 && (magic.get(0) & 0xFF) == 0x1F && (magic.get(1) & 0xFF) == 0x8B;
+	}
+
+	/**
+	 * @return The offset after the first line break at or after the given offset, or the size of the file
+	 */
+	private static long nextLine(FileChannel channel, long offset, long size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+		while(offset < size){
+			buffer.clear();
+			int read = channel.read(buffer, offset);
+			if(read <= 0){
+				break;
+			}
+			for(int i=0; i<read; i++){
+				if(buffer.get(i) == '\n'){
+					return offset + i + 1;
+				}
+			}
+			offset += read;
+		}
+		return size;
+	}
+
+	/**
+	 * Reads the variant lines of a file one by one, for callers that read several files side by side
+	 */
+	public static class Cursor implements Closeable {
+		private String path;
+		private FileChannel channel;
+		/** The decompressed input of a gzip file, null for plain files */
+		private InputStream in = null;
+		private byte[] data;
+		private long size;
+		/** Offset of the current window in the file */
+		private long offset = 0;
+		private int length = 0;
+		private boolean last = false;
+		/** Start of the next line in the current window */
+		private int start = 0;
+		private Record record = new Record();
+
+		/**
+		 * @param path The path to the VCF file, plain or gzip compressed
+		 * @throws IOException If the file can not be opened
+		 */
+		public Cursor(String path) throws IOException {
+			this(path, null);
+		}
+
+		/**
+		 * @param path The path to the VCF file, plain or gzip compressed
+		 * @param pool The pool that decompresses the blocks of a BGZF file, can be null
+		 * @throws IOException If the file can not be opened
+		 */
+		public Cursor(String path, ForkJoinPool pool) throws IOException {
+			this(path, 0, -1);
+			ByteBuffer header = ByteBuffer.allocate(18);
+			while(header.hasRemaining() && channel.read(header, header.position()) > 0){
+				//read until the header is complete or the file ends
+			}
+			if(header.position() >= 2 && (header.get(0) & 0xFF) == 0x1F && (header.get(1) & 0xFF) == 0x8B){
+				InputStream file = new BufferedInputStream(Files.newInputStream(Paths.get(path)), 1 << 16);
+				if(BgzfInputStream.isBgzf(header.array(), header.position())){
+					in = new BgzfInputStream(file, pool);
+				}else{
+					in = new GZIPInputStream(file, 1 << 16);
+				}
+				data = new byte[STREAMBUFFERSIZE];
+				channel.close();
+			}
+		}
+
+		/**
+		 * Reads only the lines of the given byte range of a plain file, the range has to start at the beginning of a line
+		 * @param path The path to the VCF file
+		 * @param from The offset of the first byte
+		 * @param to The offset after the last byte, or -1 for the end of the file
+		 */
+		private Cursor(String path, long from, long to) throws IOException {
+			this.path = path;
+			this.channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+			this.size = (to < 0) ? channel.size() : to;
+			this.offset = from;
+		}
+
+		/**
+		 * Moves to the next variant line
+		 * @return False if there are no more variant lines
+		 * @throws IOException If the file can not be read, or a line does not contain chrom and pos
+		 */
+		public boolean next() throws IOException {
+			while(true){
+				if(start >= length){
+					if(in != null){
+						if(last){
+							return false;
+						}
+						this.fill();
+						continue;
+					}
+					offset += Math.min(start, length);
+					if(offset >= size){
+						return false;
+					}
+					this.map();
+				}
+				int end = indexOf(record.buffer, (byte)'\n', start, length);
+				if(end < 0){
+					if(!last){
+						//the line continues in the next window
+						if(in != null){
+							this.fill();
+							continue;
+						}
+						if(start == 0){
+							throw new IOException("Line in "+path+" is longer than "+WINDOWSIZE+" bytes.");
+						}
+						offset += start;
+						this.map();
+						continue;
+					}
+					end = length;
+				}
+				boolean variant = record.set(start, end);
+				start = end + 1;
+				if(variant){
+					return true;
+				}
+			}
+		}
+
+		/**
+		 * @return The current variant line, only valid until the next call of next
+		 */
+		public Record getRecord(){
+			return record;
+		}
+
+		private void map() throws IOException {
+			length = (int)Math.min(WINDOWSIZE, size - offset);
+			last = offset + length >= size;
+			record.buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+			start = 0;
+		}
+
+		/**
+		 * Keeps the unread part of the buffer and fills the rest with decompressed data
+		 */
+		private void fill() throws IOException {
+			int remaining = Math.max(0, length - start);
+			if(start == 0 && length == data.length){
+				//a line longer than the buffer
+				data = Arrays.copyOf(data, data.length * 2);
+			}else{
+				System.arraycopy(data, length - remaining, data, 0, remaining);
+			}
+			length = remaining;
+			while(length < data.length){
+				int n = in.read(data, length, data.length - length);
+				if(n < 0){
+					last = true;
+					break;
+				}
+				length += n;
+			}
+			record.buffer = ByteBuffer.wrap(data);
+			start = 0;
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+			if(in != null){
+				in.close();
+			}
+		}
+	}
+
+	private static int indexOf(ByteBuffer buffer, byte b, int from, int to){
+		for(int i=from; i<to; i++){
+			if(buffer.get(i) == b){
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * A single variant line of the VCF file. The record is only valid inside of the handler call.
+	 */
+	public static class Record {
+		private ByteBuffer buffer;
+		private int start;
+		private int end;
+		private int firstTab;
+		private int secondTab;
+		private int pos;
+		//the last chromosome is reused, VCF files are sorted by chromosome
+		private byte[] chromBytes = new byte[0];
+		private String chrom = "";
+
+		/**
+		 * Points the record to the given line
+		 * @return False if the line is empty or a header line
+		 */
+		private boolean set(int start, int end) throws IOException {
+			if(end > start && buffer.get(end-1) == '\r'){
+				end--;
+			}
+			if(end <= start || buffer.get(start) == '#'){
+				return false;
+			}
+			this.start = start;
+			this.end = end;
+			firstTab = indexOf(buffer, (byte)'\t', start, end);
+			secondTab = firstTab < 0 ? -1 : indexOf(buffer, (byte)'\t', firstTab+1, end);
+			if(secondTab < 0){
+				throw new IOException("VCF line without chrom and pos: "+toString(start, end));
+			}
+			pos = 0;
+			for(int i=firstTab+1; i<secondTab; i++){
+				int digit = buffer.get(i) - '0';
+				if(digit < 0 || digit > 9){
+					throw new NumberFormatException("For input string: \""+toString(firstTab+1, secondTab)+"\"");
+				}
+				pos = pos * 10 + digit;
+			}
+			return true;
+		}
+
+		/**
+		 * @return The chromosome of the variant
+		 */
+		public String getChrom(){
+			int length = firstTab - start;
+			boolean same = length == chromBytes.length;
+			for(int i=0; same && i<length; i++){
+				same = buffer.get(start+i) == chromBytes[i];
+			}
+			if(!same){
+				chromBytes = new byte[length];
+				for(int i=0; i<length; i++){
+					chromBytes[i] = buffer.get(start+i);
+				}
+				chrom = new String(chromBytes, StandardCharsets.UTF_8);
+			}
+			return chrom;
+		}
+
+		/**
+		 * @return The position of the variant
+		 */
+		public int getPos(){
+			return pos;
+		}
+
+		/**
+		 * @return Everything after the position
+		 */
+		public String getRemaining(){
+			return toString(secondTab+1, end);
+		}
+
+		/**
+		 * Returns a field of the annotation, the part after the position is split at '|'
+		 * @param index The index of the field
+		 * @return The field with the given index
+		 * @throws ArrayIndexOutOfBoundsException If the line has not enough fields
+		 */
+		public String getAnnotationField(int index){
+			int from = secondTab + 1;
+			for(int i=0; i<index; i++){
+				int pipe = indexOf(buffer, (byte)'|', from, end);
+				if(pipe < 0){
+					throw new ArrayIndexOutOfBoundsException(index);
+				}
+				from = pipe + 1;
+			}
+			int to = indexOf(buffer, (byte)'|', from, end);
+			return toString(from, to < 0 ? end : to);
+		}
+
+		private String toString(int from, int to){
+			byte[] bytes = new byte[to - from];
+			for(int i=0; i<bytes.length; i++){
+				bytes[i] = buffer.get(from+i);
+			}
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	}
+}
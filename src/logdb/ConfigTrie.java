@@ -0,0 +1,192 @@
+package logdb;
+
+/*
+		% WorkflowWalker: A Workflow Parameter Optimizer
+		%
+		% Copyright 2017 Björn Groß
+		%
+		% Licensed under the Apache License, Version 2.0 (the "License");
+		% you may not use this file except in compliance with the License.
+		% You may obtain a copy of the License at
+		%
+		%    http://www.apache.org/licenses/LICENSE-2.0
+		%
+		% Unless required by applicable law or agreed to in writing, software
+		% distributed under the License is distributed on an "AS IS" BASIS,
+		% WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+		% See the License for the specific language governing permissions and
+		% limitations under the License.
+*/
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Prefix tree of all configurations of one run. Each node stands for the decisions
+ * {edgeGroupName, edgeId} of the first steps and knows all configurations sharing
+ * this prefix, so the best completed configuration for any prefix is found with a
+ * single traversal.
+ */
+public class ConfigTrie {
+	private boolean loaded = false;
+	private Node root = new Node();
+	/** Path {edgeGroupName, edgeId} of each known configuration */
+	private Map<Long, ValuePair[]> paths = new HashMap<>();
+	/** Score of each completed configuration */
+	private Map<Long, Double> scores = new HashMap<>();
+	/** Orders completed configurations by score (descending), then by id */
+	private Comparator<Long> byScore = (a, b) -> {
+		int compare = Double.compare(scores.get(b), scores.get(a));
+		return (compare != 0) ? compare : Long.compare(a, b);
+	};
+
+	public boolean isLoaded(){
+		return this.loaded;
+	}
+
+	public void setLoaded(boolean loaded){
+		this.loaded = loaded;
+	}
+
+	/**
+	 * Removes all configurations
+	 */
+	public void invalidate(){
+		this.root = new Node();
+		this.paths.clear();
+		this.scores.clear();
+		this.loaded = false;
+	}
+
+	/**
+	 * @return True if the configuration is known to the trie
+	 */
+	public boolean containsConfiguration(long configId){
+		return this.paths.containsKey(configId);
+	}
+
+	/**
+	 * Adds a new configuration, that is not completed yet
+	 * @param configId The id of the configuration
+	 * @param path A pair array of the used edges with elements {edgeGroupName, edgeId}
+	 */
+	public void addConfiguration(long configId, ValuePair[] path){
+		if(this.paths.containsKey(configId)){
+			return;
+		}
+		this.paths.put(configId, path);
+		Node node = this.root;
+		for(ValuePair vp : path){
+			node = node.getChild(vp, true);
+			if(node.anyId < 0){
+				node.anyId = configId;
+			}
+		}
+	}
+
+	/**
+	 * Marks the configuration as completed with the given score
+	 * @param configId The id of the configuration
+	 * @param score The new score of the configuration
+	 */
+	public void updateConfiguration(long configId, double score){
+		ValuePair[] path = this.paths.get(configId);
+		if(path == null){
+			return;
+		}
+		//the score is part of the ordering, remove the configuration before changing it
+		this.removeCompleted(configId, path);
+		this.scores.put(configId, score);
+		Node node = this.root;
+		for(ValuePair vp : path){
+			node = node.getChild(vp, true);
+			node.completed.add(configId);
+		}
+	}
+
+	/**
+	 * Marks the configuration as failed
+	 * @param configId The id of the configuration
+	 */
+	public void failConfiguration(long configId){
+		ValuePair[] path = this.paths.get(configId);
+		if(path != null){
+			this.removeCompleted(configId, path);
+		}
+	}
+
+	private void removeCompleted(long configId, ValuePair[] path){
+		if(!this.scores.containsKey(configId)){
+			return;
+		}
+		Node node = this.root;
+		for(ValuePair vp : path){
+			node = node.getChild(vp, false);
+			if(node == null){
+				break;
+			}
+			node.completed.remove(configId);
+		}
+		this.scores.remove(configId);
+	}
+
+	/**
+	 * Search for a configuration that has the same parameter values as a given subset
+	 * @param subset A set of {edgeGroupName, edgeId in edgegroup}
+	 * @param includeFailed If true, configurations that failed or are not completed yet are included
+	 * @return The completed configuration with the highest score with a matching subset, a not completed
+	 * configuration if includeFailed is set and there is no completed one, or -1 if none was found
+	 */
+	public long find(ValuePair[] subset, boolean includeFailed){
+		Node node = this.root;
+		for(ValuePair vp : subset){
+			node = node.getChild(vp, false);
+			if(node == null){
+				return -1;
+			}
+		}
+		if(!node.completed.isEmpty()){
+			return node.completed.first();
+		}
+		return includeFailed ? node.anyId : -1;
+	}
+
+	/**
+	 * Finds the longest prefix of the given configuration that has been completed before
+	 * @param config A set of {edgeGroupName, edgeId in edgegroup}
+	 * @return Array {id of the best completed configuration sharing the prefix, index of the last step of the prefix},
+	 * or {-1, -1} if not even the first step has been completed before
+	 */
+	public long[] getCachedPrefix(ValuePair[] config){
+		long[] result = {-1, -1};
+		Node node = this.root;
+		for(int i=0; i<config.length; i++){
+			node = node.getChild(config[i], false);
+			if(node == null || node.completed.isEmpty()){
+				//no need to look any further, longer prefixes are only more specific
+				break;
+			}
+			result[0] = node.completed.first();
+			result[1] = i;
+		}
+		return result;
+	}
+
+	private class Node {
+		private Map<String, Node> children = new HashMap<>();
+		private TreeSet<Long> completed = new TreeSet<>(byScore);
+		private long anyId = -1;
+
+		private Node getChild(ValuePair vp, boolean create){
+			String key = vp.getName() + ":" + vp.getValue();
+			Node child = children.get(key);
+			if(child == null && create){
+				child = new Node();
+				children.put(key, child);
+			}
+			return child;
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package logdb;
+
+/*
+		% WorkflowWalker: A Workflow Parameter Optimizer
+		%
+		% Copyright 2017 Björn Groß
+		%
+		% Licensed under the Apache License, Version 2.0 (the "License");
+		% you may not use this file except in compliance with the License.
+		% You may obtain a copy of the License at
+		%
+		%    http://www.apache.org/licenses/LICENSE-2.0
+		%
+		% Unless required by applicable law or agreed to in writing, software
+		% distributed under the License is distributed on an "AS IS" BASIS,
+		% WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+		% See the License for the specific language governing permissions and
+		% limitations under the License.
+*/
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Opens the connections to the SQLite database. The database is switched to WAL journaling,
+ * so one writer connection and several read only connections can work at the same time.
+ * Readers see the state of the last commit and are never blocked by a running write.
+ */
+class ConnectionManager {
+	private static Logger logger = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+	private static final int BUSYTIMEOUTMS = 10000; //time sqlite waits for a lock before an operation fails
+	private static final int CACHESIZEKB = 65536; //page cache of each connection
+	private static final long MMAPSIZE = 268435456L; //bytes of the database file that are memory mapped
+	private static final int WAITMS = 100; //time between checks for a free reader slot
+	private String dbname;
+	private int maxReaders;
+	private Connection writer = null;
+	private BlockingQueue<Connection> idleReaders;
+	private ArrayList<Connection> readers = new ArrayList<>();
+	/** Set by close until the next connection is opened, readers given back in between are closed instead of pooled */
+	private volatile boolean closed = false;
+
+	/**
+	 * @param dbname The path of the database file
+	 * @param maxReaders The maximum number of read only connections
+	 */
+	ConnectionManager(String dbname, int maxReaders){
+		this.dbname = dbname;
+		this.maxReaders = maxReaders;
+		this.idleReaders = new ArrayBlockingQueue<>(maxReaders);
+	}
+
+	/**
+	 * @return The connection used for all writes, opened on the first call
+	 */
+	synchronized Connection getWriter() throws SQLException, ClassNotFoundException {
+		if(writer == null){
+			closed = false;
+			writer = open();
+			execute(writer, "PRAGMA journal_mode=WAL");
+			//with WAL, NORMAL only syncs at checkpoints and is still safe against corruption
+			execute(writer, "PRAGMA synchronous=NORMAL");
+			logger.fine("Opened the writer connection to the database.");
+		}
+		return writer;
+	}
+
+	/**
+	 * Takes a read only connection from the pool. Waits if all readers are in use.
+	 * The connection has to be given back with releaseReader.
+	 * @return A read only connection
+	 */
+	Connection acquireReader() throws SQLException, ClassNotFoundException, InterruptedException {
+		while(true){
+			Connection reader = idleReaders.poll();
+			if(reader != null){
+				return reader;
+			}
+			synchronized(this){
+				if(readers.size() < maxReaders){
+					//make sure the database is in WAL mode before the first reader opens it
+					getWriter();
+					reader = open();
+					execute(reader, "PRAGMA query_only=ON");
+					readers.add(reader);
+					logger.fine("Opened read only connection "+readers.size()+" to the database.");
+					return reader;
+				}
+			}
+			//closing the pool frees all slots, so a waiting caller checks them again
+			reader = idleReaders.poll(WAITMS, TimeUnit.MILLISECONDS);
+			if(reader != null){
+				return reader;
+			}
+		}
+	}
+
+	/**
+	 * Gives a read only connection back to the pool
+	 * @param reader The connection taken by acquireReader
+	 */
+	void releaseReader(Connection reader){
+		if(reader == null){
+			return;
+		}
+		synchronized(this){
+			//readers of a closed pool, or of the pool before it was closed and opened again, are not reused
+			if(!closed && readers.contains(reader)){
+				idleReaders.offer(reader);
+				return;
+			}
+		}
+		try{
+			reader.close();
+		}catch(SQLException e){
+			logger.log(Level.WARNING, "Error while closing a read only connection", e);
+		}
+	}
+
+	/**
+	 * Closes all connections
+	 */
+	synchronized void close(){
+		closed = true;
+		try{
+			if(writer != null){
+				writer.close();
+			}
+			for(Connection reader : readers){
+				reader.close();
+			}
+		}catch(SQLException e){
+			logger.log(Level.WARNING, "Error while closing the database connections", e);
+		}
+		writer = null;
+		readers.clear();
+		idleReaders.clear();
+	}
+
+	private Connection open() throws SQLException, ClassNotFoundException {
+		Class.forName("org.sqlite.JDBC");
+		Connection con = DriverManager.getConnection("jdbc:sqlite:"+dbname);
+		execute(con, "PRAGMA busy_timeout="+BUSYTIMEOUTMS);
+		execute(con, "PRAGMA cache_size=-"+CACHESIZEKB);
+		execute(con, "PRAGMA mmap_size="+MMAPSIZE);
+		return con;
+	}
+
+	private static void execute(Connection con, String pragma) throws SQLException {
+		Statement stmt = con.createStatement();
+		//some pragmas return their new value
+		stmt.execute(pragma);
+		stmt.close();
+	}
+}
@@ -0,0 +1,73 @@
+package logdb;
+
+/*
+		% WorkflowWalker: A Workflow Parameter Optimizer
+		%
+		% Copyright 2017 Björn Groß
+		%
+		% Licensed under the Apache License, Version 2.0 (the "License");
+		% you may not use this file except in compliance with the License.
+		% You may obtain a copy of the License at
+		%
+		%    http://www.apache.org/licenses/LICENSE-2.0
+		%
+		% Unless required by applicable law or agreed to in writing, software
+		% distributed under the License is distributed on an "AS IS" BASIS,
+		% WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+		% See the License for the specific language governing permissions and
+		% limitations under the License.
+*/
+
+import java.util.Arrays;
+
+/**
+ * Binary indexed tree over a fixed number of value ids. Supports adding a value at a
+ * single id and the sum of all values from id 0 up to a given id, both in O(log n).
+ */
+public class FenwickTree {
+	private double[] tree;
+
+	/**
+	 * @param size The number of ids, valid ids are 0 to (size-1)
+	 */
+	public FenwickTree(int size){
+		this.tree = new double[Math.max(size, 0) + 1];
+	}
+
+	/**
+	 * @return The number of ids in this tree
+	 */
+	public int size(){
+		return this.tree.length - 1;
+	}
+
+	/**
+	 * Adds the given delta to the value at the given id
+	 * @param id The value id, starting at 0
+	 * @param delta The value that is added
+	 */
+	public void add(int id, double delta){
+		for(int i=id+1; i<tree.length; i += (i & -i)){
+			tree[i] += delta;
+		}
+	}
+
+	/**
+	 * @param id The last value id that is included in the sum
+	 * @return The sum of all values from id 0 up to (including) the given id
+	 */
+	public double prefixSum(long id){
+		double sum = 0.0;
+		for(int i=(int)Math.min(id+1, size()); i>0; i -= (i & -i)){
+			sum += tree[i];
+		}
+		return sum;
+	}
+
+	/**
+	 * Sets all values to 0
+	 */
+	public void clear(){
+		Arrays.fill(tree, 0.0);
+	}
+}
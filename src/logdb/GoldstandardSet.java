@@ -0,0 +1,110 @@
+package logdb;
+
+/*
+		% WorkflowWalker: A Workflow Parameter Optimizer
+		%
+		% Copyright 2017 Björn Groß
+		%
+		% Licensed under the Apache License, Version 2.0 (the "License");
+		% you may not use this file except in compliance with the License.
+		% You may obtain a copy of the License at
+		%
+		%    http://www.apache.org/licenses/LICENSE-2.0
+		%
+		% Unless required by applicable law or agreed to in writing, software
+		% distributed under the License is distributed on an "AS IS" BASIS,
+		% WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+		% See the License for the specific language governing permissions and
+		% limitations under the License.
+*/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In memory copy of the gold standard of a run. Each variant is packed into a long, the upper
+ * 32 bit hold the id of the chromosome, the lower 32 bit the position. The packed variants are
+ * kept in a sorted array, so a hit is a binary search without any database access.
+ * Variants that appear more than once in the gold standard are kept more than once, like in
+ * the gold standard table.
+ */
+public class GoldstandardSet {
+	private Map<String, Integer> chromIds = new HashMap<>();
+	private long[] variants = new long[1024];
+	private int size = 0;
+	private boolean sorted = true;
+
+	/**
+	 * Adds a variant of the gold standard
+	 * @param chrom The chromosome of the variant
+	 * @param pos The position of the variant
+	 */
+	void add(String chrom, int pos){
+		Integer chromId = chromIds.get(chrom);
+		if(chromId == null){
+			chromId = chromIds.size();
+			chromIds.put(chrom, chromId);
+		}
+		if(size == variants.length){
+			variants = Arrays.copyOf(variants, size * 2);
+		}
+		variants[size++] = pack(chromId, pos);
+		sorted = false;
+	}
+
+	/**
+	 * @return The number of variants in the gold standard
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Counts the variants of the gold standard that match one of the given variants in chrom and pos.
+	 * Variants given more than once are only counted once.
+	 * @param filter The variants that are compared to the gold standard
+	 * @return The number of hits in the gold standard
+	 */
+	public synchronized int getHits(ArrayList<Variant> filter){
+		if(!sorted){
+			Arrays.sort(variants, 0, size);
+			sorted = true;
+		}
+		long[] keys = new long[filter.size()];
+		int n = 0;
+		for(Variant v : filter){
+			Integer chromId = chromIds.get(v.getChrom());
+			if(chromId != null){
+				keys[n++] = pack(chromId, v.getPos());
+			}
+		}
+		Arrays.sort(keys, 0, n);
+		int hits = 0;
+		for(int i=0; i<n; i++){
+			if(i > 0 && keys[i] == keys[i-1]){
+				continue;
+			}
+			int index = Arrays.binarySearch(variants, 0, size, keys[i]);
+			if(index < 0){
+				continue;
+			}
+			//count duplicates on both sides of the found entry
+			int first = index;
+			while(first > 0 && variants[first-1] == keys[i]){
+				first--;
+			}
+			int last = index;
+			while(last < size-1 && variants[last+1] == keys[i]){
+				last++;
+			}
+			hits += last - first + 1;
+		}
+		return hits;
+	}
+
+	private static long pack(int chromId, int pos){
+		return ((long)chromId << 32) | (pos & 0xFFFFFFFFL);
+	}
+}
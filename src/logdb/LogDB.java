@@ -21,12 +21,21 @@ package logdb;
 import general.ExitCode;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.ResultSetMetaData;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -34,16 +43,34 @@ import sampler.Parameter;
 import sampler.StringParameter;
 import sampler.AnnealingFunction;
 
-public class LogDB {
+/**
+ * Wrapper around the sqlite database of a sampling run. The database runs in WAL mode,
+ * all writes use one writer connection that is guarded by the write lock, as it switches its
+ * auto commit mode for every transaction. Selects use a pool of read only connections.
+ * Public methods that touch the in memory caches are synchronized, as the walker may run
+ * several configurations at once. Methods that only read from the database or only insert
+ * variants are not, so the sampling does not wait for the ingestion of variants.
+ */
+public class LogDB implements Storage {
 	private static Logger logger = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
-	private static final int NUMBEROFRETRIES = 50;
+	private static final int NUMBEROFRETRIES = 10; //sqlite itself waits for locks, see ConnectionManager
+	private static final int READERS = 4; //number of read only connections
 	private static final int RETRYTIMEMS = 1000; //wait time in ms between sql retries
+	private static final int WRITEQUEUESIZE = 1000; //maximum number of queued statements in write behind mode
+	private static final int MAXWRITEBATCH = 500; //maximum number of statements in one write behind transaction
+	private static final int MAXINSERTBATCH = 2500; //number of rows sent to the database by one executeBatch
 	private static final String TABLEconfig = "_config";
 	private static final String TABLEresults = "_results";
 	private static final String TABLEanno = "_annotated_results";
 	private static final String TABLEgold = "_goldstandard";
+	private static final String TABLEdict = "_variant_dict";
+	private static final String TABLEcontent = "_content"; //VCF lines of results stored before the variant dictionary
+	private static final String TABLEschema = "schema_version";
 
 	private Connection c = null;
+	private ConnectionManager connections;
+	/** Guards the writer connection */
+	private final Object writeLock = new Object();
 	private String dbname;
 	private String searchType = "MAX";
 	private AnnealingFunction anne;
@@ -52,6 +79,40 @@ public class LogDB {
 	private ArrayList<Long> configCache;
 	private double scoreMin = -1.0;
 	private double scoreMax = -1.0;
+	/** In memory score index for the parameter range queries, one per run */
+	private Map<String, ScoreIndex> scoreIndex = new HashMap<>();
+	/** In memory prefix tree of all configurations, one per run */
+	private Map<String, ConfigTrie> configTrie = new HashMap<>();
+
+	//variables used for the write behind mode
+	private volatile BlockingQueue<DeferredWrite> writeQueue = null;
+	/** Serializes putting a write into the queue and counting it, so the count matches the order of the queue */
+	private final Object enqueueLock = new Object();
+	private AtomicLong queuedWrites = new AtomicLong(0);
+	/** Guards writtenWrites, flush waits on it for the writer thread */
+	private final Object flushLock = new Object();
+	private long writtenWrites = 0;
+	private volatile boolean shuttingDown = false;
+	private volatile boolean crashed = false;
+
+	/** Prepared statements of the current connection, by sql string */
+	private Map<String, PreparedStatement> statements = new HashMap<>();
+	/** Number of inserted rows and total insert time in ns for each table */
+	private Map<String, AtomicLong[]> insertCounters = new ConcurrentHashMap<>();
+
+	/**
+	 * A write that is executed inside of a transaction, either directly or later by the writer thread
+	 */
+	private interface DeferredWrite {
+		void execute(Connection c) throws SQLException;
+	}
+
+	/**
+	 * Sets the values of one row of a batch insert
+	 */
+	private interface RowBinder {
+		void bind(PreparedStatement pstmt, int row) throws SQLException;
+	}
 
 
 	public LogDB(long randomSeed){
@@ -60,6 +121,7 @@ public class LogDB {
 
 	public LogDB(String databasename, long randomSeed){
 		this.dbname = databasename;
+		this.connections = new ConnectionManager(databasename, READERS);
 		connect();
 		configCache = new ArrayList<>();
 		anne = new AnnealingFunction(randomSeed);
@@ -67,41 +129,274 @@ public class LogDB {
 	
 	private void crash(Exception e){
 		logger.log(Level.SEVERE, "Crash in LogDB", e);
+		//threads waiting in flush would wait forever for the failed writes
+		crashed = true;
+		synchronized(flushLock){
+			flushLock.notifyAll();
+		}
+		//producers waiting for queue space see the crashed flag on their next offer
+		if(writeQueue != null){
+			writeQueue.clear();
+		}
 		this.disconnect();
+		if(shuttingDown){
+			//System.exit would block inside the shutdown hook
+			return;
+		}
 	    System.exit(ExitCode.UNKNOWNERROR);
 	}
 	
 	private void connect(){
-		if(c != null){
-			//do nothing
-			return;
-		}
-		try {
-		      Class.forName("org.sqlite.JDBC");
-		      c = DriverManager.getConnection("jdbc:sqlite:"+dbname);
-		      logger.fine("Opened a new connection to the database.");
-		}catch(Exception e){
-			crash(e);
+		synchronized(writeLock){
+			if(c != null){
+				//do nothing
+				return;
+			}
+			try {
+			      c = connections.getWriter();
+			      logger.fine("Opened a new connection to the database "+dbname+".");
+			}catch(Exception e){
+				crash(e);
+			}
 		}
 	}
 	
 	private void disconnect(){
-		if(c == null){
-			//do nothing
-			return;
-		}
-		try {
-		      c.close();
-		}catch(Exception e){
-			logger.log(Level.SEVERE, "Crash in LogDB", e);
-			System.exit(ExitCode.UNKNOWNERROR);
+		synchronized(writeLock){
+			statements.clear();
+			connections.close();
+			c = null;
 		}
 	}
 
 	public AnnealingFunction getAnne(){
 		return this.anne;
 	}
+
+	/**
+	 * Activates the write behind mode. Samples, variants and scores are no longer written by the
+	 * calling thread, but put into a queue. A separate writer thread groups the queued statements
+	 * into transactions. Every read waits until all queued statements are written.
+	 */
+	public synchronized void startWriteBehind(){
+		if(writeQueue != null){
+			return;
+		}
+		final BlockingQueue<DeferredWrite> queue = new ArrayBlockingQueue<>(WRITEQUEUESIZE);
+		writeQueue = queue;
+		Thread writer = new Thread(() -> runWriter(queue), "logdb-writer");
+		writer.setDaemon(true);
+		writer.start();
+		//write everything that is left in the queue before the program exits
+		Runtime.getRuntime().addShutdownHook(new Thread(this::close, "logdb-shutdown"));
+		logger.info("Database write behind mode activated.");
+	}
+
+	/**
+	 * Loop of the writer thread, takes as many statements from the queue as possible and writes them in one transaction
+	 * @param queue The queue of sql statements
+	 */
+	private void runWriter(BlockingQueue<DeferredWrite> queue){
+		ArrayList<DeferredWrite> batch = new ArrayList<>();
+		while(true){
+			try{
+				batch.add(queue.take());
+			}catch(InterruptedException ie){
+				logger.fine("Database writer was interrupted.");
+				return;
+			}
+			queue.drainTo(batch, MAXWRITEBATCH - 1);
+			//only the writer connection is locked, readers can work in the meantime
+			executeBatch(batch);
+			synchronized(flushLock){
+				writtenWrites += batch.size();
+				flushLock.notifyAll();
+			}
+			batch.clear();
+		}
+	}
+
+	/**
+	 * Waits until all statements that were queued in write behind mode before the call are written to the database.
+	 * The statements are only written by the writer thread, so they keep their order.
+	 * Returns immediately if the write behind mode is not active.
+	 */
+	public void flush(){
+		if(writeQueue == null){
+			return;
+		}
+		//the queue is in the order of the count, so the first target writes are the ones queued before
+		long target = queuedWrites.get();
+		synchronized(flushLock){
+			while(writtenWrites < target && !crashed){
+				try{
+					flushLock.wait();
+				}catch(InterruptedException ie){
+					logger.warning("Thread was interrupted while waiting for the database writer.");
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes all queued statements and closes the connection.
+	 * Runs in the shutdown hook, so it must not wait for the monitor of a LogDB method:
+	 * System.exit may have been called by a thread that holds it.
+	 */
+	public void close(){
+		shuttingDown = true;
+		if(crashed){
+			//the connection is closed already and the queued writes are lost
+			return;
+		}
+		flush();
+		disconnect();
+	}
+
+	/**
+	 * Executes the given sql update, or puts it into the write queue if the write behind mode is active
+	 * @param sql The sql query that will be executed
+	 */
+	private void executeDeferred(String sql){
+		this.executeDeferred(con -> {
+			Statement stmt = con.createStatement();
+			stmt.executeUpdate(sql);
+			stmt.close();
+		});
+	}
+
+	/**
+	 * Executes the given write in its own transaction, or puts it into the write queue if the write behind mode is active
+	 * @param write The write that will be executed
+	 */
+	private void executeDeferred(DeferredWrite write){
+		ArrayList<DeferredWrite> batch = new ArrayList<>();
+		batch.add(write);
+		if(writeQueue == null){
+			this.executeBatch(batch);
+			return;
+		}
+		//waits while the queue is full, the writer thread never waits for the caller
+		boolean interrupted = false;
+		synchronized(enqueueLock){
+			while(true){
+				if(crashed){
+					//the writer is gone, the queue will never drain
+					logger.warning("Database crashed, a queued write is dropped.");
+					return;
+				}
+				try{
+					if(writeQueue.offer(write, RETRYTIMEMS, TimeUnit.MILLISECONDS)){
+						break;
+					}
+				}catch(InterruptedException ie){
+					interrupted = true;
+				}
+			}
+			queuedWrites.incrementAndGet();
+		}
+		if(interrupted){
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Executes all given writes in one transaction and retries if an exception occurs
+	 * @param writes The writes that will be executed
+	 */
+	private void executeBatch(List<DeferredWrite> writes){
+		Exception ex = null;
+		int retries = shuttingDown ? 1 : NUMBEROFRETRIES;
+		synchronized(writeLock){
+			for(int i=0; i<retries; i++){
+				try{
+					connect();
+					c.setAutoCommit(false);
+					for(DeferredWrite w : writes){
+						w.execute(c);
+					}
+					c.commit();
+					c.setAutoCommit(true);
+					logger.finer("Wrote "+writes.size()+" queued statements.");
+					return;
+				}catch(Exception e){
+					logger.log(Level.WARNING, "Writing "+writes.size()+" queued statements failed", e);
+					ex = e;
+					try{
+						c.rollback();
+						Thread.sleep(RETRYTIMEMS * (i+1));
+					}catch(Exception iex){
+						logger.finest("Thread was interrupted while waiting for a retry for sql update query.");
+					}
+				}
+			}
+		}
+		crash(ex);
+	}
 	
+	/**
+	 * @param sql The sql string of the statement
+	 * @return The prepared statement for the sql string, created once per connection
+	 */
+	private PreparedStatement getStatement(Connection con, String sql) throws SQLException {
+		PreparedStatement pstmt = statements.get(sql);
+		if(pstmt == null){
+			pstmt = con.prepareStatement(sql);
+			statements.put(sql, pstmt);
+		}
+		return pstmt;
+	}
+
+	/**
+	 * Inserts rows with a prepared statement, sending them to the database in batches.
+	 * Has to be called inside of a transaction.
+	 * @param con The connection of the transaction
+	 * @param table The name of the table, used for the insert counters
+	 * @param sql The insert statement
+	 * @param rows The number of rows
+	 * @param binder Sets the values of each row
+	 */
+	private void insertRows(Connection con, String table, String sql, int rows, RowBinder binder) throws SQLException {
+		long start = System.nanoTime();
+		PreparedStatement pstmt = getStatement(con, sql);
+		//remove rows of a failed try
+		pstmt.clearBatch();
+		for(int i=0; i<rows; i++){
+			binder.bind(pstmt, i);
+			pstmt.addBatch();
+			if((i+1) % MAXINSERTBATCH == 0){
+				pstmt.executeBatch();
+			}
+		}
+		pstmt.executeBatch();
+		AtomicLong[] counter = insertCounters.computeIfAbsent(table, k -> new AtomicLong[]{new AtomicLong(), new AtomicLong()});
+		counter[0].addAndGet(rows);
+		counter[1].addAndGet(System.nanoTime() - start);
+	}
+
+	/**
+	 * @return The number of inserted rows, the insert time and the throughput for each table with bulk inserts
+	 */
+	public String getInsertStatistics(){
+		StringBuilder result = new StringBuilder("Database inserts:");
+		for(Map.Entry<String, AtomicLong[]> e : new TreeMap<>(insertCounters).entrySet()){
+			long rows = e.getValue()[0].get();
+			long ns = e.getValue()[1].get();
+			result.append("\n\t");
+			result.append(e.getKey());
+			result.append(": ");
+			result.append(rows);
+			result.append(" rows in ");
+			result.append(ns / 1000000);
+			result.append("ms, ");
+			result.append(ns > 0 ? (long)(rows * 1e9 / ns) : 0);
+			result.append(" rows/s");
+		}
+		return result.toString();
+	}
+
 	/**
 	 * Uses a simple statement to execute the given sql update and retries
 	 * if an exception occurs
@@ -109,25 +404,29 @@ public class LogDB {
 	 * @return Returns the number of rows affected by the update
 	 */
 	private int executeUpdate(String sql){	
+		//keep the order of queued writes
+		this.flush();
 		Exception ex = null;
 		int affected = -1;
-		for(int i=0; i<NUMBEROFRETRIES; i++){
-			try{
-				connect();
-				c.setAutoCommit(false);
-				Statement stmt = c.createStatement();
-				affected = stmt.executeUpdate(sql);
-				stmt.close();
-				c.commit();
-				c.setAutoCommit(true);
-				return affected;
-			}catch(Exception e){
-				logger.log(Level.WARNING, "SQL String: "+sql, e);
-				ex = e;
+		synchronized(writeLock){
+			for(int i=0; i<NUMBEROFRETRIES; i++){
 				try{
-					Thread.sleep(RETRYTIMEMS * (i+1));
-				}catch(InterruptedException iex){
-					logger.finest("Thread was interrupted while waiting for a retry for sql update query.");
+					connect();
+					c.setAutoCommit(false);
+					Statement stmt = c.createStatement();
+					affected = stmt.executeUpdate(sql);
+					stmt.close();
+					c.commit();
+					c.setAutoCommit(true);
+					return affected;
+				}catch(Exception e){
+					logger.log(Level.WARNING, "SQL String: "+sql, e);
+					ex = e;
+					try{
+						Thread.sleep(RETRYTIMEMS * (i+1));
+					}catch(InterruptedException iex){
+						logger.finest("Thread was interrupted while waiting for a retry for sql update query.");
+					}
 				}
 			}
 		}
@@ -140,21 +439,20 @@ public class LogDB {
 	 * @return An integer value matching the request
 	 */
 	private int selectInteger(String sql){
+		this.flush();
 		int result = -1337; //dummy value
 		Exception ex = null;
 		for(int i=0; i<NUMBEROFRETRIES; i++){
+			Connection reader = null;
 			try{
-				connect();
-				c.setAutoCommit(false);
-				Statement stmt = c.createStatement();
+				reader = connections.acquireReader();
+				Statement stmt = reader.createStatement();
 				ResultSet rs = stmt.executeQuery(sql);
 				if(rs.next()){
 					result = rs.getInt(1);
 				}
 				rs.close();
 				stmt.close();
-				c.commit();
-				c.setAutoCommit(true);
 				return result;
 			}catch(Exception e){
 				logger.log(Level.WARNING, "SQL String: "+sql, e);
@@ -164,6 +462,8 @@ public class LogDB {
 				}catch(InterruptedException iex){
 					logger.finest("Thread was interrupted while waiting for a retry for sql select query.");
 				}
+			}finally{
+				connections.releaseReader(reader);
 			}
 		}
 		crash(ex);
@@ -175,21 +475,20 @@ public class LogDB {
 	 * @return An double value matching the request
 	 */
 	private double selectDouble(String sql){
+		this.flush();
 		double result = -13.37; //dummy value
 		Exception ex = null;
 		for(int i=0; i<NUMBEROFRETRIES; i++){
+			Connection reader = null;
 			try{
-				connect();
-				c.setAutoCommit(false);
-				Statement stmt = c.createStatement();
+				reader = connections.acquireReader();
+				Statement stmt = reader.createStatement();
 				ResultSet rs = stmt.executeQuery(sql);
 				if(rs.next()){
 					result = rs.getDouble(1);
 				}
 				rs.close();
 				stmt.close();
-				c.commit();
-				c.setAutoCommit(true);
 				return result;
 			}catch(Exception e){
 				logger.log(Level.WARNING, "SQL String: "+sql, e);
@@ -199,6 +498,8 @@ public class LogDB {
 				}catch(InterruptedException iex){
 					logger.finest("Thread was interrupted while waiting for a retry for sql select query.");
 				}
+			}finally{
+				connections.releaseReader(reader);
 			}
 		}
 		crash(ex);
@@ -210,7 +511,7 @@ public class LogDB {
 	 * @param stepNumber The number of steps in the path
 	 * @param runName The name of the current sampler run
 	 */
-	public void prepareRun(int stepNumber, String runName) {
+	public synchronized void prepareRun(int stepNumber, String runName) {
 		this.prepareRun(stepNumber, runName, false, false);
 	}
 	/**
@@ -220,7 +521,7 @@ public class LogDB {
 	 * @param useVariants Indicates if variant tables are needed
 	 * @param useGold Indicates if a gold table is needed
 	 */
-	public void prepareRun(int stepNumber, String runName, boolean useVariants, boolean useGold){
+	public synchronized void prepareRun(int stepNumber, String runName, boolean useVariants, boolean useGold){
 		// create a new table for the run if none exists
 		// user has to keep track of the naming by himself, using the same name for different
 		// runs will merge the runs and make the data confuse
@@ -246,12 +547,12 @@ public class LogDB {
 		createResults.append(" (");
 		createResults.append("`id` INTEGER PRIMARY KEY AUTOINCREMENT UNIQUE,");
 		createResults.append("`configId` INTEGER NOT NULL,");
-		createResults.append("`chrom` TEXT NOT NULL, ");
-		createResults.append("`pos` TEXT NOT NULL, ");
-		createResults.append("`content` TEXT ");
+		createResults.append("`variantId` INTEGER NOT NULL ");
 		createResults.append(");");
 		if(useVariants) this.executeUpdate(createResults.toString());
 
+		if(useVariants || useGold) this.executeUpdate(createDictionary(runName + TABLEdict));
+
 		String createSample = "CREATE TABLE IF NOT EXISTS ";
 		createSample += runName;
 		createSample += "_sample ( `id` INTEGER PRIMARY KEY AUTOINCREMENT UNIQUE, `configId` INTEGER NOT NULL, score REAL NOT NULL);";
@@ -283,23 +584,199 @@ public class LogDB {
 		createGold.append(TABLEgold);
 		createGold.append(" (");
 		createGold.append("`id` INTEGER PRIMARY KEY AUTOINCREMENT UNIQUE,");
-		createGold.append("`chrom` TEXT NOT NULL, ");
-		createGold.append("`pos` TEXT NOT NULL ");
+		createGold.append("`variantId` INTEGER NOT NULL ");
 		createGold.append(")");
 		if(useGold) this.executeUpdate(createGold.toString());
 
 		logger.fine("Tables created.");
-		
+
+		this.migrateSchema(stepNumber, runName);
+	}
+
+	/**
+	 * Brings the tables of the given run to the current schema version. Every table has its own
+	 * list of migrations, the index of a migration is its version. Versions are stored in the
+	 * schema version table, so only new migrations are applied to existing databases.
+	 * @param stepNumber The number of steps in the path
+	 * @param runName The name of the current sampler run
+	 */
+	private void migrateSchema(int stepNumber, String runName){
+		this.executeUpdate("CREATE TABLE IF NOT EXISTS " + TABLEschema + " ( `name` TEXT PRIMARY KEY NOT NULL, version INTEGER NOT NULL)");
+
+		// version 1: indices for the columns used for filters and joins
+		StringBuilder configIndices = new StringBuilder();
+		for(int i=0; i<stepNumber; i++){
+			configIndices.append(createIndex(runName + TABLEconfig, "step"+i, "step"+i+"_name, step"+i+"_id, failed, score"));
+		}
+		configIndices.append(createIndex(runName + TABLEconfig, "failed", "failed, score"));
+		this.migrateTable(runName + TABLEconfig, new String[]{configIndices.toString()});
+
+		// version 2: results and gold standard reference the variant dictionary instead of storing chrom and pos.
+		// Tables created before version 2 still have the text columns and are converted. The VCF lines of old
+		// results are kept by row id in a side table, the gold standard never stored them
+		String results = runName + TABLEresults;
+		String gold = runName + TABLEgold;
+		String dict = runName + TABLEdict;
+		boolean legacyResults = hasColumn(results, "chrom");
+		boolean legacyGold = hasColumn(gold, "chrom");
+		this.migrateTable(results, new String[]{
+				createIndex(results, "config", "configId")
+				+ (legacyResults ? createIndex(results, "variant", "chrom, pos, configId") : ""),
+				(legacyResults ? keepContent(results) + convertToDictionary(results, dict, "configId, ", "`configId` INTEGER NOT NULL,") + createIndex(results, "config", "configId") : "")
+				+ "DROP INDEX IF EXISTS idx_" + results + "_variant;"
+				+ createIndex(results, "variant", "variantId, configId")
+		});
+		this.migrateTable(runName + TABLEanno, new String[]{
+				createIndex(runName + TABLEanno, "config", "configId")
+		});
+		this.migrateTable(gold, new String[]{
+				legacyGold ? createIndex(gold, "variant", "chrom, pos") : "",
+				(legacyGold ? convertToDictionary(gold, dict, "", "") : "")
+				+ "DROP INDEX IF EXISTS idx_" + gold + "_variant;"
+				+ createIndex(gold, "variant", "variantId")
+		});
+		this.migrateTable(runName + "_sample", new String[]{
+				createIndex(runName + "_sample", "config", "configId, score")
+		});
+	}
+
+	/**
+	 * @param table The name of the table
+	 * @param name The suffix of the index name
+	 * @param columns Comma separated list of the indexed columns
+	 * @return The sql statement to create the index, terminated by a semicolon
+	 */
+	private static String createIndex(String table, String name, String columns){
+		return "CREATE INDEX IF NOT EXISTS idx_" + table + "_" + name + " ON " + table + " (" + columns + ");";
+	}
+
+	/**
+	 * Every distinct variant is stored once in the dictionary, results and gold standard only reference its id.
+	 * A variant is identified by chrom and pos on purpose: ref and alt are not part of the key, because all
+	 * comparisons with the gold standard match on the position only
+	 * @param dict The name of the variant dictionary
+	 * @return The sql statement to create the dictionary, terminated by a semicolon
+	 */
+	private static String createDictionary(String dict){
+		StringBuilder createDict = new StringBuilder("CREATE TABLE IF NOT EXISTS ");
+		createDict.append(dict);
+		createDict.append(" (");
+		createDict.append("`id` INTEGER PRIMARY KEY AUTOINCREMENT UNIQUE,");
+		createDict.append("`chrom` TEXT NOT NULL, ");
+		createDict.append("`pos` INTEGER NOT NULL, ");
+		createDict.append("UNIQUE (chrom, pos)");
+		createDict.append(");");
+		return createDict.toString();
+	}
+
+	/**
+	 * Creates the statements that copy the non empty VCF lines of a legacy results table into a side table,
+	 * so the conversion to the variant dictionary does not lose them
+	 * @param table The name of the results table with a content column
+	 * @return The sql statements, terminated by a semicolon
+	 */
+	private static String keepContent(String table){
+		StringBuilder sql = new StringBuilder("CREATE TABLE IF NOT EXISTS " + table + TABLEcontent + " ( `id` INTEGER PRIMARY KEY NOT NULL, `content` TEXT NOT NULL );");
+		sql.append("INSERT OR IGNORE INTO " + table + TABLEcontent + " ( id, content ) SELECT id, content FROM " + table + " WHERE content IS NOT NULL AND content <> '';");
+		return sql.toString();
+	}
+
+	/**
+	 * Creates the statements that move the chrom and pos columns of a table into the variant dictionary.
+	 * The table is copied to a new table that references the dictionary, the ids of the rows stay the same.
+	 * @param table The name of the table with chrom and pos columns
+	 * @param dict The name of the variant dictionary
+	 * @param columns Comma separated list of the other columns that are kept, ending with a comma
+	 * @param definitions The definitions of the other columns, ending with a comma
+	 * @return The sql statements, terminated by a semicolon
+	 */
+	private static String convertToDictionary(String table, String dict, String columns, String definitions){
+		StringBuilder sql = new StringBuilder(createDictionary(dict));
+		sql.append("INSERT OR IGNORE INTO " + dict + " ( chrom, pos ) SELECT DISTINCT chrom, CAST(pos AS INTEGER) FROM " + table + ";");
+		sql.append("CREATE TABLE " + table + "_migrated ( `id` INTEGER PRIMARY KEY AUTOINCREMENT UNIQUE," + definitions + "`variantId` INTEGER NOT NULL );");
+		sql.append("INSERT INTO " + table + "_migrated ( id, " + columns + "variantId ) SELECT t.id, ");
+		for(String column : columns.split(",")){
+			if(!column.trim().isEmpty()){
+				sql.append("t." + column.trim() + ", ");
+			}
+		}
+		sql.append("d.id FROM " + table + " t, " + dict + " d WHERE d.chrom = t.chrom AND d.pos = CAST(t.pos AS INTEGER);");
+		sql.append("DROP TABLE " + table + ";");
+		sql.append("ALTER TABLE " + table + "_migrated RENAME TO " + table + ";");
+		return sql.toString();
+	}
+
+	/**
+	 * @param table The name of the table
+	 * @param column The name of the column
+	 * @return True if the table exists and was created with the given column
+	 */
+	private boolean hasColumn(String table, String column){
+		return selectInteger("SELECT COUNT(*) FROM sqlite_master WHERE type='table' AND name='" + table + "' AND sql LIKE '%`" + column + "`%'") > 0;
+	}
+
+	/**
+	 * Applies all migrations of the given table that are newer than the stored version of the table.
+	 * Each version is applied in one transaction together with the new version number.
+	 * Tables that do not exist are skipped, they will be migrated once they are created.
+	 * @param table The name of the table
+	 * @param migrations The sql statements of each version, the first entry is version 1
+	 */
+	private void migrateTable(String table, String[] migrations){
+		if(selectInteger("SELECT COUNT(*) FROM sqlite_master WHERE type='table' AND name='" + table + "'") <= 0){
+			return;
+		}
+		int version = selectInteger("SELECT COALESCE(MAX(version), 0) FROM " + TABLEschema + " WHERE name='" + table + "'");
+		for(int v=version; v<migrations.length; v++){
+			ArrayList<DeferredWrite> writes = new ArrayList<>();
+			for(String sql : migrations[v].split(";")){
+				if(!sql.trim().isEmpty()){
+					writes.add(con -> execute(con, sql));
+				}
+			}
+			String versionSql = "INSERT OR REPLACE INTO " + TABLEschema + " (name, version) VALUES ('" + table + "', " + (v+1) + ")";
+			writes.add(con -> execute(con, versionSql));
+			this.flush();
+			this.executeBatch(writes);
+			logger.info("Migrated table " + table + " to schema version " + (v+1) + ".");
+		}
+	}
+
+	/**
+	 * Executes a statement without parameters inside of a transaction
+	 * @param con The connection of the transaction
+	 * @param sql The sql statement
+	 */
+	private static void execute(Connection con, String sql) throws SQLException {
+		Statement stmt = con.createStatement();
+		stmt.executeUpdate(sql);
+		stmt.close();
 	}
 
 	
+	/**
+	 * Creates a table for the given edgegroup, if none exists yet, and registers
+	 * the parameters of the edge group for the score index
+	 * @param runName The name of the current sampler run
+	 * @param edgeName The name of the edgeGroup
+	 * @param params The parameters of the edge group
+	 */
+	public synchronized void createEdgeGroup(String runName, String edgeName, Parameter[] params){
+		String[] paramNames = new String[params.length];
+		for(int i=0; i<paramNames.length; i++){
+			paramNames[i] = params[i].getName();
+		}
+		this.createEdgeGroup(runName, edgeName, paramNames);
+		this.getScoreIndex(runName).addEdgeGroup(edgeName, params);
+	}
+
 	/**
 	 * Creates a table for the given edgegroup, if none exists yet
 	 * @param runName The name of the current sampler run
 	 * @param edgeName The name of the edgeGroup
 	 * @param paramNames String array containing the parameter names of the edge group
 	 */
-	public void createEdgeGroup(String runName, String edgeName, String[] paramNames){
+	public synchronized void createEdgeGroup(String runName, String edgeName, String[] paramNames){
 		// create a new table for the run if none exists
 		StringBuilder createPlan = new StringBuilder("CREATE TABLE IF NOT EXISTS ");
 		createPlan.append(runName);
@@ -337,7 +814,7 @@ public class LogDB {
 		sql.append(score);
 		sql.append(")");
 
-		this.executeUpdate(sql.toString());
+		this.executeDeferred(sql.toString());
 	}
 
 	/**
@@ -358,7 +835,7 @@ public class LogDB {
 		sql.append(variantCounter);
 		sql.append(")");
 
-		this.executeUpdate(sql.toString());
+		this.executeDeferred(sql.toString());
 	}
 
 
@@ -372,7 +849,7 @@ public class LogDB {
 	 * @param params Array of parameters to get the column names from
 	 * @return Returns the id of the row containing the edge
 	 */
-	public long addEdge(String runName, String edgeGroupName, String[] values, Parameter[] params){
+	public synchronized long addEdge(String runName, String edgeGroupName, String[] values, Parameter[] params){
 		// assumes that the user gives the correct number of values in the string
 		long id = -1;
 		try {
@@ -402,31 +879,33 @@ public class LogDB {
 		
 		Exception ex = null;
 		boolean finished = false;
-		for(int k=0; k<NUMBEROFRETRIES && !finished; k++){
-			try{
-				c.setAutoCommit(false);
-				PreparedStatement pstmt = c.prepareStatement(sql.toString());
-				for(int i=0; i<values.length; i++){
-					pstmt.setString(i+1, values[i]);
-				}
-				ResultSet rs = pstmt.executeQuery();
-				if(rs.next()){
-					id = rs.getLong(1);
-					logger.finer("Found that the edge already exists, returning it's row id ("+id+").");
-				}
-				rs.close();
-				pstmt.close();
-				c.commit();
-				c.setAutoCommit(true);
-				finished = true;
-				
-			}catch(Exception e){
-				logger.log(Level.WARNING, sql.toString(), e);
-				ex = e;
+		synchronized(writeLock){
+			for(int k=0; k<NUMBEROFRETRIES && !finished; k++){
 				try{
-					Thread.sleep(RETRYTIMEMS * (k+1));
-				}catch(InterruptedException iex){
-					logger.finest("Thread was interrupted while waiting for a retry for sql select query.");
+					c.setAutoCommit(false);
+					PreparedStatement pstmt = c.prepareStatement(sql.toString());
+					for(int i=0; i<values.length; i++){
+						pstmt.setString(i+1, values[i]);
+					}
+					ResultSet rs = pstmt.executeQuery();
+					if(rs.next()){
+						id = rs.getLong(1);
+						logger.finer("Found that the edge already exists, returning it's row id ("+id+").");
+					}
+					rs.close();
+					pstmt.close();
+					c.commit();
+					c.setAutoCommit(true);
+					finished = true;
+					
+				}catch(Exception e){
+					logger.log(Level.WARNING, sql.toString(), e);
+					ex = e;
+					try{
+						Thread.sleep(RETRYTIMEMS * (k+1));
+					}catch(InterruptedException iex){
+						logger.finest("Thread was interrupted while waiting for a retry for sql select query.");
+					}
 				}
 			}
 		}
@@ -434,6 +913,7 @@ public class LogDB {
 			crash(ex);
 		}
 		if(id > 0){
+			this.getScoreIndex(runName).addEdge(edgeGroupName, id, values, params);
 			return id;
 		}
 		
@@ -456,40 +936,43 @@ public class LogDB {
 		
 		ex = null;
 		finished = false;
-		for(int k=0; k<NUMBEROFRETRIES && !finished; k++){
-			try{
-				c.setAutoCommit(false);
-				PreparedStatement pstmt = c.prepareStatement(sql.toString(), Statement.RETURN_GENERATED_KEYS);
-				for(int i=0; i<values.length; i++){
-					pstmt.setString(i+1, values[i]);
-				}
-				int affectedRows = pstmt.executeUpdate();
-		
-				try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
-		            if (generatedKeys.next()) {
-		                id = generatedKeys.getLong(1);
-		            } else {
-		                throw new SQLException("Creating egde entry failed, no ID obtained.");
-		            }
-		        }
-				logger.fine("Added edge "+id+": '"+sql.toString()+"', affected "+affectedRows+" rows.");
-				pstmt.close();
-				c.commit();
-				c.setAutoCommit(true);
-				finished = true;
-			}catch(Exception e){
-				logger.log(Level.SEVERE, sql.toString(), e);
-				ex = e;
+		synchronized(writeLock){
+			for(int k=0; k<NUMBEROFRETRIES && !finished; k++){
 				try{
-					Thread.sleep(RETRYTIMEMS * (k+1));
-				}catch(InterruptedException iex){
-					logger.finest("Thread was interrupted while waiting for a retry for sql insert query.");
+					c.setAutoCommit(false);
+					PreparedStatement pstmt = c.prepareStatement(sql.toString(), Statement.RETURN_GENERATED_KEYS);
+					for(int i=0; i<values.length; i++){
+						pstmt.setString(i+1, values[i]);
+					}
+					int affectedRows = pstmt.executeUpdate();
+			
+					try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
+			            if (generatedKeys.next()) {
+			                id = generatedKeys.getLong(1);
+			            } else {
+			                throw new SQLException("Creating egde entry failed, no ID obtained.");
+			            }
+			        }
+					logger.fine("Added edge "+id+": '"+sql.toString()+"', affected "+affectedRows+" rows.");
+					pstmt.close();
+					c.commit();
+					c.setAutoCommit(true);
+					finished = true;
+				}catch(Exception e){
+					logger.log(Level.SEVERE, sql.toString(), e);
+					ex = e;
+					try{
+						Thread.sleep(RETRYTIMEMS * (k+1));
+					}catch(InterruptedException iex){
+						logger.finest("Thread was interrupted while waiting for a retry for sql insert query.");
+					}
 				}
 			}
 		}
 		if(!finished){
 			crash(ex);
 		}
+		this.getScoreIndex(runName).addEdge(edgeGroupName, id, values, params);
 		
 		return id;
 	}
@@ -499,7 +982,7 @@ public class LogDB {
 	 * @param runName The name of the current sampling process
 	 * @return The id of the configuration inside the table
 	 */
-	public long addConfiguration(ValuePair[] paramValues, String runName){
+	public synchronized long addConfiguration(ValuePair[] paramValues, String runName){
 		long rowId = 0; //dummyValue
 		// assumes that the user gives the correct number of values in the string
 		connect();
@@ -527,35 +1010,37 @@ public class LogDB {
 
 		Exception ex = null;
 		boolean finished = false;
-		for(int k=0; k<NUMBEROFRETRIES && !finished; k++){
-			try{
-				c.setAutoCommit(false);
-				PreparedStatement pstmt = c.prepareStatement(sql.toString(), Statement.RETURN_GENERATED_KEYS);
-				for(int i=1; i<=paramValues.length; i++){
-					pstmt.setString((i*2)-1, paramValues[i-1].getName());
-					pstmt.setInt(i*2, Integer.parseInt(paramValues[i-1].getValue()));
-				}
-				pstmt.executeUpdate();
+		synchronized(writeLock){
+			for(int k=0; k<NUMBEROFRETRIES && !finished; k++){
+				try{
+					c.setAutoCommit(false);
+					PreparedStatement pstmt = c.prepareStatement(sql.toString(), Statement.RETURN_GENERATED_KEYS);
+					for(int i=1; i<=paramValues.length; i++){
+						pstmt.setString((i*2)-1, paramValues[i-1].getName());
+						pstmt.setInt(i*2, Integer.parseInt(paramValues[i-1].getValue()));
+					}
+					pstmt.executeUpdate();
 
-				ResultSet generatedKeys = pstmt.getGeneratedKeys();
-				if (generatedKeys.next()) {
-					rowId = generatedKeys.getLong(1);
-				} else {
-					throw new SQLException("Creating configuration entry failed, no ID obtained.");
-				}
+					ResultSet generatedKeys = pstmt.getGeneratedKeys();
+					if (generatedKeys.next()) {
+						rowId = generatedKeys.getLong(1);
+					} else {
+						throw new SQLException("Creating configuration entry failed, no ID obtained.");
+					}
 
-				pstmt.close();
-				c.commit();
-				c.setAutoCommit(true);
-				finished = true;
+					pstmt.close();
+					c.commit();
+					c.setAutoCommit(true);
+					finished = true;
 
-			}catch(Exception e){
-				ex = e;
-				logger.warning("Adding a new configuration failed at attempt "+(k+1)+"with error: "+e.getMessage());
-				try{
-					Thread.sleep(RETRYTIMEMS * (k+1));
-				}catch(InterruptedException iex){
-					logger.finest("Thread was interrupted while waiting for a retry for sql insert query.");
+				}catch(Exception e){
+					ex = e;
+					logger.warning("Adding a new configuration failed at attempt "+(k+1)+"with error: "+e.getMessage());
+					try{
+						Thread.sleep(RETRYTIMEMS * (k+1));
+					}catch(InterruptedException iex){
+						logger.finest("Thread was interrupted while waiting for a retry for sql insert query.");
+					}
 				}
 			}
 		}
@@ -566,107 +1051,102 @@ public class LogDB {
 
 		//add to cache
 		configCache.add(rowId);
+		this.getLoadedScoreIndex(runName).addConfiguration(rowId, paramValues);
+		this.getLoadedConfigTrie(runName).addConfiguration(rowId, paramValues);
 
 		return rowId;
 	}
 
 	/**
-	 * Adds the given list of variants as gold standard to the database
-	 * @param runName  The name of the current sampler run
-	 * @param vlist List of variants from the gold standard
+	 * Adds the variants to the gold standard table, using a single transaction
+	 * @param runName The name of the current sampler run
+	 * @param vlist The list of variants to be added
 	 */
-	public void addGoldVariant(String runName, ArrayList<Variant> vlist){
+	public synchronized void addGoldVariant(String runName, ArrayList<Variant> vlist){
 		logger.fine("Adding batch variants to the gold standard table, this set contains "+vlist.size()+" variants.");
-		connect();
-		StringBuilder sql = new StringBuilder("INSERT INTO ");
-		sql.append(runName);
-		sql.append(TABLEgold);
-		sql.append(" ( chrom, pos ) VALUES ");
-		String seperator = "";
-		for(Variant v : vlist){
-			sql.append(seperator);
-			sql.append("('");
-			sql.append(v.getChrom());
-			sql.append("', ");
-			sql.append(v.getPos());
-			sql.append("')");
-			seperator = ", ";
-		}
-
-		int affectedRows = this.executeUpdate(sql.toString());
-		logger.fine("Added gold variants, affected "+affectedRows+" rows.");
-		
+		String sql = "INSERT INTO " + runName + TABLEgold + " ( variantId ) SELECT id FROM " + runName + TABLEdict + " WHERE chrom = ? AND pos = ?";
+		ArrayList<DeferredWrite> write = new ArrayList<>();
+		write.add(con -> {
+			addToDictionary(con, runName, vlist);
+			insertRows(con, runName + TABLEgold, sql, vlist.size(), (pstmt, i) -> {
+				pstmt.setString(1, vlist.get(i).getChrom());
+				pstmt.setInt(2, vlist.get(i).getPos());
+			});
+		});
+		//the gold standard is read right after it was added, so it is not deferred
+		this.flush();
+		this.executeBatch(write);
+		logger.fine("Added "+vlist.size()+" gold variants.");
 	}
-	
+
 	/**
-	 * Same as addResultVariant, but adds all variants given in the list
+	 * Adds all result variants of a configuration in a single transaction
 	 * @param runName The name of the current sampler run
 	 * @param configId The id of the config that created the result set
 	 * @param vlist The list of variants to be added
 	 */
 	public void addResultVariant(String runName, long configId, ArrayList<Variant> vlist){
-		logger.fine("Adding batch variants, the set contains "+vlist.size()+" variants.");
-		connect();
-		StringBuilder sql = new StringBuilder("INSERT INTO ");
-		sql.append(runName);
-		sql.append(TABLEresults);
-		sql.append(" ( configId, chrom, pos, content ) VALUES ");
-		String seperator = "";
-		for(Variant v : vlist){
-			sql.append(seperator);
-			sql.append("(");
-			sql.append(configId);
-			sql.append(", '");
-			sql.append(v.getChrom());
-			sql.append("', ");
-			sql.append(v.getPos());
-			sql.append(", '");
-			sql.append(v.getContent());
-			sql.append("')");
-			seperator = ", ";
-		}
-		
-
-		int affectedRows = this.executeUpdate(sql.toString());
-		logger.fine("Added result variants, affected "+affectedRows+" rows.");
+		this.addResultVariants(runName, configId, vlist, null);
 	}
-	
+
 	/**
-	 * Same as addResultVariant, but adds all variants given in the list
+	 * Same as addResultVariant, but adds the annotated variants
 	 * @param runName The name of the current sampler run
 	 * @param configId The id of the config that created the result set
-	 * @param vlist The list of variants to be added
+	 * @param vlist The list of annotated variants to be added
 	 */
 	public void addAnnotatedResultVariant(String runName, long configId, ArrayList<String[]> vlist){
-		logger.fine("Adding batch variants, the set contains "+vlist.size()+" variants.");
-		connect();
-		StringBuilder sql = new StringBuilder("INSERT INTO ");
-		sql.append(runName);
-		sql.append(TABLEanno);
-		sql.append(" ( configId, chrom, pPos, type, trans, code, quality ) VALUES ");
-		String seperator = "";
-		for(String[] v : vlist){
-			sql.append(seperator);
-			sql.append("(");
-			sql.append(configId);
-			sql.append(", '");
-			sql.append(v[0]);
-			sql.append("', '");
-			sql.append(v[1]);
-			sql.append("', '");
-			sql.append(v[2]);
-			sql.append("', '");
-			sql.append(v[3]);
-			sql.append("', '");
-			sql.append(v[4]);
-			sql.append("', '");
-			sql.append(v[5]);
-			sql.append("')");
-			seperator = ", ";
-		}
-
-		int affectedRows = this.executeUpdate(sql.toString());
-		logger.fine("Added annotated variants, affected "+affectedRows+" rows.");
+		this.addResultVariants(runName, configId, null, vlist);
+	}
+
+	/**
+	 * Adds the variants that are not in the variant dictionary of the run yet.
+	 * Has to be called inside of a transaction.
+	 * @param con The connection of the transaction
+	 * @param runName The name of the current sampler run
+	 * @param vlist The variants
+	 */
+	private void addToDictionary(Connection con, String runName, ArrayList<Variant> vlist) throws SQLException {
+		String sql = "INSERT OR IGNORE INTO " + runName + TABLEdict + " ( chrom, pos ) VALUES (?, ?)";
+		insertRows(con, runName + TABLEdict, sql, vlist.size(), (pstmt, i) -> {
+			pstmt.setString(1, vlist.get(i).getChrom());
+			pstmt.setInt(2, vlist.get(i).getPos());
+		});
+	}
+
+	/**
+	 * Adds the variants and the annotated variants of a whole VCF file in a single transaction,
+	 * using cached prepared statements. The values are bound as parameters, so they are not escaped.
+	 * Result rows only reference the variant dictionary, the content of the VCF line is not stored.
+	 * @param runName The name of the current sampler run
+	 * @param configId The id of the config that created the result set
+	 * @param vlist The list of variants to be added, can be null
+	 * @param annotated The list of annotated variants to be added, can be null
+	 */
+	public void addResultVariants(String runName, long configId, ArrayList<Variant> vlist, ArrayList<String[]> annotated){
+		String sqlResults = "INSERT INTO " + runName + TABLEresults + " ( configId, variantId ) SELECT ?, id FROM " + runName + TABLEdict + " WHERE chrom = ? AND pos = ?";
+		String sqlAnno = "INSERT INTO " + runName + TABLEanno + " ( configId, chrom, pPos, type, trans, code, quality ) VALUES (?, ?, ?, ?, ?, ?, ?)";
+		this.executeDeferred(con -> {
+			if(vlist != null && !vlist.isEmpty()){
+				addToDictionary(con, runName, vlist);
+				insertRows(con, runName + TABLEresults, sqlResults, vlist.size(), (pstmt, i) -> {
+					Variant v = vlist.get(i);
+					pstmt.setLong(1, configId);
+					pstmt.setString(2, v.getChrom());
+					pstmt.setInt(3, v.getPos());
+				});
+			}
+			if(annotated != null && !annotated.isEmpty()){
+				insertRows(con, runName + TABLEanno, sqlAnno, annotated.size(), (pstmt, i) -> {
+					String[] v = annotated.get(i);
+					pstmt.setLong(1, configId);
+					for(int k=0; k<6; k++){
+						pstmt.setString(k+2, v[k]);
+					}
+				});
+			}
+		});
+		logger.fine("Added "+(vlist == null ? 0 : vlist.size())+" result variants and "+(annotated == null ? 0 : annotated.size())+" annotated variants.");
 	}
 	
 	/**
@@ -676,7 +1156,7 @@ public class LogDB {
 	 * @param runName The name of the current sampler run
 	 * @param reason An error code that could be helpful for debugging the workflow (for example the id of the step that failed)
 	 */
-	public void failConfiguration(long id, String runName, int reason){
+	public synchronized void failConfiguration(long id, String runName, int reason){
 		// assumes that the user gives the correct number of values in the string
 		connect();
 		StringBuilder sql = new StringBuilder("UPDATE ");
@@ -689,6 +1169,8 @@ public class LogDB {
 		logger.info("Failed configuration: "+sql.toString());
 
 		configCache.remove(id);
+		this.getLoadedScoreIndex(runName).failConfiguration(id);
+		this.getLoadedConfigTrie(runName).failConfiguration(id);
 		
 		this.executeUpdate(sql.toString());
 	}
@@ -698,7 +1180,7 @@ public class LogDB {
 	 * @param id Identifier of the configuration in the table
 	 * @param score The new score for the configuration
 	 */
-	public void updateConfiguration(long id, double score, String runName){
+	public synchronized void updateConfiguration(long id, double score, String runName){
 		// assumes that the user gives the correct number of values in the string
 		connect();
 		StringBuilder sql = new StringBuilder("UPDATE ");
@@ -710,6 +1192,43 @@ public class LogDB {
 		sql.append(id);
 		logger.info("Update configuration: "+sql.toString());
 
+		this.executeDeferred(sql.toString());
+		this.cacheScore(id, score, runName);
+	}
+
+	/**
+	 * Set the results for several configurations that completed the pipeline,
+	 * using a single transaction
+	 * @param scores The new scores by configuration id
+	 * @param runName The name of the current sampler run
+	 */
+	public synchronized void updateConfigurations(Map<Long, Double> scores, String runName){
+		if(scores.isEmpty()){
+			return;
+		}
+		String sql = "UPDATE " + runName + TABLEconfig + " SET score=?, failed=0 WHERE id=? AND failed<=0";
+		logger.info("Update "+scores.size()+" configurations.");
+		//the write might be executed later, keep a copy of the scores
+		final Map<Long, Double> update = new HashMap<>(scores);
+		this.executeDeferred(con -> {
+			PreparedStatement pstmt = getStatement(con, sql);
+			pstmt.clearBatch();
+			for(Map.Entry<Long, Double> entry : update.entrySet()){
+				pstmt.setDouble(1, entry.getValue());
+				pstmt.setLong(2, entry.getKey());
+				pstmt.addBatch();
+			}
+			pstmt.executeBatch();
+		});
+		for(Map.Entry<Long, Double> entry : scores.entrySet()){
+			this.cacheScore(entry.getKey(), entry.getValue(), runName);
+		}
+	}
+
+	/**
+	 * Updates the score range and the score index with the new score of a configuration
+	 */
+	private void cacheScore(long id, double score, String runName){
 		//set new min and max scores
 		if(score > this.scoreMax){
 			this.scoreMax = score;
@@ -717,8 +1236,18 @@ public class LogDB {
 		if(score < this.scoreMin){
 			this.scoreMin = score;
 		}
-		
-		this.executeUpdate(sql.toString());
+
+		ScoreIndex index = this.getLoadedScoreIndex(runName);
+		ConfigTrie trie = this.getLoadedConfigTrie(runName);
+		if(index.containsConfiguration(id) && trie.containsConfiguration(id)){
+			index.updateConfiguration(id, score);
+			trie.updateConfiguration(id, score);
+		}else{
+			//configuration was not loaded, e.g. added by another process. Reload on next use
+			logger.fine("Configuration "+id+" is not part of the score index, the index will be reloaded.");
+			index.invalidate();
+			trie.invalidate();
+		}
 	}
 
 	/**
@@ -743,7 +1272,7 @@ public class LogDB {
 	 * @param runName The name of the current sampler run
 	 * @return The first configuration in the result set that has a matching subset or -1 if none was found
 	 */
-	public long containsSubset(ValuePair[] subset, String runName) {
+	public synchronized long containsSubset(ValuePair[] subset, String runName) {
 		return containsSubset(subset, runName, false);
 	}
 
@@ -754,79 +1283,33 @@ public class LogDB {
 	 * @param includeFailed If true, the query will include failed configurations
 	 * @return The first configuration in the result set that has a matching subset or -1 if none was found
 	 */
-	public long containsSubset(ValuePair[] subset, String runName, boolean includeFailed) {
-		long result = -1;
-		connect();
-		StringBuilder sql = new StringBuilder("SELECT id FROM ");
-		sql.append(runName);
-		sql.append(TABLEconfig);
-		sql.append(" WHERE ");
-		//select only the subset of parameters
-		//stop one element early to deal with the AND-Problem
-		String concat = "";
-		for(int i=0; i<subset.length; i++){
-			sql.append(concat);
-			sql.append("step");
-			sql.append(i);
-			sql.append("_name=? AND step");
-			sql.append(i);
-			sql.append("_id=?");
-			concat = " AND ";
-		}
-		if(!includeFailed){
-			sql.append(" AND failed = 0");
-		}
-		sql.append(" ORDER BY score DESC LIMIT 1;");
-		logger.finest(sql.toString());
-		
-		Exception ex = null;
-		boolean finished = false;
-		for(int k=0; k<NUMBEROFRETRIES && !finished; k++){
-			try{
-				c.setAutoCommit(false);
-				PreparedStatement pstmt = c.prepareStatement(sql.toString());
-				int a = 1; // to count the position for the prepared statement
-				for(ValuePair vp : subset){
-					pstmt.setString((a++), vp.getName());
-					pstmt.setString((a++), vp.getValue());
-				}
-				ResultSet rs = pstmt.executeQuery();
-				if(rs.next()){
-					result = rs.getLong(1);
-					logger.finest("Found a matching configuration ("+result+") for cache call.");
-				}else{
-					logger.finest("Empty result for cache call, no previous configs with same subset.");
-				}
-				rs.close();
-				pstmt.close();
-				c.commit();
-				c.setAutoCommit(true);
-				finished = true;
-
-			}catch(Exception e){
-				logger.severe("Error while checking database for a subset of configurations.");
-				logger.log(Level.WARNING, sql.toString(), e);
-				ex = e;
-				try{
-					Thread.sleep(RETRYTIMEMS * (k+1));
-				}catch(InterruptedException iex){
-					logger.finest("Thread was interrupted while waiting for a retry for sql insert query.");
-				}
-			}
-		}
-		if(!finished){
-			crash(ex);
+	public synchronized long containsSubset(ValuePair[] subset, String runName, boolean includeFailed) {
+		long result = this.getLoadedConfigTrie(runName).find(subset, includeFailed);
+		if(result > 0){
+			logger.finest("Found a matching configuration ("+result+") for cache call.");
+		}else{
+			logger.finest("Empty result for cache call, no previous configs with same subset.");
 		}
-		
 		return result;
 	}
+
+	/**
+	 * Search for the longest prefix of the given configuration that has been completed before
+	 * @param config A set of {edgeGroupName, edgeId in edgegroup}
+	 * @param runName The name of the current sampler run
+	 * @return Array {id of the best completed configuration with the same prefix, index of the last step of the prefix}.
+	 * Both values are -1 if no completed configuration shares the first step.
+	 */
+	public synchronized long[] getCachedPrefix(ValuePair[] config, String runName){
+		return this.getLoadedConfigTrie(runName).getCachedPrefix(config);
+	}
 	
 	/**
 	 * Get the total number of completed configurations for the given run
 	 * @param runName The name of the current sampler run
 	 * @return The number of (not failed) configurations, or -1 if an error occurred
 	 */
-	public int getTotalNumberOfConfigurations(String runName){
+	public synchronized int getTotalNumberOfConfigurations(String runName){
 		if(configCache.size() > 0){
 			return configCache.size();
 		}
@@ -841,25 +1324,26 @@ public class LogDB {
 	 * @param runName The name of the current sampler run
 	 * @return A list containing the ids of all configurations (that are not marked as failed)
 	 */
-	public ArrayList<Long> getConfigurations(String runName){
+	public synchronized ArrayList<Long> getConfigurations(String runName){
 		if(configCache.size() > 0){
-			return configCache;
+			//return a copy, the cache is modified by other sampling threads
+			return new ArrayList<>(configCache);
 		}
+		this.flush();
 		String sql = "SELECT id FROM " + runName + TABLEconfig + " WHERE failed=0";
 		Exception ex = null;
 		boolean finished = false;
 		for(int k=0; k<NUMBEROFRETRIES && !finished; k++){
+			Connection reader = null;
 			try{
-				c.setAutoCommit(false);
-				Statement stmt = c.createStatement();
+				reader = connections.acquireReader();
+				Statement stmt = reader.createStatement();
 				ResultSet rs = stmt.executeQuery(sql);
 				while(rs.next()){
 					configCache.add(rs.getLong(1));
 				}
 				rs.close();
 				stmt.close();
-				c.commit();
-				c.setAutoCommit(true);
 				finished = true;
 
 			}catch(Exception e){
@@ -871,6 +1355,8 @@ public class LogDB {
 				}catch(InterruptedException iex){
 					logger.finest("Thread was interrupted while waiting for a retry for sql insert query.");
 				}
+			}finally{
+				connections.releaseReader(reader);
 			}
 		}
 		if(!finished){
@@ -878,102 +1364,98 @@ public class LogDB {
 		}
 
 		logger.finer("Run "+runName+" has "+configCache.size()+" completed configurations.");
-		return configCache;
+		return new ArrayList<>(configCache);
 	}
 	
 	/**
 	 * @param runName The name of the current sampler run
-	 * @param filter List of variants. The result will only contain only count values for these variants
-	 * @return Returns an array list containing the occurrences of variants in the database,
-	 * filtered to match the given variants. If the filter is empty or null, all occurrences
-	 * for all variants are returned.
+	 * @return The chromosome and position of all result variants, grouped by the id of the config that created them
 	 */
-	public ArrayList<Integer> getCommonVariantOccurrences(String runName, ArrayList<Variant> filter){
-		ArrayList<Integer> result = new ArrayList<>();
-		/* Using one sql query, get the total list of variants that are common
-		 * between the database and the variant list, as well as the score for each
-		 * unique variant
-		 */
-		StringBuilder sql = new StringBuilder("SELECT COUNT(*) FROM ");
-		sql.append(runName);
-		sql.append(TABLEresults);
-		sql.append(" result");
-
-		boolean dropTemp = false;
-		String tempName = runName+"_resulttemp";
-		if(filter != null && !filter.isEmpty()){
-			storeVariantsInTemp(tempName, filter);
-			sql.append(", ");
-			sql.append(tempName);
-			sql.append(" temp WHERE result.chrom = temp.chrom AND result.pos = temp.pos ");
-			dropTemp = true;
-		}
-		sql.append(" GROUP BY result.chrom, result.pos");
+	public Map<Long, ArrayList<Variant>> getResultVariants(String runName){
+		this.flush();
+		Map<Long, ArrayList<Variant>> result = new HashMap<>();
+		String sql = "SELECT result.configId, dict.chrom, dict.pos FROM " + runName + TABLEresults + " result, " + runName + TABLEdict + " dict WHERE dict.id = result.variantId";
 		Exception ex = null;
 		boolean finished = false;
 		for(int k=0; k<NUMBEROFRETRIES && !finished; k++){
+			Connection reader = null;
 			try{
-				c.setAutoCommit(false);
-				Statement stmt = c.createStatement();
-				ResultSet rs = stmt.executeQuery(sql.toString());
+				result.clear();
+				reader = connections.acquireReader();
+				Statement stmt = reader.createStatement();
+				ResultSet rs = stmt.executeQuery(sql);
 				while(rs.next()){
-					result.add(rs.getInt(1));
+					long configId = rs.getLong(1);
+					ArrayList<Variant> list = result.get(configId);
+					if(list == null){
+						list = new ArrayList<>();
+						result.put(configId, list);
+					}
+					// the content of the VCF line is not stored
+					list.add(new Variant(rs.getString(2), rs.getInt(3), ""));
 				}
 				rs.close();
 				stmt.close();
-				c.commit();
-				c.setAutoCommit(true);
 				finished = true;
 			}catch(Exception e){
-				logger.severe("Error while checking database for filtered variants.");
-				logger.log(Level.WARNING, sql.toString(), e);
+				logger.severe("Error while loading the result variants.");
+				logger.log(Level.WARNING, sql, e);
 				ex = e;
 				try{
 					Thread.sleep(RETRYTIMEMS * (k+1));
 				}catch(InterruptedException iex){
-					logger.finest("Thread was interrupted while waiting for a retry for sql insert query.");
+					logger.finest("Thread was interrupted while waiting for a retry for sql select query.");
 				}
+			}finally{
+				connections.releaseReader(reader);
 			}
 		}
 		if(!finished){
 			crash(ex);
 		}
-		if(filter != null && !filter.isEmpty()) {
-			logger.finer("Found " + result.size() + " variants matching the given filter with size "+filter.size());
-		}else{
-			logger.finer("Found "+result.size()+" variants in total (no filter used).");
-		}
-		if(dropTemp){
-			this.dropTemp(tempName);
-		}
-
 		return result;
 	}
 
 	/**
-	 * Calculate the sum of values of variant occurences
-	 * This means for each variant found by the config, get the number of
-	 * occurences of this variant in the result database
 	 * @param runName The name of the current sampler run
-	 * @param configId The id of the config that created the variants
-	 * @return
+	 * @return The number of variants created by each config, by config id
 	 */
-	public int getCommonVariantSumForConfig(String runName, long configId){
-		/* Calculate the sum of values of variant occurences
-		 * This means for each variant found by the config, get the number of
-		 * occurences of this variant in the result database
-		 */
-		StringBuilder sql = new StringBuilder();
-		sql.append("SELECT COUNT(*) FROM ");
-		sql.append(runName);
-		sql.append(TABLEresults);
-		sql.append(" results, (SELECT chrom, pos FROM ");
-		sql.append(runName);
-		sql.append(TABLEresults);
-		sql.append(" WHERE configId = ");
-		sql.append(configId);
-		sql.append(") temp WHERE results.chrom = temp.chrom AND results.pos = temp.pos ");
-		return this.selectInteger(sql.toString());
+	public Map<Long, Integer> getVariantCounts(String runName){
+		this.flush();
+		Map<Long, Integer> result = new HashMap<>();
+		String sql = "SELECT id, variants FROM " + runName + "_variants";
+		Exception ex = null;
+		boolean finished = false;
+		for(int k=0; k<NUMBEROFRETRIES && !finished; k++){
+			Connection reader = null;
+			try{
+				result.clear();
+				reader = connections.acquireReader();
+				Statement stmt = reader.createStatement();
+				ResultSet rs = stmt.executeQuery(sql);
+				while(rs.next()){
+					result.put(rs.getLong(1), rs.getInt(2));
+				}
+				rs.close();
+				stmt.close();
+				finished = true;
+			}catch(Exception e){
+				logger.severe("Error while loading the variant counts.");
+				logger.log(Level.WARNING, sql, e);
+				ex = e;
+				try{
+					Thread.sleep(RETRYTIMEMS * (k+1));
+				}catch(InterruptedException iex){
+					logger.finest("Thread was interrupted while waiting for a retry for sql select query.");
+				}
+			}finally{
+				connections.releaseReader(reader);
+			}
+		}
+		if(!finished){
+			crash(ex);
+		}
+		return result;
 	}
 
 	/**
@@ -988,117 +1470,48 @@ public class LogDB {
 
 	
 	/**
-	 * Get the amount of hits in the gold standard. A hit is of the given variants include one variant with chrom and pos that have
-	 * a match in the gold standard variants
+	 * Loads the whole gold standard of the run into memory
 	 * @param runName The name of the current sampler run
-	 * @param filter List of variants. The result will only contain only count values for these variants
-	 * @return Returns an array list containing the occurrences of variants in the database,
-	 * filtered to match the given variants. If the filter is empty or null, all occurrences
-	 * for all variants are returned.
-	 */
-	public int getGoldstandardHits(String runName, ArrayList<Variant> filter){
-		StringBuilder sql = new StringBuilder("SELECT COUNT(*) FROM ");
-		sql.append(runName);
-		sql.append(TABLEgold);
-		sql.append(" gold");
-		boolean dropTemp = false;
-		String tempName = runName+"_goldtemp";
-		if(filter != null && !filter.isEmpty()){
-			storeVariantsInTemp(tempName, filter);
-			sql.append(", ");
-			sql.append(tempName);
-			sql.append(" temp WHERE gold.chrom = temp.chrom AND gold.pos = temp.pos");
-			dropTemp = true;
-		}
-		int result = selectInteger(sql.toString());
-		logger.finer("Found "+result+" variants in the set (no filter).");
-		if(dropTemp){
-			this.dropTemp(tempName);
-		}
-		return result;	
-	}
-
-	/**
-	 * Drops the temporary table with the given name
-	 * @param tempName
+	 * @return The gold standard variants of the run
 	 */
-	private void dropTemp(String tempName){
-		String sql = "DROP TABLE IF EXISTS "+tempName;
-		this.executeUpdate(sql);
-		logger.fine("Table "+tempName+" was dropped..");
-	}
-	
-	/**
-	 * Creates a temporary table with the given name and the given values for chrom and pos
-	 * @param tempName The name of the table
-	 * @param variants List of variants that will be inserted into the table
-	 */
-	private void storeVariantsInTemp(String tempName, ArrayList<Variant> variants){
-		logger.fine("Storing variants to a temporary table");
-		connect();
-		//remove any previous temp tables with the same name that might exist after a crash
-		dropTemp(tempName);
-		StringBuilder tempTable = new StringBuilder("CREATE TABLE IF NOT EXISTS ");
-		tempTable.append(tempName);
-		tempTable.append(" (");
-		tempTable.append("`id` INTEGER PRIMARY KEY AUTOINCREMENT UNIQUE,");
-		tempTable.append("`name` TEXT NOT NULL UNIQUE, "); //to prevent double variants
-		tempTable.append("`chrom` TEXT NOT NULL, ");
-		tempTable.append("`pos` TEXT NOT NULL ");
-		tempTable.append(")");
-		
-		this.executeUpdate(tempTable.toString());
-		logger.fine("Table "+tempName+" created.");
-
-		StringBuilder sql = new StringBuilder("INSERT INTO ");
-		sql.append(tempName);
-		sql.append(" ( name, chrom, pos ) VALUES (?, ?, ?)");
-
+	public GoldstandardSet getGoldstandard(String runName){
+		GoldstandardSet result = new GoldstandardSet();
+		String sql = "SELECT dict.chrom, dict.pos FROM " + runName + TABLEgold + " gold, " + runName + TABLEdict + " dict WHERE dict.id = gold.variantId";
 		Exception ex = null;
 		boolean finished = false;
 		for(int k=0; k<NUMBEROFRETRIES && !finished; k++){
+			Connection reader = null;
 			try{
-				c.setAutoCommit(false);
-				for ( Variant v : variants ) {
-					PreparedStatement pstmt = c.prepareStatement(sql.toString());
-					String chrom = v.getChrom();
-					int pos = v.getPos();
-					pstmt.setString(1, chrom + "_" + pos);
-					pstmt.setString(2, chrom);
-					pstmt.setInt(3, pos);
-
-					try {
-						pstmt.executeUpdate();
-					}catch(SQLException constraint) {
-						/* error code 19 is failed constraint
-						 * this will probably be because the name is unique, meaning we tried
-						 * to add the same variant again. We ignore this */
-						if (constraint.getErrorCode() == 19 || constraint.getErrorCode() == 23) {
-							logger.fine("Constraint failed: " + constraint.getMessage());
-						} else {
-							throw new Exception(constraint.getMessage());
-						}
-					}
-					pstmt.close();
+				result = new GoldstandardSet();
+				reader = connections.acquireReader();
+				Statement stmt = reader.createStatement();
+				ResultSet rs = stmt.executeQuery(sql);
+				while(rs.next()){
+					result.add(rs.getString(1), rs.getInt(2));
 				}
-				c.commit();
-				c.setAutoCommit(true);
+				rs.close();
+				stmt.close();
 				finished = true;
-			}catch (Exception se){
-				logger.log(Level.WARNING, sql.toString(), se);
-				ex = se;
+			}catch(Exception e){
+				logger.severe("Error while loading the gold standard.");
+				logger.log(Level.WARNING, sql, e);
+				ex = e;
 				try{
 					Thread.sleep(RETRYTIMEMS * (k+1));
 				}catch(InterruptedException iex){
-					logger.finest("Thread was interrupted while waiting for a retry for sql insert query.");
+					logger.finest("Thread was interrupted while waiting for a retry for sql select query.");
 				}
+			}finally{
+				connections.releaseReader(reader);
 			}
 		}
 		if(!finished){
 			crash(ex);
 		}
+		logger.fine("Loaded "+result.size()+" gold standard variants.");
+		return result;
 	}
-	
+
 	/**
 	 * Checks if at least one variant is in the result set.
 	 * @param runName The name of the current sampler run
@@ -1129,7 +1542,7 @@ public class LogDB {
 	 * @param runName The name of the current sampler run
 	 * @param gold If true, the table to delete from is the gold table
 	 */
-	public void deleteVariants(String runName, boolean gold){
+	public synchronized void deleteVariants(String runName, boolean gold){
 		StringBuilder sql = new StringBuilder("DELETE FROM ");
 		sql.append(runName);
 		if(gold){
@@ -1152,6 +1565,7 @@ public class LogDB {
 	 * @return Array list containing tuples <EdgeGroupName, Score>, ordered by their score from lowest to highest
 	 */
 	public ArrayList<ValuePair> getEdgeGroupScores(String runName, int step, ArrayList<ValuePair> previous){
+		this.flush();
 		ArrayList<ValuePair> result = new ArrayList<>();
 		StringBuilder sql = new StringBuilder("SELECT ");
 		sql.append(searchType);
@@ -1177,9 +1591,10 @@ public class LogDB {
 		Exception ex = null;
 		boolean finished = false;
 		for(int k=0; k<NUMBEROFRETRIES && !finished; k++){
+			Connection reader = null;
 			try{
-				c.setAutoCommit(false);
-				PreparedStatement pstmt = c.prepareStatement(sql.toString());
+				reader = connections.acquireReader();
+				PreparedStatement pstmt = reader.prepareStatement(sql.toString());
 				if(previous != null && previous.size() > 0 && step > 1){
 					for(int i=0; i<step; i++){
 						pstmt.setString((2*i)+1, previous.get(i).getName());
@@ -1200,8 +1615,6 @@ public class LogDB {
 				}
 				rs.close();
 				pstmt.close();
-				c.commit();
-				c.setAutoCommit(true);
 				finished = true;
 			}catch(Exception e){
 				logger.severe("Error while checking database for edgegroup scores");
@@ -1212,6 +1625,8 @@ public class LogDB {
 				}catch(InterruptedException iex){
 					logger.finest("Thread was interrupted while waiting for a retry for sql insert query.");
 				}
+			}finally{
+				connections.releaseReader(reader);
 			}
 		}
 		if(!finished){
@@ -1232,114 +1647,150 @@ public class LogDB {
 	 * @return Returns a value pair, containing the number of elements as key and the max scoresum for these
 	 * elements as value {#Elements, Max Score}
 	 */
-	public ValuePair getScoreSumForParamRange(String runName, int step, ArrayList<ValuePair> previous, String edgeName, Parameter p, long maxValueId, double temperature, double currentScore){
-		// SELECT the avg scores for each edge for this step matching the filter criteria
-		StringBuilder sql = new StringBuilder("SELECT ");
-		sql.append(searchType);
-		sql.append("(config.score) AS m FROM ");
-		sql.append(runName);
-		sql.append(TABLEconfig);
-		sql.append(" config LEFT JOIN ");
-		sql.append(runName);
-		sql.append("_step_");
-		sql.append(edgeName);
-		sql.append(" step  ON config.step");
-		sql.append(step);
-		sql.append("_name = ? AND config.step");
-		sql.append(step);
-		sql.append("_id = step.id WHERE failed=0 AND ");
-		if(!(p instanceof StringParameter)){
-			sql.append(" CAST( ");
-		}
-		sql.append("step.");
-		sql.append(p.getName());
-		if(!(p instanceof StringParameter)){
-			sql.append(" as REAL) ");
-		}
-		sql.append(" >= ? AND ");
-		if(!(p instanceof StringParameter)){
-			sql.append(" CAST( ");
-		}
-		sql.append("step.");
-		sql.append(p.getName());
-		if(!(p instanceof StringParameter)){
-			sql.append(" as REAL) ");
-		}
-		sql.append(" <= ?");
-		if(previous != null && previous.size() > 0 && step > 1){
-			for(int i=0; i<step; i++){
-				sql.append(" AND step");
-				sql.append(i);
-				sql.append("_name = ? AND step");
-				sql.append(i);
-				sql.append("_id = ? ");
-			}
-		}
-		sql.append(" GROUP BY step.");
-		sql.append(p.getName());
-		sql.append(" ORDER BY m ASC");
+	public synchronized ValuePair getScoreSumForParamRange(String runName, int step, ArrayList<ValuePair> previous, String edgeName, Parameter p, long maxValueId, double temperature, double currentScore){
+		/* ATTENTION:
+		 * The current implementation of the sum calculation requires a "clean" database,
+		 * meaning results from previous runs are allowed, but the settings for a parameter
+		 * may not change in a way that the new settings have less possibilites than the new
+		 * or other parametervalues. This means a change for an imaginary parameter a with the
+		 * values {1,2,3} to {1,2,3,4,5,6} is allowed, whereas {1,2} order {1.5,2.5,3.5} is not
+		 * allowed
+		 */
+		double lowerArea = anne.getLowerArea(temperature, this.getScoreRange(runName), currentScore);
+		double[] result = this.getLoadedScoreIndex(runName).getScoreSumForParamRange(step, previous, edgeName, p, maxValueId, lowerArea);
+		int hits = (int)result[0];
+		double sum = result[1] * anne.getScoreModifier(temperature);
+		logger.finest("Hits: "+hits+" and sum: "+sum);
 
-		int hits = 0;
-		double sum = 0.0;
+		return new ValuePair(""+hits, sum+"");
 		
-		Exception ex = null;
-		boolean finished = false;
-		for(int k=0; k<NUMBEROFRETRIES && !finished; k++){
-			try{
-				c.setAutoCommit(false);
-				PreparedStatement pstmt = c.prepareStatement(sql.toString());
-				pstmt.setString(1, p.getName());
-				pstmt.setString(2, p.getMinValue());
-				pstmt.setString(3, p.getValue(maxValueId));
-				if(previous != null && previous.size() > 0 && step > 1){
-					for(int i=0; i<step; i++){
-						pstmt.setString(((2*i)+1)+3, previous.get(i).getName());
-						pstmt.setString(((2*i)+2)+3, previous.get(i).getValue());
-					}
-				}
+	}
 
-				/* ATTENTION:
-				 * The current implementation of the sum calculation requires a "clean" database,
-				 * meaning results from previous runs are allowed, but the settings for a parameter
-				 * may not change in a way that the new settings have less possibilites than the new
-				 * or other parametervalues. This means a change for an imaginary parameter a with the
-				 * values {1,2,3} to {1,2,3,4,5,6} is allowed, whereas {1,2} order {1.5,2.5,3.5} is not
-				 * allowed
-				 */
+	/**
+	 * @param runName The name of the current sampler run
+	 * @return The score index of the run, without loading any configurations
+	 */
+	private ScoreIndex getScoreIndex(String runName){
+		ScoreIndex index = scoreIndex.get(runName);
+		if(index == null){
+			index = new ScoreIndex();
+			scoreIndex.put(runName, index);
+		}
+		return index;
+	}
 
-				ResultSet rs = pstmt.executeQuery();
-				int position = 0;
-				while(rs.next()) {
-					hits += rs.getInt(2);
-					ValuePair vp = new ValuePair("null", rs.getString(1));
-					sum += anne.getRelativeScoreForElement(vp, temperature, this.getScoreRange(runName), currentScore);
-					position++;
-				}
-				logger.finest("Hits: "+hits+" and sum: "+sum);
+	/**
+	 * @param runName The name of the current sampler run
+	 * @return The score index of the run, containing all edges and completed configurations in the database
+	 */
+	private ScoreIndex getLoadedScoreIndex(String runName){
+		this.loadIndices(runName);
+		return this.getScoreIndex(runName);
+	}
 
-				pstmt.close();
-				c.commit();
-				c.setAutoCommit(true);
-				finished = true;
-			}catch(SQLException e){
-				logger.log(Level.WARNING, sql.toString(), e);
-				ex = e;
+	/**
+	 * @param runName The name of the current sampler run
+	 * @return The prefix tree of the run, containing all configurations in the database
+	 */
+	private ConfigTrie getLoadedConfigTrie(String runName){
+		this.loadIndices(runName);
+		return this.configTrie.get(runName);
+	}
+
+	/**
+	 * Fills the score index and the prefix tree of the run, if one of them is not loaded yet.
+	 * The score index gets the edges of all registered edge groups, both get all configurations of the run
+	 * @param runName The name of the current sampler run
+	 */
+	private void loadIndices(String runName){
+		ScoreIndex index = this.getScoreIndex(runName);
+		ConfigTrie trie = this.configTrie.get(runName);
+		if(trie == null){
+			trie = new ConfigTrie();
+			this.configTrie.put(runName, trie);
+		}
+		if(index.isLoaded() && trie.isLoaded()){
+			//kept up to date by the write paths, no need to wait for queued writes
+			return;
+		}
+		//the indices are read from the database, it has to contain all queued writes
+		this.flush();
+		index.invalidate();
+		trie.invalidate();
+		logger.fine("Loading the score index and configuration tree for run "+runName);
+		ArrayList<String> queries = new ArrayList<>();
+		for(String group : index.getGroupNames()){
+			if(index.getParameters(group).length > 0){
+				queries.add("SELECT * FROM "+runName+"_step_"+group);
+			}
+		}
+		String configQuery = "SELECT * FROM "+runName+TABLEconfig;
+		queries.add(configQuery);
+
+		for(String sql : queries){
+			Exception ex = null;
+			boolean finished = false;
+			for(int k=0; k<NUMBEROFRETRIES && !finished; k++){
+				Connection reader = null;
 				try{
-					Thread.sleep(RETRYTIMEMS * (k+1));
-				}catch(InterruptedException iex){
-					logger.finest("Thread was interrupted while waiting for a retry for sql insert query.");
+					reader = connections.acquireReader();
+					Statement stmt = reader.createStatement();
+					ResultSet rs = stmt.executeQuery(sql);
+					if(sql.equals(configQuery)){
+						ResultSetMetaData meta = rs.getMetaData();
+						//columns are id, step names and ids, score and failed
+						int steps = (meta.getColumnCount() - 3) / 2;
+						while(rs.next()){
+							ValuePair[] path = new ValuePair[steps];
+							for(int i=0; i<steps; i++){
+								path[i] = new ValuePair(rs.getString("step"+i+"_name"), String.valueOf(rs.getLong("step"+i+"_id")));
+							}
+							index.addConfiguration(rs.getLong("id"), path);
+							trie.addConfiguration(rs.getLong("id"), path);
+							//only completed configurations have a score
+							if(rs.getInt("failed") == 0){
+								index.updateConfiguration(rs.getLong("id"), rs.getDouble("score"));
+								trie.updateConfiguration(rs.getLong("id"), rs.getDouble("score"));
+							}
+						}
+					}else{
+						String group = sql.substring(sql.indexOf("_step_") + 6);
+						Parameter[] params = index.getParameters(group);
+						while(rs.next()){
+							String[] values = new String[params.length];
+							for(int i=0; i<params.length; i++){
+								values[i] = rs.getString(params[i].getName());
+							}
+							index.addEdge(group, rs.getLong("id"), values, params);
+						}
+					}
+					rs.close();
+					stmt.close();
+					finished = true;
+				}catch(Exception e){
+					logger.severe("Error while loading the score index.");
+					logger.log(Level.WARNING, sql, e);
+					ex = e;
+					index.invalidate();
+					trie.invalidate();
+					try{
+						Thread.sleep(RETRYTIMEMS * (k+1));
+					}catch(InterruptedException iex){
+						logger.finest("Thread was interrupted while waiting for a retry for sql select query.");
+					}
+				}finally{
+					connections.releaseReader(reader);
 				}
 			}
+			if(!finished){
+				crash(ex);
+			}
 		}
-		if(!finished){
-			crash(ex);
-		}
-		
-		return new ValuePair(""+hits, sum+"");
-		
+		index.setLoaded(true);
+		trie.setLoaded(true);
 	}
 
-	public double getScoreRange(String runName){
+	public synchronized double getScoreRange(String runName){
 		double range = 13.37;
 		if(this.scoreMax < 0 || this.scoreMin < 0){
 			//not loaded yet
@@ -0,0 +1,607 @@
+package logdb;
+
+/*
+		% WorkflowWalker: A Workflow Parameter Optimizer
+		%
+		% Copyright 2017 Björn Groß
+		%
+		% Licensed under the Apache License, Version 2.0 (the "License");
+		% you may not use this file except in compliance with the License.
+		% You may obtain a copy of the License at
+		%
+		%    http://www.apache.org/licenses/LICENSE-2.0
+		%
+		% Unless required by applicable law or agreed to in writing, software
+		% distributed under the License is distributed on an "AS IS" BASIS,
+		% WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+		% See the License for the specific language governing permissions and
+		% limitations under the License.
+*/
+
+import general.ExitCode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import sampler.AnnealingFunction;
+import sampler.Parameter;
+
+/**
+ * Keeps all data of the sampling runs in memory. Nothing is written to disk unless a snapshot
+ * file is given. In that case the snapshot is loaded on start and written again when the program exits.
+ * Scores and fail flags of the configurations are kept in primitive arrays, the id of a configuration
+ * is its position in these arrays plus one.
+ */
+public class MemoryStorage implements Storage {
+	private static Logger logger = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+	/** Snapshots of other versions are not read */
+	private static final int SNAPSHOTVERSION = 2;
+	private AnnealingFunction anne;
+	private Map<String, Run> runs = new LinkedHashMap<>();
+	private String snapshotFile = null;
+
+	/**
+	 * All data of one sampling run
+	 */
+	private static class Run {
+		/** Parameters of the registered edge groups */
+		Map<String, Parameter[]> groups = new HashMap<>();
+		/** Values of the edges of each edge group, the id of an edge is its position plus one */
+		Map<String, ArrayList<String[]>> edges = new HashMap<>();
+		/** Ids of the edges of each edge group, by their joined values */
+		Map<String, Map<String, Long>> edgeIds = new HashMap<>();
+		ArrayList<ValuePair[]> paths = new ArrayList<>();
+		double[] scores = new double[1024];
+		int[] failed = new int[1024];
+		long[] sampleIds = new long[1024];
+		double[] sampleScores = new double[1024];
+		int samples = 0;
+		double scoreRange = -1.0;
+		Map<Long, Integer> variantCounts = new HashMap<>();
+		Map<Long, ArrayList<Variant>> results = new HashMap<>();
+		Map<Long, ArrayList<String[]>> annotated = new HashMap<>();
+		ArrayList<Variant> gold = new ArrayList<>();
+		ScoreIndex index = new ScoreIndex();
+		ConfigTrie trie = new ConfigTrie();
+	}
+
+	public MemoryStorage(long randomSeed){
+		anne = new AnnealingFunction(randomSeed);
+	}
+
+	/**
+	 * @param randomSeed The seed of the annealing function
+	 * @param snapshotFile The file the data is loaded from, if it exists, and written to on exit
+	 */
+	public MemoryStorage(long randomSeed, String snapshotFile){
+		this(randomSeed);
+		this.snapshotFile = snapshotFile;
+		if(new File(snapshotFile).exists()){
+			this.loadSnapshot();
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread(this::close, "memory-snapshot"));
+	}
+
+	public AnnealingFunction getAnne(){
+		return this.anne;
+	}
+
+	private Run getRun(String runName){
+		Run run = runs.get(runName);
+		if(run == null){
+			run = new Run();
+			runs.put(runName, run);
+		}
+		return run;
+	}
+
+	/**
+	 * @return The run with a score index and configuration tree that contain all configurations
+	 */
+	private Run getLoadedRun(String runName){
+		Run run = getRun(runName);
+		if(run.index.isLoaded() && run.trie.isLoaded()){
+			return run;
+		}
+		run.index.invalidate();
+		run.trie.invalidate();
+		for(String group : run.index.getGroupNames()){
+			Parameter[] params = run.index.getParameters(group);
+			ArrayList<String[]> edges = run.edges.get(group);
+			if(edges != null && params.length > 0){
+				for(int i=0; i<edges.size(); i++){
+					run.index.addEdge(group, i+1, edges.get(i), params);
+				}
+			}
+		}
+		for(int i=0; i<run.paths.size(); i++){
+			long id = i+1;
+			run.index.addConfiguration(id, run.paths.get(i));
+			run.trie.addConfiguration(id, run.paths.get(i));
+			if(run.failed[i] == 0){
+				run.index.updateConfiguration(id, run.scores[i]);
+				run.trie.updateConfiguration(id, run.scores[i]);
+			}
+		}
+		run.index.setLoaded(true);
+		run.trie.setLoaded(true);
+		return run;
+	}
+
+	public synchronized void prepareRun(int stepNumber, String runName){
+		this.prepareRun(stepNumber, runName, false, false);
+	}
+
+	public synchronized void prepareRun(int stepNumber, String runName, boolean useVariants, boolean useGold){
+		getRun(runName);
+		logger.fine("In memory storage prepared for run "+runName);
+	}
+
+	public synchronized void createEdgeGroup(String runName, String edgeName, Parameter[] params){
+		Run run = getRun(runName);
+		run.groups.put(edgeName, params);
+		run.index.addEdgeGroup(edgeName, params);
+		//edges of a snapshot are indexed once the parameters are known
+		run.index.invalidate();
+	}
+
+	public synchronized long addEdge(String runName, String edgeGroupName, String[] values, Parameter[] params){
+		if(values == null || params == null || (values.length == 0 && params.length == 0)){
+			//some edges don't have parameters, return 0 for these
+			return 0;
+		}
+		Run run = getRun(runName);
+		Map<String, Long> ids = run.edgeIds.get(edgeGroupName);
+		ArrayList<String[]> edges = run.edges.get(edgeGroupName);
+		if(ids == null){
+			ids = new HashMap<>();
+			edges = new ArrayList<>();
+			run.edgeIds.put(edgeGroupName, ids);
+			run.edges.put(edgeGroupName, edges);
+		}
+		String key = String.join("\t", values);
+		Long id = ids.get(key);
+		if(id == null){
+			edges.add(values.clone());
+			id = (long)edges.size();
+			ids.put(key, id);
+			run.index.addEdge(edgeGroupName, id, values, params);
+		}
+		return id;
+	}
+
+	public synchronized long addConfiguration(ValuePair[] paramValues, String runName){
+		Run run = getLoadedRun(runName);
+		int i = run.paths.size();
+		if(i == run.scores.length){
+			run.scores = Arrays.copyOf(run.scores, i * 2);
+			run.failed = Arrays.copyOf(run.failed, i * 2);
+		}
+		run.paths.add(paramValues.clone());
+		run.scores[i] = 0.0;
+		run.failed[i] = -1;
+		long id = i+1;
+		run.index.addConfiguration(id, run.paths.get(i));
+		run.trie.addConfiguration(id, run.paths.get(i));
+		return id;
+	}
+
+	/**
+	 * @return The position of the configuration in the arrays, or -1 if it does not exist
+	 */
+	private int getPosition(Run run, long id){
+		if(id < 1 || id > run.paths.size()){
+			logger.warning("Configuration "+id+" does not exist.");
+			return -1;
+		}
+		return (int)(id-1);
+	}
+
+	public synchronized void failConfiguration(long id, String runName, int reason){
+		Run run = getLoadedRun(runName);
+		int i = getPosition(run, id);
+		if(i < 0){
+			return;
+		}
+		run.failed[i] = reason;
+		run.scoreRange = -1.0;
+		run.index.failConfiguration(id);
+		run.trie.failConfiguration(id);
+	}
+
+	public synchronized void updateConfiguration(long id, double score, String runName){
+		Run run = getLoadedRun(runName);
+		int i = getPosition(run, id);
+		if(i < 0){
+			return;
+		}
+		run.scores[i] = score;
+		run.failed[i] = 0;
+		run.scoreRange = -1.0;
+		run.index.updateConfiguration(id, score);
+		run.trie.updateConfiguration(id, score);
+	}
+
+	public synchronized void updateConfigurations(Map<Long, Double> scores, String runName){
+		Run run = getRun(runName);
+		for(Map.Entry<Long, Double> entry : scores.entrySet()){
+			int i = getPosition(run, entry.getKey());
+			//same as the database, failed configurations keep their state
+			if(i >= 0 && run.failed[i] <= 0){
+				this.updateConfiguration(entry.getKey(), entry.getValue(), runName);
+			}
+		}
+	}
+
+	public synchronized double getScoreForConfig(String runName, long configId){
+		Run run = getRun(runName);
+		if(configId < 1 || configId > run.paths.size() || run.failed[(int)configId-1] != 0){
+			return -1.0;
+		}
+		return run.scores[(int)configId-1];
+	}
+
+	public synchronized double getScoreRange(String runName){
+		Run run = getRun(runName);
+		if(run.scoreRange < 0){
+			double min = Double.MAX_VALUE;
+			double max = -Double.MAX_VALUE;
+			for(int i=0; i<run.paths.size(); i++){
+				if(run.failed[i] == 0){
+					min = Math.min(min, run.scores[i]);
+					max = Math.max(max, run.scores[i]);
+				}
+			}
+			if(min > max){
+				//no scores yet, same default as the database
+				return 13.37;
+			}
+			run.scoreRange = max - min;
+		}
+		return run.scoreRange;
+	}
+
+	public synchronized void addSample(String runName, long configId, double score){
+		Run run = getRun(runName);
+		if(run.samples == run.sampleIds.length){
+			run.sampleIds = Arrays.copyOf(run.sampleIds, run.samples * 2);
+			run.sampleScores = Arrays.copyOf(run.sampleScores, run.samples * 2);
+		}
+		run.sampleIds[run.samples] = configId;
+		run.sampleScores[run.samples] = score;
+		run.samples++;
+	}
+
+	public synchronized long containsSubset(ValuePair[] subset, String runName, boolean includeFailed){
+		return getLoadedRun(runName).trie.find(subset, includeFailed);
+	}
+
+	public synchronized long[] getCachedPrefix(ValuePair[] config, String runName){
+		return getLoadedRun(runName).trie.getCachedPrefix(config);
+	}
+
+	public synchronized ArrayList<ValuePair> getEdgeGroupScores(String runName, int step, ArrayList<ValuePair> previous){
+		Run run = getRun(runName);
+		boolean filter = previous != null && previous.size() > 0 && step > 1;
+		Map<String, Double> best = new HashMap<>();
+		paths:for(int i=0; i<run.paths.size(); i++){
+			if(run.failed[i] != 0){
+				continue;
+			}
+			ValuePair[] path = run.paths.get(i);
+			if(filter){
+				for(int k=0; k<step; k++){
+					if(!path[k].getName().equals(previous.get(k).getName()) || !path[k].getValue().equals(previous.get(k).getValue())){
+						continue paths;
+					}
+				}
+			}
+			String group = path[step].getName();
+			Double score = best.get(group);
+			if(score == null || run.scores[i] > score){
+				best.put(group, run.scores[i]);
+			}
+		}
+		ArrayList<ValuePair> result = new ArrayList<>();
+		for(Map.Entry<String, Double> entry : best.entrySet()){
+			if(entry.getValue() > 0){
+				result.add(new ValuePair(entry.getKey(), String.valueOf(entry.getValue())));
+			}
+		}
+		Collections.sort(result, (a, b) -> Double.compare(Double.parseDouble(a.getValue()), Double.parseDouble(b.getValue())));
+		return result;
+	}
+
+	public synchronized ValuePair getScoreSumForParamRange(String runName, int step, ArrayList<ValuePair> previous, String edgeName, Parameter p, long maxValueId, double temperature, double currentScore){
+		double lowerArea = anne.getLowerArea(temperature, this.getScoreRange(runName), currentScore);
+		double[] result = getLoadedRun(runName).index.getScoreSumForParamRange(step, previous, edgeName, p, maxValueId, lowerArea);
+		int hits = (int)result[0];
+		double sum = result[1] * anne.getScoreModifier(temperature);
+		return new ValuePair(""+hits, sum+"");
+	}
+
+	public synchronized void addVariantCount(String runName, long configId, int variantCounter){
+		getRun(runName).variantCounts.put(configId, variantCounter);
+	}
+
+	public synchronized void addResultVariants(String runName, long configId, ArrayList<Variant> vlist, ArrayList<String[]> annotated){
+		Run run = getRun(runName);
+		if(vlist != null){
+			run.results.computeIfAbsent(configId, k -> new ArrayList<>()).addAll(vlist);
+		}
+		if(annotated != null){
+			run.annotated.computeIfAbsent(configId, k -> new ArrayList<>()).addAll(annotated);
+		}
+	}
+
+	public synchronized void addGoldVariant(String runName, ArrayList<Variant> vlist){
+		getRun(runName).gold.addAll(vlist);
+	}
+
+	public synchronized Map<Long, ArrayList<Variant>> getResultVariants(String runName){
+		Map<Long, ArrayList<Variant>> result = new HashMap<>();
+		for(Map.Entry<Long, ArrayList<Variant>> entry : getRun(runName).results.entrySet()){
+			result.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+		}
+		return result;
+	}
+
+	public synchronized Map<Long, Integer> getVariantCounts(String runName){
+		return new HashMap<>(getRun(runName).variantCounts);
+	}
+
+	public synchronized GoldstandardSet getGoldstandard(String runName){
+		GoldstandardSet result = new GoldstandardSet();
+		for(Variant v : getRun(runName).gold){
+			result.add(v.getChrom(), v.getPos());
+		}
+		return result;
+	}
+
+	public synchronized boolean hasVariants(String runName, boolean gold){
+		Run run = getRun(runName);
+		return gold ? !run.gold.isEmpty() : !run.results.isEmpty();
+	}
+
+	public synchronized void deleteVariants(String runName, boolean gold){
+		Run run = getRun(runName);
+		if(gold){
+			run.gold.clear();
+		}else{
+			run.results.clear();
+			run.annotated.clear();
+		}
+	}
+
+	public void flush(){
+		//nothing is pending
+	}
+
+	/**
+	 * Writes the snapshot, if a snapshot file is set
+	 */
+	public synchronized void close(){
+		if(snapshotFile != null){
+			this.writeSnapshot();
+		}
+	}
+
+	public synchronized String getInsertStatistics(){
+		StringBuilder result = new StringBuilder("In memory storage:");
+		for(Map.Entry<String, Run> e : runs.entrySet()){
+			long variants = 0;
+			for(ArrayList<Variant> list : e.getValue().results.values()){
+				variants += list.size();
+			}
+			result.append("\n\t");
+			result.append(e.getKey());
+			result.append(": ");
+			result.append(e.getValue().paths.size());
+			result.append(" configurations, ");
+			result.append(e.getValue().samples);
+			result.append(" samples, ");
+			result.append(variants);
+			result.append(" result variants");
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Writes all runs to the snapshot file. The file is replaced only after the new snapshot is complete.
+	 */
+	private void writeSnapshot(){
+		File target = new File(snapshotFile);
+		File temp = new File(snapshotFile + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+			out.writeInt(SNAPSHOTVERSION);
+			out.writeInt(runs.size());
+			for(Map.Entry<String, Run> e : runs.entrySet()){
+				Run run = e.getValue();
+				out.writeUTF(e.getKey());
+				out.writeInt(run.edges.size());
+				for(Map.Entry<String, ArrayList<String[]>> group : run.edges.entrySet()){
+					out.writeUTF(group.getKey());
+					out.writeInt(group.getValue().size());
+					for(String[] values : group.getValue()){
+						writeStrings(out, values);
+					}
+				}
+				out.writeInt(run.paths.size());
+				for(int i=0; i<run.paths.size(); i++){
+					ValuePair[] path = run.paths.get(i);
+					out.writeInt(path.length);
+					for(ValuePair vp : path){
+						out.writeUTF(vp.getName());
+						out.writeUTF(vp.getValue());
+					}
+					out.writeDouble(run.scores[i]);
+					out.writeInt(run.failed[i]);
+				}
+				out.writeInt(run.samples);
+				for(int i=0; i<run.samples; i++){
+					out.writeLong(run.sampleIds[i]);
+					out.writeDouble(run.sampleScores[i]);
+				}
+				out.writeInt(run.variantCounts.size());
+				for(Map.Entry<Long, Integer> count : run.variantCounts.entrySet()){
+					out.writeLong(count.getKey());
+					out.writeInt(count.getValue());
+				}
+				out.writeInt(run.results.size());
+				for(Map.Entry<Long, ArrayList<Variant>> result : run.results.entrySet()){
+					out.writeLong(result.getKey());
+					writeVariants(out, result.getValue());
+				}
+				out.writeInt(run.annotated.size());
+				for(Map.Entry<Long, ArrayList<String[]>> result : run.annotated.entrySet()){
+					out.writeLong(result.getKey());
+					out.writeInt(result.getValue().size());
+					for(String[] values : result.getValue()){
+						writeStrings(out, values);
+					}
+				}
+				writeVariants(out, run.gold);
+			}
+		}catch(IOException ioe){
+			logger.log(Level.SEVERE, "Error while writing the snapshot "+snapshotFile, ioe);
+			return;
+		}
+		if(!temp.renameTo(target)){
+			logger.severe("Could not replace the snapshot "+snapshotFile+" with "+temp.getPath());
+			return;
+		}
+		logger.info("Wrote snapshot of the in memory storage to "+snapshotFile);
+	}
+
+	private void loadSnapshot(){
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+			int version = in.readInt();
+			if(version != SNAPSHOTVERSION){
+				throw new IOException("Unknown snapshot version "+version);
+			}
+			int runCount = in.readInt();
+			for(int r=0; r<runCount; r++){
+				Run run = getRun(in.readUTF());
+				int groups = in.readInt();
+				for(int g=0; g<groups; g++){
+					String group = in.readUTF();
+					ArrayList<String[]> edges = new ArrayList<>();
+					Map<String, Long> ids = new HashMap<>();
+					int edgeCount = in.readInt();
+					for(int i=0; i<edgeCount; i++){
+						String[] values = readStrings(in);
+						edges.add(values);
+						ids.put(String.join("\t", values), (long)edges.size());
+					}
+					run.edges.put(group, edges);
+					run.edgeIds.put(group, ids);
+				}
+				int configs = in.readInt();
+				run.scores = new double[Math.max(1024, configs)];
+				run.failed = new int[Math.max(1024, configs)];
+				for(int i=0; i<configs; i++){
+					ValuePair[] path = new ValuePair[in.readInt()];
+					for(int k=0; k<path.length; k++){
+						path[k] = new ValuePair(in.readUTF(), in.readUTF());
+					}
+					run.paths.add(path);
+					run.scores[i] = in.readDouble();
+					run.failed[i] = in.readInt();
+				}
+				run.samples = in.readInt();
+				run.sampleIds = new long[Math.max(1024, run.samples)];
+				run.sampleScores = new double[Math.max(1024, run.samples)];
+				for(int i=0; i<run.samples; i++){
+					run.sampleIds[i] = in.readLong();
+					run.sampleScores[i] = in.readDouble();
+				}
+				int counts = in.readInt();
+				for(int i=0; i<counts; i++){
+					run.variantCounts.put(in.readLong(), in.readInt());
+				}
+				int results = in.readInt();
+				for(int i=0; i<results; i++){
+					run.results.put(in.readLong(), readVariants(in));
+				}
+				int annotated = in.readInt();
+				for(int i=0; i<annotated; i++){
+					long configId = in.readLong();
+					ArrayList<String[]> list = new ArrayList<>();
+					int size = in.readInt();
+					for(int k=0; k<size; k++){
+						list.add(readStrings(in));
+					}
+					run.annotated.put(configId, list);
+				}
+				run.gold = readVariants(in);
+			}
+		}catch(IOException ioe){
+			logger.log(Level.SEVERE, "Error while loading the snapshot "+snapshotFile, ioe);
+			System.exit(ExitCode.INPUTERROR);
+		}
+		logger.info("Loaded snapshot "+snapshotFile+" with "+runs.size()+" runs.");
+	}
+
+	private static void writeStrings(DataOutputStream out, String[] values) throws IOException {
+		out.writeInt(values.length);
+		for(String v : values){
+			out.writeUTF(v);
+		}
+	}
+
+	private static String[] readStrings(DataInputStream in) throws IOException {
+		String[] values = new String[in.readInt()];
+		for(int i=0; i<values.length; i++){
+			values[i] = in.readUTF();
+		}
+		return values;
+	}
+
+	private static void writeVariants(DataOutputStream out, ArrayList<Variant> variants) throws IOException {
+		out.writeInt(variants.size());
+		for(Variant v : variants){
+			out.writeUTF(v.getChrom());
+			out.writeInt(v.getPos());
+			//writeUTF is limited to 64 KB, the rest of a VCF line can be longer
+			writeLongString(out, v.getContent());
+		}
+	}
+
+	private static ArrayList<Variant> readVariants(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		ArrayList<Variant> variants = new ArrayList<>(size);
+		for(int i=0; i<size; i++){
+			String chrom = in.readUTF();
+			int pos = in.readInt();
+			variants.add(new Variant(chrom, pos, readLongString(in)));
+		}
+		return variants;
+	}
+
+	private static void writeLongString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readLongString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
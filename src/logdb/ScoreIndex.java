@@ -0,0 +1,433 @@
+package logdb;
+
+/*
+		% WorkflowWalker: A Workflow Parameter Optimizer
+		%
+		% Copyright 2017 Björn Groß
+		%
+		% Licensed under the Apache License, Version 2.0 (the "License");
+		% you may not use this file except in compliance with the License.
+		% You may obtain a copy of the License at
+		%
+		%    http://www.apache.org/licenses/LICENSE-2.0
+		%
+		% Unless required by applicable law or agreed to in writing, software
+		% distributed under the License is distributed on an "AS IS" BASIS,
+		% WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+		% See the License for the specific language governing permissions and
+		% limitations under the License.
+*/
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import sampler.Parameter;
+
+/**
+ * In memory index of the completed configurations of one run, used to answer the
+ * parameter range queries of the edge selection without a database round trip.
+ * For every combination of step, edge group, parameter (and the previous decisions,
+ * if the step is filtered by them) the maximum score of each visited parameter value
+ * is kept in a prefix sum tree over the value ids.
+ * The indices filtered by previous decisions are only kept for the most recently used paths,
+ * the matching configurations of a new one are found by a tree of all known paths.
+ */
+public class ScoreIndex {
+	private static Logger logger = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+	private static final int MAXFILTEREDINDICES = 4096; //number of path filtered indices kept in memory
+	private boolean loaded = false;
+	/** Parameters of each edge group */
+	private Map<String, Parameter[]> groups = new HashMap<>();
+	/** Value ids of the parameters for each edge of each edge group */
+	private Map<String, Map<Long, int[]>> edges = new HashMap<>();
+	/** Path {edgeGroupName, edgeId} of each known configuration */
+	private Map<Long, ValuePair[]> configs = new LinkedHashMap<>();
+	/** Score of each completed configuration */
+	private Map<Long, Double> scores = new HashMap<>();
+	/** Indices of all configurations, one for each step, edge group and parameter */
+	private Map<String, ParamIndex> indices = new HashMap<>();
+	/** Indices filtered by the previous decisions, least recently used ones are dropped */
+	private Map<String, ParamIndex> filteredIndices = new LinkedHashMap<String, ParamIndex>(16, 0.75f, true){
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, ParamIndex> eldest){
+			return this.size() > MAXFILTEREDINDICES;
+		}
+	};
+	/** Tree of the paths of all known configurations */
+	private PathNode paths = new PathNode();
+
+	public boolean isLoaded(){
+		return this.loaded;
+	}
+
+	public void setLoaded(boolean loaded){
+		this.loaded = loaded;
+	}
+
+	/**
+	 * Removes all configurations and range indices, the edge groups stay registered
+	 */
+	public void invalidate(){
+		this.configs.clear();
+		this.scores.clear();
+		this.indices.clear();
+		this.filteredIndices.clear();
+		this.paths = new PathNode();
+		this.loaded = false;
+	}
+
+	/**
+	 * @return The names of all registered edge groups
+	 */
+	public String[] getGroupNames(){
+		return this.groups.keySet().toArray(new String[this.groups.size()]);
+	}
+
+	public Parameter[] getParameters(String edgeGroupName){
+		return this.groups.get(edgeGroupName);
+	}
+
+	/**
+	 * @param edgeGroupName The name of the edge group
+	 * @param params The parameters of the edge group, in the order of the edge values
+	 */
+	public void addEdgeGroup(String edgeGroupName, Parameter[] params){
+		this.groups.put(edgeGroupName, (params == null) ? new Parameter[]{} : params);
+	}
+
+	/**
+	 * Saves the value ids for the parameter values of the given edge
+	 * @param edgeGroupName The name of the edge group
+	 * @param edgeId The id of the edge in the edge group table
+	 * @param values The values of the parameters
+	 * @param params The parameters the values belong to
+	 */
+	public void addEdge(String edgeGroupName, long edgeId, String[] values, Parameter[] params){
+		int[] ids = new int[params.length];
+		for(int i=0; i<params.length; i++){
+			ids[i] = (int)params[i].getIdForValue(values[i]);
+		}
+		Map<Long, int[]> groupEdges = this.edges.get(edgeGroupName);
+		if(groupEdges == null){
+			groupEdges = new HashMap<>();
+			this.edges.put(edgeGroupName, groupEdges);
+		}
+		groupEdges.put(edgeId, ids);
+	}
+
+	/**
+	 * @param configId The id of the configuration
+	 * @param path A pair array of the used edges with elements {edgeGroupName, edgeId}
+	 */
+	public void addConfiguration(long configId, ValuePair[] path){
+		if(this.configs.put(configId, path) != null){
+			//the path of a configuration never changes
+			return;
+		}
+		PathNode node = this.paths;
+		for(int i=0; i<path.length; i++){
+			node = node.getChild(path[i], true);
+		}
+		node.configIds.add(configId);
+	}
+
+	/**
+	 * @return True if the configuration is known to the index
+	 */
+	public boolean containsConfiguration(long configId){
+		return this.configs.containsKey(configId);
+	}
+
+	/**
+	 * Sets the score of a completed configuration and updates all range indices
+	 * the configuration is part of
+	 * @param configId The id of the configuration
+	 * @param score The new score
+	 */
+	public void updateConfiguration(long configId, double score){
+		this.scores.put(configId, score);
+		this.forEachIndex(configId, score, false);
+	}
+
+	/**
+	 * Removes the score of the configuration from all range indices
+	 * @param configId The id of the configuration
+	 */
+	public void failConfiguration(long configId){
+		if(this.scores.remove(configId) != null){
+			this.forEachIndex(configId, 0.0, true);
+		}
+	}
+
+	private void forEachIndex(long configId, double score, boolean remove){
+		ValuePair[] path = this.configs.get(configId);
+		if(path == null){
+			return;
+		}
+		for(int step=0; step<path.length; step++){
+			String group = path[step].getName();
+			Parameter[] params = this.groups.get(group);
+			int[] valueIds = this.getValueIds(group, path[step].getValue());
+			if(params == null || valueIds == null){
+				continue;
+			}
+			for(int p=0; p<params.length; p++){
+				if(valueIds[p] < 0){
+					continue;
+				}
+				//the configuration is part of the filtered and the unfiltered index
+				ParamIndex[] found = {this.indices.get(getKey(step, null, group, params[p])), null};
+				if(step > 1){
+					found[1] = this.filteredIndices.get(getKey(step, path, group, params[p]));
+				}
+				for(ParamIndex index : found){
+					if(index == null){
+						continue;
+					}
+					if(remove){
+						index.remove(valueIds[p], configId);
+					}else{
+						index.update(valueIds[p], configId, score);
+					}
+				}
+			}
+		}
+	}
+
+	private int[] getValueIds(String edgeGroupName, String edgeId){
+		Map<Long, int[]> groupEdges = this.edges.get(edgeGroupName);
+		if(groupEdges == null){
+			return null;
+		}
+		return groupEdges.get(Long.parseLong(edgeId));
+	}
+
+	/**
+	 * Builds the key of a range index. The previous decisions are only part of the key
+	 * for steps after the second one, the same way the database query filtered them.
+	 * @param path The previous decisions or null if the index is not filtered by them
+	 */
+	private static String getKey(int step, ValuePair[] path, String edgeGroupName, Parameter p){
+		StringBuilder key = new StringBuilder();
+		key.append(step);
+		key.append("|");
+		key.append(edgeGroupName);
+		key.append("|");
+		key.append(p.getName());
+		if(step > 1 && path != null){
+			for(int i=0; i<step; i++){
+				key.append("|");
+				key.append(path[i].getName());
+				key.append(":");
+				key.append(path[i].getValue());
+			}
+		}
+		return key.toString();
+	}
+
+	/**
+	 * @param step The id of the step
+	 * @param previous A list of value pairs containing all decisions previously made for the current path {edgeGroup, edgeId}
+	 * @param edgeName The name of the edgegroup
+	 * @param p The parameter object to run the query for
+	 * @param maxValueId The id of the parameter value up to which the edges are considered
+	 * @param lowerArea Maximum scores at or below this value are not added to the sum
+	 * @return Array {number of visited values, sum of the maximum scores above the lower area}
+	 */
+	public double[] getScoreSumForParamRange(int step, ArrayList<ValuePair> previous, String edgeName, Parameter p, long maxValueId, double lowerArea){
+		ValuePair[] path = null;
+		if(previous != null && previous.size() > 0 && step > 1){
+			path = previous.toArray(new ValuePair[previous.size()]);
+		}
+		Map<String, ParamIndex> map = (path == null) ? this.indices : this.filteredIndices;
+		String key = getKey(step, path, edgeName, p);
+		ParamIndex index = map.get(key);
+		if(index == null){
+			index = this.createIndex(step, path, edgeName, p);
+			map.put(key, index);
+		}
+		return new double[]{index.getVisited(maxValueId), index.getSum(maxValueId, lowerArea)};
+	}
+
+	/**
+	 * Creates a new range index and fills it with all matching completed configurations.
+	 * A filtered index only visits the configurations below its path.
+	 */
+	private ParamIndex createIndex(int step, ValuePair[] path, String edgeName, Parameter p){
+		ParamIndex index = new ParamIndex(p.getNumberOfPossibilities());
+		Parameter[] params = this.groups.get(edgeName);
+		int paramPosition = -1;
+		for(int i=0; params != null && i<params.length; i++){
+			if(params[i].getName().equals(p.getName())){
+				paramPosition = i;
+			}
+		}
+		if(paramPosition < 0){
+			logger.warning("Parameter "+p.getName()+" is not registered for edge group "+edgeName+", the score index stays empty.");
+			return index;
+		}
+		Iterable<Long> candidates = this.scores.keySet();
+		if(path != null){
+			PathNode node = this.paths;
+			for(int i=0; i<step && node != null; i++){
+				node = node.getChild(path[i], false);
+			}
+			List<Long> below = new ArrayList<>();
+			if(node != null){
+				node.collect(below);
+			}
+			candidates = below;
+		}
+		for(long configId : candidates){
+			Double score = this.scores.get(configId);
+			ValuePair[] config = this.configs.get(configId);
+			if(score == null || config == null || config.length <= step || !config[step].getName().equals(edgeName)){
+				continue;
+			}
+			int[] valueIds = this.getValueIds(edgeName, config[step].getValue());
+			if(valueIds != null && valueIds[paramPosition] >= 0){
+				index.update(valueIds[paramPosition], configId, score);
+			}
+		}
+		logger.finest("Created score index for step "+step+", parameter "+p.getName()+" of "+edgeName);
+		return index;
+	}
+
+	/**
+	 * Node of the path tree, the configurations are stored at the node of their last decision
+	 */
+	private static class PathNode {
+		private Map<String, PathNode> children = null;
+		private List<Long> configIds = new ArrayList<>(1);
+
+		PathNode getChild(ValuePair decision, boolean create){
+			String key = decision.getName()+":"+decision.getValue();
+			PathNode child = (children == null) ? null : children.get(key);
+			if(child == null && create){
+				if(children == null){
+					children = new HashMap<>();
+				}
+				child = new PathNode();
+				children.put(key, child);
+			}
+			return child;
+		}
+
+		void collect(List<Long> ids){
+			ids.addAll(configIds);
+			if(children != null){
+				for(PathNode child : children.values()){
+					child.collect(ids);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Range index for a single parameter. Keeps the maximum score of each value id, the number of
+	 * visited value ids and the sum of maximum scores above the last requested lower area.
+	 */
+	private static class ParamIndex {
+		private ArrayList<Map<Long, Double>> valueScores;
+		private double[] max;
+		private FenwickTree visited;
+		private FenwickTree sums;
+		private double lowerArea = Double.NaN;
+
+		ParamIndex(int size){
+			this.valueScores = new ArrayList<>(size);
+			for(int i=0; i<size; i++){
+				this.valueScores.add(null);
+			}
+			this.max = new double[size];
+			this.visited = new FenwickTree(size);
+			this.sums = new FenwickTree(size);
+		}
+
+		void update(int valueId, long configId, double score){
+			if(valueId >= max.length){
+				return;
+			}
+			Map<Long, Double> s = valueScores.get(valueId);
+			if(s == null){
+				s = new HashMap<>();
+				valueScores.set(valueId, s);
+				visited.add(valueId, 1);
+				s.put(configId, score);
+				setMax(valueId, score, true);
+				return;
+			}
+			Double old = s.put(configId, score);
+			if(score >= max[valueId]){
+				setMax(valueId, score, false);
+			}else if(old != null && old >= max[valueId]){
+				//the old maximum might have been decreased
+				setMax(valueId, getMax(s), false);
+			}
+		}
+
+		void remove(int valueId, long configId){
+			if(valueId >= max.length){
+				return;
+			}
+			Map<Long, Double> s = valueScores.get(valueId);
+			if(s == null || s.remove(configId) == null){
+				return;
+			}
+			if(s.isEmpty()){
+				valueScores.set(valueId, null);
+				visited.add(valueId, -1);
+				if(!Double.isNaN(lowerArea)){
+					sums.add(valueId, -contribution(max[valueId]));
+				}
+				max[valueId] = 0.0;
+			}else{
+				setMax(valueId, getMax(s), false);
+			}
+		}
+
+		private static double getMax(Map<Long, Double> s){
+			double m = Double.NEGATIVE_INFINITY;
+			for(double d : s.values()){
+				m = Math.max(m, d);
+			}
+			return m;
+		}
+
+		private void setMax(int valueId, double value, boolean isNew){
+			if(!Double.isNaN(lowerArea)){
+				double delta = contribution(value) - (isNew ? 0.0 : contribution(max[valueId]));
+				sums.add(valueId, delta);
+			}
+			max[valueId] = value;
+		}
+
+		private double contribution(double score){
+			return (score <= lowerArea) ? 0.0 : score;
+		}
+
+		int getVisited(long maxValueId){
+			return (int)Math.round(visited.prefixSum(maxValueId));
+		}
+
+		double getSum(long maxValueId, double lower){
+			if(Double.compare(lower, lowerArea) != 0){
+				//the lower area changed, rebuild the sums for the new value
+				lowerArea = lower;
+				sums.clear();
+				for(int i=0; i<max.length; i++){
+					if(valueScores.get(i) != null){
+						sums.add(i, contribution(max[i]));
+					}
+				}
+			}
+			return sums.prefixSum(maxValueId);
+		}
+	}
+}
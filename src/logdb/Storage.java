@@ -0,0 +1,229 @@
+package logdb;
+
+/*
+		% WorkflowWalker: A Workflow Parameter Optimizer
+		%
+		% Copyright 2017 Björn Groß
+		%
+		% Licensed under the Apache License, Version 2.0 (the "License");
+		% you may not use this file except in compliance with the License.
+		% You may obtain a copy of the License at
+		%
+		%    http://www.apache.org/licenses/LICENSE-2.0
+		%
+		% Unless required by applicable law or agreed to in writing, software
+		% distributed under the License is distributed on an "AS IS" BASIS,
+		% WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+		% See the License for the specific language governing permissions and
+		% limitations under the License.
+*/
+
+import java.util.ArrayList;
+import java.util.Map;
+
+import sampler.AnnealingFunction;
+import sampler.Parameter;
+
+/**
+ * Storage of the configurations, edges, samples, variants and scores of the sampling runs.
+ * The sampler and the walkers only use this interface. LogDB stores everything in a SQLite
+ * database, MemoryStorage keeps everything in memory.
+ */
+public interface Storage {
+
+	/**
+	 * @return The annealing function, initialized with the seed of the run
+	 */
+	AnnealingFunction getAnne();
+
+	/**
+	 * Prepare the storage for a run
+	 * @param stepNumber The number of steps in the path
+	 * @param runName The name of the current sampler run
+	 */
+	void prepareRun(int stepNumber, String runName);
+
+	/**
+	 * Prepare the storage for a run
+	 * @param stepNumber The number of steps in the path
+	 * @param runName The name of the current sampler run
+	 * @param useVariants Indicates if variants are stored
+	 * @param useGold Indicates if a gold standard is stored
+	 */
+	void prepareRun(int stepNumber, String runName, boolean useVariants, boolean useGold);
+
+	/**
+	 * Registers an edge group and its parameters
+	 * @param runName The name of the current sampler run
+	 * @param edgeName The name of the edgeGroup
+	 * @param params The parameters of the edge group
+	 */
+	void createEdgeGroup(String runName, String edgeName, Parameter[] params);
+
+	/**
+	 * Adds an edge if it does not exist yet
+	 * @param runName The name of the current sampler run
+	 * @param edgeGroupName The name of the edgeGroup
+	 * @param values The values of the parameters
+	 * @param params The parameters of the edge group
+	 * @return The id of the edge, 0 for edges without parameters
+	 */
+	long addEdge(String runName, String edgeGroupName, String[] values, Parameter[] params);
+
+	/**
+	 * @param paramValues A pair array of the used parameters with elements {edgeGroupName, edgeId}
+	 * @param runName The name of the current sampling process
+	 * @return The id of the new configuration
+	 */
+	long addConfiguration(ValuePair[] paramValues, String runName);
+
+	/**
+	 * Marks the configuration as failed
+	 * @param id The id of the configuration that failed
+	 * @param runName The name of the current sampler run
+	 * @param reason An error code, for example the step that failed
+	 */
+	void failConfiguration(long id, String runName, int reason);
+
+	/**
+	 * Sets the score of a configuration that completed the workflow
+	 * @param id The id of the configuration
+	 * @param score The new score for the configuration
+	 * @param runName The name of the current sampler run
+	 */
+	void updateConfiguration(long id, double score, String runName);
+
+	/**
+	 * Sets the scores of several completed configurations at once
+	 * @param scores The new scores by configuration id
+	 * @param runName The name of the current sampler run
+	 */
+	void updateConfigurations(Map<Long, Double> scores, String runName);
+
+	/**
+	 * @param runName The name of the current sampler run
+	 * @param configId The id of the configuration
+	 * @return The score of the configuration or '-1' if it failed or has no score
+	 */
+	double getScoreForConfig(String runName, long configId);
+
+	/**
+	 * @param runName The name of the current sampler run
+	 * @return The difference between the highest and the lowest score
+	 */
+	double getScoreRange(String runName);
+
+	/**
+	 * Logs the score of a sample
+	 * @param runName The name of the current sampler run
+	 * @param configId The id of the sampled configuration
+	 * @param score The score that was accepted
+	 */
+	void addSample(String runName, long configId, double score);
+
+	/**
+	 * Search for a configuration that has the same edges as the given subset
+	 * @param subset A set of {edgeGroupName, edgeId in edgegroup}
+	 * @param runName The name of the current sampler run
+	 * @param includeFailed If true, failed and running configurations match as well
+	 * @return The id of a matching configuration, or a value <= 0 if none exists
+	 */
+	long containsSubset(ValuePair[] subset, String runName, boolean includeFailed);
+
+	/**
+	 * @param config A set of {edgeGroupName, edgeId in edgegroup}
+	 * @param runName The name of the current sampler run
+	 * @return Array {id of the best completed configuration with the longest common prefix, index of the last step of the prefix}
+	 */
+	long[] getCachedPrefix(ValuePair[] config, String runName);
+
+	/**
+	 * @param runName The name of the current sampler run
+	 * @param step The id of the step
+	 * @param previous The decisions previously made for the current path {edgeGroup, edgeId}
+	 * @return The best score of each edge group of the step {edgeGroup, score}
+	 */
+	ArrayList<ValuePair> getEdgeGroupScores(String runName, int step, ArrayList<ValuePair> previous);
+
+	/**
+	 * @param runName The name of the current sampler run
+	 * @param step The id of the step
+	 * @param previous The decisions previously made for the current path {edgeGroup, edgeId}
+	 * @param edgeName The name of the edgegroup
+	 * @param p The parameter
+	 * @param maxValueId The id of the parameter value up to which the edges are considered
+	 * @param temperature The current temperature
+	 * @param currentScore The score of the current sample
+	 * @return {#Elements, score sum}
+	 */
+	ValuePair getScoreSumForParamRange(String runName, int step, ArrayList<ValuePair> previous, String edgeName, Parameter p, long maxValueId, double temperature, double currentScore);
+
+	/**
+	 * Stores the number of variants found by a configuration
+	 * @param runName The name of the current sampler run
+	 * @param configId The id of the configuration
+	 * @param variantCounter The number of variants
+	 */
+	void addVariantCount(String runName, long configId, int variantCounter);
+
+	/**
+	 * Stores the variants of a whole VCF file. The lists must not be changed afterwards.
+	 * @param runName The name of the current sampler run
+	 * @param configId The id of the configuration
+	 * @param vlist The variants, can be null
+	 * @param annotated The annotated variants, can be null
+	 */
+	void addResultVariants(String runName, long configId, ArrayList<Variant> vlist, ArrayList<String[]> annotated);
+
+	/**
+	 * @param runName The name of the current sampler run
+	 * @param vlist The variants of the gold standard
+	 */
+	void addGoldVariant(String runName, ArrayList<Variant> vlist);
+
+	/**
+	 * @param runName The name of the current sampler run
+	 * @return The result variants of all configurations, by configuration id
+	 */
+	Map<Long, ArrayList<Variant>> getResultVariants(String runName);
+
+	/**
+	 * @param runName The name of the current sampler run
+	 * @return The number of variants of all configurations, by configuration id
+	 */
+	Map<Long, Integer> getVariantCounts(String runName);
+
+	/**
+	 * @param runName The name of the current sampler run
+	 * @return The gold standard of the run
+	 */
+	GoldstandardSet getGoldstandard(String runName);
+
+	/**
+	 * @param runName The name of the current sampler run
+	 * @param gold If true, the gold standard is checked instead of the results
+	 * @return True if there are any variants
+	 */
+	boolean hasVariants(String runName, boolean gold);
+
+	/**
+	 * @param runName The name of the current sampler run
+	 * @param gold If true, the gold standard is deleted instead of the results
+	 */
+	void deleteVariants(String runName, boolean gold);
+
+	/**
+	 * Waits until all pending writes are done
+	 */
+	void flush();
+
+	/**
+	 * Writes everything that is pending and releases the storage
+	 */
+	void close();
+
+	/**
+	 * @return Statistics about the inserted rows, for logging
+	 */
+	String getInsertStatistics();
+}
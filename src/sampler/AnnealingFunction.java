@@ -63,23 +63,35 @@ public class AnnealingFunction {
      * @return
      */
     public double getRelativeScoreForElement(ValuePair vp, double temperature, double range, double currentScore){
-        double modifier = 2;
-
-        double lowerArea = currentScore - (range * 0.5 * (1 - temperature));
-        if(lowerArea < 0){
-            lowerArea = 0.0;
-        }
-
         double score = Double.parseDouble(vp.getValue());
         double rescore;
-        if( score <= lowerArea ) {
+        if( score <= getLowerArea(temperature, range, currentScore) ) {
             rescore = 0;
         }else{
-            rescore = ( score * Math.pow(modifier, (1+temperature)) );
+            rescore = ( score * getScoreModifier(temperature) );
         }
         return rescore;
     }
 
+    /**
+     * @return Scores at or below this value have a relative score of 0
+     */
+    public double getLowerArea(double temperature, double range, double currentScore){
+        double lowerArea = currentScore - (range * 0.5 * (1 - temperature));
+        if(lowerArea < 0){
+            lowerArea = 0.0;
+        }
+        return lowerArea;
+    }
+
+    /**
+     * @return The factor that is applied to all scores above the lower area
+     */
+    public double getScoreModifier(double temperature){
+        double modifier = 2;
+        return Math.pow(modifier, (1+temperature));
+    }
+
     public boolean acceptScore(double currentScore, double candidateScore, double temperature){
         double t = (1-temperature);
         double delta = candidateScore - currentScore;
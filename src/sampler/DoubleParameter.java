@@ -81,6 +81,19 @@ public class DoubleParameter extends Parameter {
 		return ""+val;
 	}
 
+	@Override
+	public long getIdForValue(String value) {
+		try{
+			long id = Math.round((Double.parseDouble(value) - lowVal) / stepSize);
+			if(id >= 0 && id <= getMaxId() && getValue(id).equals(value)){
+				return id;
+			}
+		}catch(NumberFormatException nfe){
+			logger.finer("Value "+value+" is not a valid "+type+" for parameter "+this.getName());
+		}
+		return -1;
+	}
+
 	@Override
 	public int getNumberOfPossibilities() {
 		double range = highVal - lowVal;
@@ -28,6 +28,8 @@ public class Edge {
 	private String command;
 	private String[] inputFiles;
 	private String[] outputFiles;
+	private String[] streamFiles = new String[]{};
+	private ScatterCommand scatter = null;
 	
 	/**
 	 * Creates a new edge object
@@ -97,6 +99,28 @@ public class Edge {
 		this.outputFiles = outputFiles;
 	}
 
+	/**
+	 * @return The inputs and outputs that the command reads or writes as a stream, they can be replaced by named pipes
+	 */
+	public String[] getStreamFiles() {
+		return streamFiles;
+	}
+
+	void setStreamFiles(String[] streamFiles) {
+		this.streamFiles = streamFiles;
+	}
+
+	/**
+	 * @return The commands to run the edge in shards per contig, or null if it can not be split
+	 */
+	public ScatterCommand getScatter() {
+		return scatter;
+	}
+
+	void setScatter(ScatterCommand scatter) {
+		this.scatter = scatter;
+	}
+
 	public String[] getParamValues() {
 		return paramValues;
 	}
@@ -32,6 +32,8 @@ public class EdgeGroup {
 	private String[] inputFiles;
 	private String[] outputFiles;
 	private String rawCommand;
+	private String[] streamFiles = new String[]{};
+	private ScatterCommand scatter = null;
 
 	/**
 	 * Constructor used for empty edge group, e.g.for the decision to either use a tool or none at all this would be the "None" option
@@ -140,6 +142,37 @@ public class EdgeGroup {
 		return this.outputFiles;
 	}
 
+	/**
+	 * Marks input and output files that the command reads or writes exactly once, from start to end and under their own name.
+	 * A walker may replace such a file with a named pipe between two steps that run at the same time.
+	 * @param files The names of the files, each must be an input or an output of the group
+	 */
+	public void setStreamFiles(String... files){
+		this.streamFiles = files;
+	}
+
+	/** Array containing file names of all inputs and outputs
+	 * that can be read or written as a stream
+	 */
+	public String[] getStreamFiles(){
+		return this.streamFiles;
+	}
+
+	/**
+	 * Marks the command as interval parallel, a walker may run the given shards instead of the command.
+	 * @param scatter The commands for the shards, their parameter tokens are replaced like those of the command
+	 */
+	public void setScatter(ScatterCommand scatter){
+		this.scatter = scatter;
+	}
+
+	/**
+	 * @return The commands to run the group in shards, or null if it can not be split
+	 */
+	public ScatterCommand getScatter(){
+		return this.scatter;
+	}
+
 	private void setRawCommandDefinition(String rawCommand){
 		if(rawCommand == null){
 			//use an empty list
@@ -165,7 +198,10 @@ public class EdgeGroup {
 	 * Also adds information about the selected edge to the database.
 	 */
 	private String getUsableCommand(ValuePair[] paramValues){
-		String command = getRawCommandDefinition();
+		return replaceParameters(getRawCommandDefinition(), paramValues);
+	}
+
+	private static String replaceParameters(String command, ValuePair[] paramValues){
 		//replace the parameter tokens in the task definition
 		if(paramValues == null || paramValues.length == 0){
 			return command;
@@ -192,7 +228,12 @@ public class EdgeGroup {
 		for(int i=0; i<values.length; i++){
 			valueStrings[i] = values[i].getValue();
 		}
-		return new Edge(this.getGroupName(), valueStrings, command, this.getInputFiles(), this.getOutputFiles());
+		Edge edge = new Edge(this.getGroupName(), valueStrings, command, this.getInputFiles(), this.getOutputFiles());
+		edge.setStreamFiles(this.getStreamFiles());
+		if(this.scatter != null){
+			edge.setScatter(this.scatter.resolve(c -> replaceParameters(c, values)));
+		}
+		return edge;
 	}
 	
 	public Parameter[] getParameterList(){
@@ -21,13 +21,27 @@ package sampler;
 public class ExitCodeException extends Exception {
 	private static final long serialVersionUID = 1L;
 	private int exitCode = 1;
+	private int step = 0;
 	
 	public ExitCodeException(int exitCode){
 		this.exitCode = exitCode;
 	}
+
+	/**
+	 * @param exitCode The exit code
+	 * @param step The position of the failed step inside the steps that were executed together
+	 */
+	public ExitCodeException(int exitCode, int step){
+		this.exitCode = exitCode;
+		this.step = step;
+	}
 	
 	public int getExitCode(){
 		return this.exitCode;
 	}
+
+	public int getStep(){
+		return this.step;
+	}
 	
 }
@@ -50,6 +50,19 @@ public class IntegerParameter extends Parameter {
 		return ""+val;
 	}
 
+	@Override
+	public long getIdForValue(String value) {
+		try{
+			long id = (Long.parseLong(value) - lowVal) / stepSize;
+			if(id >= 0 && id <= getMaxId() && getValue(id).equals(value)){
+				return id;
+			}
+		}catch(NumberFormatException nfe){
+			logger.finer("Value "+value+" is not a valid "+type+" for parameter "+this.getName());
+		}
+		return -1;
+	}
+
 	@Override
 	public int getNumberOfPossibilities() {
 		int range = highVal - lowVal;
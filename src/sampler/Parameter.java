@@ -50,6 +50,20 @@ public abstract class Parameter {
 	 */
 	abstract public int getMaxId();
 	
+	/**
+	 * Inverse of {@link #getValue(long)}
+	 * @param value The string representation of a value
+	 * @return Returns the id of the given value or -1 if the value is not part of this parameter
+	 */
+	public long getIdForValue(String value){
+		for(long id=0; id<=getMaxId(); id++){
+			if(getValue(id).equals(value)){
+				return id;
+			}
+		}
+		return -1;
+	}
+
 	/**
 	 * @return Returns the number of possible values for this parameter.
 	 * Therefore the number of possible values must be finite.
@@ -0,0 +1,87 @@
+package sampler;
+
+import java.util.function.UnaryOperator;
+
+/*
+		% WorkflowWalker: A Workflow Parameter Optimizer
+		%
+		% Copyright 2017 Björn Groß
+		%
+		% Licensed under the Apache License, Version 2.0 (the "License");
+		% you may not use this file except in compliance with the License.
+		% You may obtain a copy of the License at
+		%
+		%    http://www.apache.org/licenses/LICENSE-2.0
+		%
+		% Unless required by applicable law or agreed to in writing, software
+		% distributed under the License is distributed on an "AS IS" BASIS,
+		% WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+		% See the License for the specific language governing permissions and
+		% limitations under the License.
+*/
+
+/**
+ * Describes how the command of an edge group can be split into shards that each work on one contig of the reference.
+ * The shards run at the same time and write VCF files, which are merged in the order of the contigs into the output.
+ * The shard command contains the tokens REGION for the name of the contig and SHARD for the VCF file of the shard.
+ * The prepare command runs once before the shards, the finish command once after the merge.
+ */
+public class ScatterCommand {
+	public static final String REGION = "$@region@$";
+	public static final String SHARD = "$@shard@$";
+	private String index;
+	private String shardCommand;
+	private String output;
+	private String prepare = "";
+	private String finish = "";
+
+	/**
+	 * @param index The fasta index (fai) that lists the contigs of the reference, it has to be an input of the group
+	 * @param shardCommand The command for a single contig
+	 * @param output The VCF file that the shards are merged into
+	 */
+	public ScatterCommand(String index, String shardCommand, String output){
+		this.index = index;
+		this.shardCommand = shardCommand;
+		this.output = output;
+	}
+
+	public String getIndex() {
+		return index;
+	}
+
+	public String getShardCommand() {
+		return shardCommand;
+	}
+
+	public String getOutput() {
+		return output;
+	}
+
+	public String getPrepare() {
+		return prepare;
+	}
+
+	public void setPrepare(String prepare) {
+		this.prepare = prepare;
+	}
+
+	public String getFinish() {
+		return finish;
+	}
+
+	public void setFinish(String finish) {
+		this.finish = finish;
+	}
+
+	/**
+	 * @param replace Replaces the parameter tokens in a command
+	 * @return A copy whose commands can be run at the command line
+	 */
+	ScatterCommand resolve(UnaryOperator<String> replace){
+		ScatterCommand resolved = new ScatterCommand(index, replace.apply(shardCommand), output);
+		resolved.setPrepare(replace.apply(prepare));
+		resolved.setFinish(replace.apply(finish));
+		return resolved;
+	}
+}
@@ -21,7 +21,7 @@ package sampler;
 import java.util.ArrayList;
 import java.util.logging.Logger;
 
-import logdb.LogDB;
+import logdb.Storage;
 import logdb.ValuePair;
 
 
@@ -29,14 +29,14 @@ public class Step {
 	protected static Logger logger = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
 	private ArrayList<EdgeGroup> groupList = new ArrayList<>();
 	private int ID = -1;
-	private LogDB logdb;
+	private Storage logdb;
 	private String runName;
 
 	/**
 	 * @param logdb Running instance of logdb
 	 * @param runName The name of the current sampling process
 	 */
-	public Step(LogDB logdb, String runName){
+	public Step(Storage logdb, String runName){
 		this.logdb = logdb;
 		this.runName = runName;
 	}
@@ -51,6 +51,22 @@ public class Step {
 		return this.ID;
 	}
 	
+	/**
+	 * @return The only edge group of the step if the step offers no choice, that is if it has a single edge group
+	 * whose parameters have at most one value each. Null if an edge has to be chosen.
+	 */
+	public EdgeGroup getFixedGroup(){
+		if(groupList.size() != 1){
+			return null;
+		}
+		for(Parameter p : groupList.get(0).getParameterList()){
+			if(p.getNumberOfPossibilities() > 1){
+				return null;
+			}
+		}
+		return groupList.get(0);
+	}
+
 	/**
 	 * Add a new edge group to this steps list of groups
 	 * @param eg The edge group object that will be added
@@ -60,11 +76,7 @@ public class Step {
 			logger.warning("Tried adding edgeGroup "+eg.getGroupName()+" to the step list, but it already exists there.");
 		}else{
 			//Add edge group to the database for logging purpose
-			String[] paramName = new String[eg.getParameterList().length];
-			for(int i=0; i<paramName.length; i++){
-				paramName[i] =  eg.getParameterList()[i].getName();
-			}
-			logdb.createEdgeGroup(runName, eg.getGroupName(), paramName);
+			logdb.createEdgeGroup(runName, eg.getGroupName(), eg.getParameterList());
 			
 			this.groupList.add(eg);
 			logger.finer("Added EdgeGroup "+eg.getGroupName()+" to the step list");
@@ -21,10 +21,18 @@ package sampler;
 import general.ExitCode;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import logdb.LogDB;
+import logdb.Storage;
 import logdb.ValuePair;
 
 // Ye Old Texas Ranger
@@ -32,15 +40,24 @@ import logdb.ValuePair;
 abstract public class Walker {
 	protected static Logger logger = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
 	protected boolean USECACHE = true;
-	protected LogDB logdb;
+	protected int PARALLEL = 1;
+	protected boolean FUSE = false;
+	/** For each step the index after the last step of its unit, null if every step runs on its own */
+	private int[] unitEnds = null;
+	protected Storage logdb;
 	protected String runName;
+	/** Guards the edge choice and the annealing acceptance when sampling in parallel */
+	private final Object sampleLock = new Object();
+	/** Configurations that are executed right now, guarded by the sample lock */
+	private Set<Long> running = new HashSet<>();
+	private double currentScore = 0.0;
 
 	/**
 	 *
 	 * @param logdb
 	 * @param runName
 	 */
-	public Walker(LogDB logdb, String runName){
+	public Walker(Storage logdb, String runName){
 		this.logdb = logdb;
 		this.runName = runName;
 	}
@@ -55,12 +72,38 @@ abstract public class Walker {
 		USECACHE = trigger;
 	}
 	
+	/**
+	 * Sets the number of configurations that are sampled at the same time. A value
+	 * of 1 (default) runs the configurations one after another.
+	 * @param parallel The number of configurations in flight
+	 */
+	public void setParallel(int parallel){
+		if(parallel < 1){
+			logger.warning("Number of parallel configurations must be at least 1, was "+parallel+". Using 1 instead.");
+			parallel = 1;
+		}
+		PARALLEL = parallel;
+	}
+
+	/**
+	 * Executes consecutive steps without a choice together, see Workflow.getUnitEnds
+	 * @param fuse True to fuse the steps (default: false)
+	 */
+	public void setFusion(boolean fuse){
+		FUSE = fuse;
+	}
+
 	/**
 	 * Start simulated annealing on the given workflow with the designated number of samples.
 	 * @param samples The number of samples that are run.
 	 */
 	public void sample(int samples){
-		Step[] steps = this.getSteps().asArray();
+		Workflow workflow = this.getSteps();
+		final Step[] steps = workflow.asArray();
+		if(FUSE){
+			unitEnds = workflow.getUnitEnds();
+			logger.info("Steps are executed in the units "+Arrays.toString(unitEnds));
+		}
 		
 		if(steps.length <= 0){
 			logger.severe("No workflow steps are given. At least one step must be defined.");
@@ -68,18 +111,60 @@ abstract public class Walker {
 		}
 
 		long time = 0;
-		double currentScore = 0.0;
-		double candidateScore;
+		currentScore = 0.0;
+
+		if(PARALLEL <= 1){
+			for(int run=1; run<=samples; run++){
+				time += sampleConfiguration(steps, run, samples);
+			}
+		}else{
+			logger.info("Sampling with "+PARALLEL+" configurations in parallel.");
+			ExecutorService pool = Executors.newFixedThreadPool(PARALLEL);
+			ArrayList<Future<Long>> results = new ArrayList<>();
+			for(int run=1; run<=samples; run++){
+				final int r = run;
+				results.add(pool.submit(() -> sampleConfiguration(steps, r, samples)));
+			}
+			pool.shutdown();
+			for(Future<Long> f : results){
+				try{
+					time += f.get();
+				}catch(InterruptedException | ExecutionException e){
+					logger.log(Level.SEVERE, "Sampling thread failed", e);
+				}
+			}
+		}
+		//make sure queued database writes are done before the program exits
+		logdb.flush();
+		logger.info(logdb.getInsertStatistics());
+		logger.info("Finished sampling after "+samples+" rounds. Took an average time of "+ (time/samples)+"ms.");
+		
+	}
+
+	/**
+	 * Chooses, executes and scores a single configuration. Choosing the edges and accepting
+	 * the score are guarded by the sample lock, only the workflow itself runs concurrently.
+	 * @param steps The steps of the workflow
+	 * @param run The number of the current sample
+	 * @param samples The total number of samples
+	 * @return The time in ms that was needed for this sample
+	 */
+	private long sampleConfiguration(Step[] steps, int run, int samples){
+		logger.info("Started sample run "+run);
+		long starttime = System.currentTimeMillis();
+		double temperature = ((double)run)/ samples;
+		ArrayList<Edge> workflow = new ArrayList<>();
+		ArrayList<ValuePair> config = new ArrayList<>();
+		long rootId;
+		// default aka "none found"
+		long cachedId = -1;
+		// The last step both the cache and the new config have in common
+		int lastCommonStep = -1;
 
-		sampling:for(int run=1; run<=samples; run++){
-			logger.info("Started sample run "+run);
-			long starttime = System.currentTimeMillis();
+		synchronized (sampleLock){
 			//create the new workflow
-			ArrayList<Edge> workflow = new ArrayList<>();
-			ArrayList<ValuePair> config = new ArrayList<>();
 			for(Step step : steps){
 				logger.finest("Choose new Edge for step "+step.getId());
-				double temperature = ((double)run)/ samples;
 				Edge e = step.chooseNewEdge(workflow, temperature, currentScore);
 				workflow.add(e);
 				logger.finest("Adding edge "+e.getGroupName()+" with ID "+e.getIdAsString()+" to workflow.");
@@ -89,67 +174,64 @@ abstract public class Walker {
 			if( previousId > 0){
 				//has been computed before, no need to do it again
 				logger.info("This configuration has been computed before with id: "+previousId);
+				//in parallel mode it might still be running, its score is known when it is done
+				while(running.contains(previousId)){
+					try{
+						sampleLock.wait();
+					}catch(InterruptedException ie){
+						logger.warning("Thread was interrupted while waiting for configuration "+previousId+", the sample is not logged.");
+						Thread.currentThread().interrupt();
+						return 0;
+					}
+				}
 				//log the score for optional result evaluation
 				logdb.addSample(runName, previousId, logdb.getScoreForConfig(runName, previousId));
-				continue sampling;
+				return 0;
 			}
 			logger.finest("Configuration is not known yet. ");
 			//save new config to db
-			long rootId = logdb.addConfiguration(config.toArray(new ValuePair[config.size()]), runName);
+			rootId = logdb.addConfiguration(config.toArray(new ValuePair[config.size()]), runName);
+			running.add(rootId);
 
 			// compute the new config, but first check if caching is active and a subset has
 			// been computed before
-			long cachedId = -1; // default aka "none found"
-			// The last step both the cache and the new config have in common
-			int lastCommonStep = -1;
 			if(USECACHE){
-				filter:for(int i=0; i<config.size(); i++){
-					//create and fill subset
-					ValuePair[] subset = new ValuePair[i+1];
-					for(int j=0; j<=i; j++){
-						subset[j] = config.get(j);
-					}
-					long tempId = logdb.containsSubset(subset, runName);
-					if(tempId > 0){
-						logger.fine("Cached config found. Was "+cachedId+", is now "+tempId+" (Step ID: "+i+").");
-						cachedId = tempId;
-						lastCommonStep = i;
-					}else{
-						//no need to look any further, subset filter will only be more specified
-						logger.fine("Stop looking for a suitable cache config, current cache config: "+cachedId+ " with starting step "+lastCommonStep);
-						break filter;
-					}
-				}
+				long[] cached = logdb.getCachedPrefix(config.toArray(new ValuePair[config.size()]), runName);
+				cachedId = cached[0];
+				lastCommonStep = (int)cached[1];
+				logger.fine("Cache config: "+cachedId+ " with last common step "+lastCommonStep);
 			}//eoif USECACHE
+		}
 
-
-			//stop the time
-			long start = System.currentTimeMillis();
-			// fetch from cache if possible and first run
-			int result = walk(rootId, workflow.toArray(new Edge[workflow.size()]), cachedId, lastCommonStep);
+		//stop the time
+		long start = System.currentTimeMillis();
+		// fetch from cache if possible and first run
+		int result = walk(rootId, workflow.toArray(new Edge[workflow.size()]), cachedId, lastCommonStep);
+		double candidateScore = Double.NaN;
+		synchronized (sampleLock){
 			if(result != 0){
 				logdb.failConfiguration(rootId, runName, result);
 			}else{
 				candidateScore = logdb.getScoreForConfig(runName, rootId);
 				logdb.addSample(runName, rootId, candidateScore);
-				boolean accepted = logdb.getAnne().acceptScore(currentScore, candidateScore, ((double)run/samples));
+				boolean accepted = logdb.getAnne().acceptScore(currentScore, candidateScore, temperature);
 				if(accepted){
 					currentScore = candidateScore;
 				}
 			}
-			long resultTime = System.currentTimeMillis() - start;
-			String timer = String.format("%d min, %d sec", 
-						    TimeUnit.MILLISECONDS.toMinutes(resultTime),
-						    TimeUnit.MILLISECONDS.toSeconds(resultTime) - 
-						    TimeUnit.MINUTES.toSeconds(TimeUnit.MILLISECONDS.toMinutes(resultTime))
-						);
-			long endtime = System.currentTimeMillis() - starttime;
-			logger.info("Counter: Executing workflow "+rootId+" took "+timer + " ("+endtime+"ms)");
-			time += endtime;
-						
+			running.remove(rootId);
+			sampleLock.notifyAll();
 		}
-		logger.info("Finished sampling after "+samples+" rounds. Took an average time of "+ (time/samples)+"ms.");
-		
+		finishConfiguration(rootId, candidateScore);
+		long resultTime = System.currentTimeMillis() - start;
+		String timer = String.format("%d min, %d sec", 
+					    TimeUnit.MILLISECONDS.toMinutes(resultTime),
+					    TimeUnit.MILLISECONDS.toSeconds(resultTime) - 
+					    TimeUnit.MINUTES.toSeconds(TimeUnit.MILLISECONDS.toMinutes(resultTime))
+					);
+		long endtime = System.currentTimeMillis() - starttime;
+		logger.info("Counter: Executing workflow "+rootId+" took "+timer + " ("+endtime+"ms)");
+		return endtime;
 	}
 	
 	/**
@@ -166,16 +248,17 @@ abstract public class Walker {
 		try{
 			createExecutionEnv(configId);
 			handleInputFiles(configId);
-			if(USECACHE) {
-				boolean cache = handleCacheFiles(configId, workflow, cacheId, lastCommonStep);
-				if (!cache || lastCommonStep < 0) {
-					lastCommonStep = 0;
-				}
-			}
+			lastCommonStep = handleCacheFiles(configId, workflow, cacheId, lastCommonStep);
 			logger.finest("Starting with last common step: "+lastCommonStep);
-			for(int e=lastCommonStep; e<workflow.length; e++){
+			int end;
+			for(int e=lastCommonStep; e<workflow.length; e=end){
 				step = e;
-				traverseEdge(workflow[e], configId);
+				end = (unitEnds == null) ? e+1 : unitEnds[e];
+				if(end - e > 1){
+					traverseEdges(Arrays.copyOfRange(workflow, e, end), configId);
+				}else{
+					traverseEdge(workflow[e], configId);
+				}
 			}
 			submitResult(configId);
 			
@@ -186,6 +269,10 @@ abstract public class Walker {
 			}
 			return 0;
 		}catch(Exception e){
+			if(e instanceof ExitCodeException){
+				//steps of a unit fail together, the exception knows which one
+				step += ((ExitCodeException)e).getStep();
+			}
 			logger.warning("Error:\nWalking failed at step "+(step+1)+" with message "+e.getMessage()+"\n");
 			//while the step ids start with 0, we count the fail number without 0 (starting at 1)
 			return (step+1);
@@ -204,15 +291,41 @@ abstract public class Walker {
 	abstract protected void handleInputFiles(long configId) throws ExitCodeException;
 	
 	/**
-	 * Prepares the cached files for the new execution enviroment
+	 * Prepares the cached files for the new execution enviroment. Called for every configuration, also if caching is deactivated.
 	 * @param configId The id of the targeted configuration
 	 * @param workflow Array of edges that form the workflow with a specific configuration
 	 * @param cacheId ID of the config that will be used as cache
 	 * @param lastCommonStep The last common step between the current config (configId) and the cached config (cacheId)
-	 * @return True if no error occurred and caching can be used. Returns also false, if caching is deactivated
+	 * @return The number of steps at the start of the workflow whose outputs were restored and that are skipped,
+	 * 0 if no error occurred and nothing could be restored or if caching is deactivated
 	 */
-	abstract protected boolean handleCacheFiles(long configId, Edge[] workflow, long cacheId, int lastCommonStep);
+	abstract protected int handleCacheFiles(long configId, Edge[] workflow, long cacheId, int lastCommonStep);
 	
+	/**
+	 * Executes several steps that offer no choice one after another. Walkers can override this to run
+	 * them in a single process, the default executes each step on its own.
+	 * @param edges The edges of consecutive steps
+	 * @param configId The id of the targeted configuration
+	 * @throws ExitCodeException If a step failed, with the position of the step inside the given edges
+	 */
+	protected void traverseEdges(Edge[] edges, long configId) throws ExitCodeException {
+		for(int i=0; i<edges.length; i++){
+			try{
+				traverseEdge(edges[i], configId);
+			}catch(ExitCodeException ex){
+				throw new ExitCodeException(ex.getExitCode(), i);
+			}
+		}
+	}
+
+	/**
+	 * Called after a configuration was walked and scored, whether it failed or not. Does nothing by default.
+	 * @param configId The id of the targeted configuration
+	 * @param score The score of the configuration, NaN if the workflow failed
+	 */
+	protected void finishConfiguration(long configId, double score){
+	}
+
 	/**
 	 * Execute the script given by the edge after checking the existence of all needed inputs
 	 * and check the existens of all outputs afterwards
@@ -19,6 +19,9 @@ package sampler;
 */
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 
 public class Workflow {
     private int size = 0;
@@ -44,4 +47,35 @@ public class Workflow {
     public int size(){
         return this.size;
     }
+
+    /**
+     * Groups consecutive steps without a choice into units that can be executed as a single process.
+     * A step only joins a unit if it does not write a file that an earlier step of the unit wrote,
+     * so the outputs of every step can still be told apart after the unit ran.
+     * @return For each step the index after the last step of its unit, i+1 if the step is executed alone
+     */
+    public int[] getUnitEnds(){
+        int[] ends = new int[size];
+        int start = 0;
+        while(start < size){
+            int end = start + 1;
+            EdgeGroup first = steps.get(start).getFixedGroup();
+            if(first != null){
+                HashSet<String> outputs = new HashSet<>(Arrays.asList(first.getOutputFiles()));
+                while(end < size){
+                    EdgeGroup next = steps.get(end).getFixedGroup();
+                    if(next == null || !Collections.disjoint(outputs, Arrays.asList(next.getOutputFiles()))){
+                        break;
+                    }
+                    outputs.addAll(Arrays.asList(next.getOutputFiles()));
+                    end++;
+                }
+            }
+            for(int i=start; i<end; i++){
+                ends[i] = end;
+            }
+            start = end;
+        }
+        return ends;
+    }
 }